@@ -0,0 +1,41 @@
+package aws.common;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.function.Supplier;
+
+// Runs blocking SDK calls on virtual threads with at most maxInFlight of them running at the same time. close()
+// waits for the submitted calls and releases the threads; the shared one lives as long as the JVM.
+public class BoundedExecutor implements AutoCloseable {
+  private static final BoundedExecutor SHARED = new BoundedExecutor(TestConfig.getInt("crawler.maxInFlight", 8));
+
+  private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+  private final Semaphore permits;
+
+  public BoundedExecutor(int maxInFlight) {
+    this.permits = new Semaphore(maxInFlight);
+  }
+
+  // One limiter for the whole JVM, so parallel tests share the same API budget
+  public static BoundedExecutor shared() {
+    return SHARED;
+  }
+
+  public <T> CompletableFuture<T> submit(Supplier<T> call) {
+    return CompletableFuture.supplyAsync(() -> {
+      permits.acquireUninterruptibly();
+      try {
+        return call.get();
+      } finally {
+        permits.release();
+      }
+    }, executor);
+  }
+
+  @Override
+  public void close() {
+    executor.close();
+  }
+}
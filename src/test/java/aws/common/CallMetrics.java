@@ -0,0 +1,121 @@
+package aws.common;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+// Per operation and per test method API call statistics, filled by CallMetricsInterceptor
+public class CallMetrics {
+  private static final CallMetrics GLOBAL = new CallMetrics();
+  // inherited by the virtual threads the crawlers start, so their calls count for the calling test
+  private static final InheritableThreadLocal<String> CURRENT_TEST = new InheritableThreadLocal<>();
+
+  private final Map<Key, Stats> stats = new ConcurrentHashMap<>();
+
+  public static CallMetrics global() {
+    return GLOBAL;
+  }
+
+  public static void currentTest(String testName) {
+    if (testName == null) {
+      CURRENT_TEST.remove();
+    } else {
+      CURRENT_TEST.set(testName);
+    }
+  }
+
+  static String currentTest() {
+    String test = CURRENT_TEST.get();
+    return test == null ? "(no test)" : test;
+  }
+
+  Stats stats(String service, String operation, String test) {
+    return stats.computeIfAbsent(new Key(service, operation, test), key -> new Stats());
+  }
+
+  // Number of finished calls of an operation over the whole suite, e.g. to enforce a call budget
+  public long calls(String service, String operation) {
+    return stats.entrySet().stream()
+        .filter(entry -> entry.getKey().service().equals(service) && entry.getKey().operation().equals(operation))
+        .mapToLong(entry -> entry.getValue().calls.sum()).sum();
+  }
+
+  public void reset() {
+    stats.clear();
+  }
+
+  // Operations sorted by total time spent, each with its per-test breakdown
+  public List<OperationReport> report() {
+    Map<String, List<Map.Entry<Key, Stats>>> byOperation = new LinkedHashMap<>();
+    stats.entrySet().stream().sorted(Comparator.comparing(entry -> entry.getKey().test()))
+        .forEach(entry -> byOperation.computeIfAbsent(entry.getKey().service() + "." + entry.getKey().operation(),
+            k -> new ArrayList<>()).add(entry));
+
+    return byOperation.entrySet().stream().map(operation -> {
+      Stats total = new Stats();
+      Map<String, CallReport> tests = new LinkedHashMap<>();
+      for (Map.Entry<Key, Stats> entry : operation.getValue()) {
+        total.add(entry.getValue());
+        tests.put(entry.getKey().test(), entry.getValue().report());
+      }
+      return new OperationReport(operation.getKey(), total.report(), tests);
+    }).sorted(Comparator.comparingDouble((OperationReport report) -> report.total().totalMillis()).reversed())
+        .toList();
+  }
+
+  private record Key(String service, String operation, String test) {
+  }
+
+  static class Stats {
+    final LongAdder calls = new LongAdder();
+    final LongAdder attempts = new LongAdder();
+    final LongAdder throttles = new LongAdder();
+    final LongAdder errors = new LongAdder();
+    final LongAdder requestBytes = new LongAdder();
+    final LongAdder responseBytes = new LongAdder();
+    // microseconds
+    final Histogram latency = new ConcurrentHistogram(3);
+
+    void add(Stats other) {
+      calls.add(other.calls.sum());
+      attempts.add(other.attempts.sum());
+      throttles.add(other.throttles.sum());
+      errors.add(other.errors.sum());
+      requestBytes.add(other.requestBytes.sum());
+      responseBytes.add(other.responseBytes.sum());
+      latency.add(other.latency);
+    }
+
+    void recordLatency(long nanos) {
+      latency.recordValue(TimeUnit.NANOSECONDS.toMicros(nanos));
+    }
+
+    CallReport report() {
+      long count = calls.sum();
+      return new CallReport(count, Math.max(0, attempts.sum() - count), throttles.sum(), errors.sum(),
+          requestBytes.sum(), responseBytes.sum(), millis(latency.getMean()) * latency.getTotalCount(),
+          millis(latency.getMean()), millis(latency.getValueAtPercentile(50)),
+          millis(latency.getValueAtPercentile(90)), millis(latency.getValueAtPercentile(99)),
+          millis(latency.getMaxValue()));
+    }
+
+    private static double millis(double micros) {
+      return Math.round(micros) / 1000.0;
+    }
+  }
+
+  public record CallReport(long calls, long retries, long throttles, long errors, long requestBytes,
+                           long responseBytes, double totalMillis, double meanMillis, double p50Millis,
+                           double p90Millis, double p99Millis, double maxMillis) {
+  }
+
+  public record OperationReport(String operation, CallReport total, Map<String, CallReport> tests) {
+  }
+}
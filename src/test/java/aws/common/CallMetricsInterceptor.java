@@ -0,0 +1,68 @@
+package aws.common;
+
+import java.io.InputStream;
+import java.util.Optional;
+import software.amazon.awssdk.core.interceptor.Context;
+import software.amazon.awssdk.core.interceptor.ExecutionAttribute;
+import software.amazon.awssdk.core.interceptor.ExecutionAttributes;
+import software.amazon.awssdk.core.interceptor.ExecutionInterceptor;
+import software.amazon.awssdk.core.interceptor.SdkExecutionAttribute;
+
+// Records calls, retries, throttles, bytes and latency of every SDK call into CallMetrics.global()
+public class CallMetricsInterceptor implements ExecutionInterceptor {
+  private static final ExecutionAttribute<Long> START = new ExecutionAttribute<>("CallMetricsStart");
+  private static final ExecutionAttribute<CallMetrics.Stats> STATS = new ExecutionAttribute<>("CallMetricsStats");
+
+  @Override
+  public void beforeExecution(Context.BeforeExecution context, ExecutionAttributes executionAttributes) {
+    executionAttributes.putAttribute(START, System.nanoTime());
+    executionAttributes.putAttribute(STATS, CallMetrics.global().stats(
+        executionAttributes.getAttribute(SdkExecutionAttribute.SERVICE_NAME),
+        executionAttributes.getAttribute(SdkExecutionAttribute.OPERATION_NAME),
+        CallMetrics.currentTest()));
+  }
+
+  // once per attempt, so retries show up as attempts - calls
+  @Override
+  public void beforeTransmission(Context.BeforeTransmission context, ExecutionAttributes executionAttributes) {
+    CallMetrics.Stats stats = executionAttributes.getAttribute(STATS);
+    stats.attempts.increment();
+    context.httpRequest().firstMatchingHeader("Content-Length")
+        .ifPresent(length -> stats.requestBytes.add(Long.parseLong(length)));
+  }
+
+  @Override
+  public void afterTransmission(Context.AfterTransmission context, ExecutionAttributes executionAttributes) {
+    context.httpResponse().firstMatchingHeader("Content-Length")
+        .ifPresent(length -> executionAttributes.getAttribute(STATS).responseBytes.add(Long.parseLong(length)));
+  }
+
+  @Override
+  public Optional<InputStream> modifyHttpResponseContent(Context.ModifyHttpResponse context,
+                                                         ExecutionAttributes executionAttributes) {
+    return Throttling.inspect(context, () -> executionAttributes.getAttribute(STATS).throttles.increment());
+  }
+
+  @Override
+  public void afterExecution(Context.AfterExecution context, ExecutionAttributes executionAttributes) {
+    finish(executionAttributes, false);
+  }
+
+  @Override
+  public void onExecutionFailure(Context.FailedExecution context, ExecutionAttributes executionAttributes) {
+    finish(executionAttributes, true);
+  }
+
+  private static void finish(ExecutionAttributes executionAttributes, boolean failed) {
+    CallMetrics.Stats stats = executionAttributes.getAttribute(STATS);
+    Long start = executionAttributes.getAttribute(START);
+    if (stats == null || start == null) {
+      return;
+    }
+    stats.calls.increment();
+    if (failed) {
+      stats.errors.increment();
+    }
+    stats.recordLatency(System.nanoTime() - start);
+  }
+}
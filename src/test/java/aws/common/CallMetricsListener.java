@@ -0,0 +1,56 @@
+package aws.common;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.IInvokedMethod;
+import org.testng.IInvokedMethodListener;
+import org.testng.ISuite;
+import org.testng.ISuiteListener;
+import org.testng.ITestResult;
+
+// Tags API calls with the running test method and writes the suite's call report (metrics.report, JSON)
+public class CallMetricsListener implements IInvokedMethodListener, ISuiteListener {
+  private static final Logger LOG = LoggerFactory.getLogger(CallMetricsListener.class);
+
+  @Override
+  public void beforeInvocation(IInvokedMethod method, ITestResult testResult) {
+    CallMetrics.currentTest(method.getTestMethod().getTestClass().getRealClass().getSimpleName() + "."
+        + method.getTestMethod().getMethodName());
+  }
+
+  @Override
+  public void afterInvocation(IInvokedMethod method, ITestResult testResult) {
+    CallMetrics.currentTest(null);
+  }
+
+  @Override
+  public void onFinish(ISuite suite) {
+    List<CallMetrics.OperationReport> report = CallMetrics.global().report();
+    if (report.isEmpty()) {
+      return;
+    }
+
+    File file = new File(TestConfig.get("metrics.report", "target/api-metrics.json"));
+    try {
+      if (file.getParentFile() != null) {
+        file.getParentFile().mkdirs();
+      }
+      Json.mapper().writerWithDefaultPrettyPrinter().writeValue(file, report);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+
+    LOG.info("API calls of suite {} (report: {})", suite.getName(), file.getAbsolutePath());
+    for (CallMetrics.OperationReport operation : report) {
+      CallMetrics.CallReport total = operation.total();
+      LOG.info(String.format("%-45s calls=%d retries=%d throttles=%d errors=%d bytes=%d/%d total=%.1fms "
+              + "p50=%.1fms p99=%.1fms max=%.1fms", operation.operation(), total.calls(), total.retries(),
+          total.throttles(), total.errors(), total.requestBytes(), total.responseBytes(), total.totalMillis(),
+          total.p50Millis(), total.p99Millis(), total.maxMillis()));
+    }
+  }
+}
@@ -0,0 +1,235 @@
+package aws.common;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import software.amazon.awssdk.http.SdkHttpClient;
+
+// Recorded HTTP exchanges, so the suite can run without the network: -Daws.cassette=<file> with
+// -Daws.cassette.mode=record saves every exchange of the SDK clients and the probes there when the suite finishes,
+// -Daws.cassette.mode=replay (the default) answers from it. The file is gzipped and read into a hash index keyed by
+// the canonical request; identical requests get their recorded responses in order, the last one repeating.
+// -Daws.cassette.latency=true replays each response after its recorded latency.
+public final class Cassette {
+  private static final int MAGIC = 0x41575343; // "AWSC"
+  private static final int VERSION = 1;
+  private static Cassette shared;
+
+  private final Path file;
+  private final boolean recording;
+  private final boolean emulateLatency;
+  private final Map<String, List<Exchange>> exchanges = new ConcurrentHashMap<>();
+  private final Map<String, AtomicInteger> replayed = new ConcurrentHashMap<>();
+
+  public record Exchange(int status, Map<String, List<String>> headers, byte[] body, long nanos) {
+  }
+
+  private Cassette(Path file, boolean recording, boolean emulateLatency) {
+    this.file = file;
+    this.recording = recording;
+    this.emulateLatency = emulateLatency;
+  }
+
+  public static Cassette recording(Path file) {
+    return new Cassette(file, true, false);
+  }
+
+  public static Cassette load(Path file, boolean emulateLatency) {
+    Cassette cassette = new Cassette(file, false, emulateLatency);
+    try (DataInputStream in = new DataInputStream(new GZIPInputStream(Files.newInputStream(file)))) {
+      if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+        throw new IllegalStateException(file + " is not a version " + VERSION + " cassette");
+      }
+      int keys = in.readInt();
+      for (int i = 0; i < keys; i++) {
+        String key = readString(in);
+        int count = in.readInt();
+        List<Exchange> recorded = new ArrayList<>(count);
+        for (int j = 0; j < count; j++) {
+          recorded.add(readExchange(in));
+        }
+        cassette.exchanges.put(key, List.copyOf(recorded));
+      }
+    } catch (EOFException e) {
+      throw new IllegalStateException(file + " is truncated", e);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return cassette;
+  }
+
+  // The suite's cassette, or null when -Daws.cassette is not set
+  public static synchronized Cassette shared() {
+    String path = TestConfig.get("aws.cassette", null);
+    if (shared == null && path != null) {
+      shared = "record".equals(TestConfig.get("aws.cassette.mode", "replay"))
+          ? recording(Path.of(path))
+          : load(Path.of(path), TestConfig.getBoolean("aws.cassette.latency", false));
+    }
+    return shared;
+  }
+
+  public static boolean replaying() {
+    Cassette cassette = shared();
+    return cassette != null && !cassette.recording;
+  }
+
+  // Saves what the suite recorded; nothing to do when replaying
+  static synchronized void finish() {
+    if (shared != null && shared.recording) {
+      shared.save();
+    }
+  }
+
+  // The client builder itself when no cassette is used
+  public static SdkHttpClient.Builder<?> wrap(SdkHttpClient.Builder<?> builder) {
+    Cassette cassette = shared();
+    return cassette == null ? builder : new CassetteSdkHttpClient.Builder(cassette, builder);
+  }
+
+  public static HttpClient wrap(HttpClient client) {
+    Cassette cassette = shared();
+    return cassette == null ? client : new CassetteHttpClient(cassette, client);
+  }
+
+  boolean isRecording() {
+    return recording;
+  }
+
+  int size() {
+    return exchanges.values().stream().mapToInt(List::size).sum();
+  }
+
+  void record(String key, Exchange exchange) {
+    exchanges.computeIfAbsent(key, k -> Collections.synchronizedList(new ArrayList<>())).add(exchange);
+  }
+
+  Exchange replay(String key) {
+    List<Exchange> recorded = exchanges.get(key);
+    if (recorded == null) {
+      throw new IllegalStateException("No recorded response in " + file + " for " + key
+          + ", record it again with -Daws.cassette.mode=record");
+    }
+    int index = replayed.computeIfAbsent(key, k -> new AtomicInteger()).getAndIncrement();
+    return recorded.get(Math.min(index, recorded.size() - 1));
+  }
+
+  // How long the replayed response should take to arrive
+  Duration latency(Exchange exchange) {
+    return emulateLatency ? Duration.ofNanos(exchange.nanos()) : Duration.ZERO;
+  }
+
+  // Method, URI with sorted query parameters and the body; form bodies (the EC2 and IAM query protocols) are
+  // sorted too, so only the parameters matter and not the order the SDK wrote them in
+  static String key(String method, URI uri, boolean form, byte[] body) {
+    StringBuilder key = new StringBuilder(method).append(' ').append(uri.getScheme()).append("://")
+        .append(uri.getRawAuthority()).append(uri.getRawPath() == null || uri.getRawPath().isEmpty()
+            ? "/" : uri.getRawPath());
+    if (uri.getRawQuery() != null) {
+      key.append('?').append(sorted(uri.getRawQuery()));
+    }
+    if (body.length > 0) {
+      String text = new String(body, StandardCharsets.UTF_8);
+      key.append('\n').append(form ? sorted(text) : text);
+    }
+    return key.toString();
+  }
+
+  private static String sorted(String parameters) {
+    String[] pairs = parameters.split("&");
+    Arrays.sort(pairs);
+    return String.join("&", pairs);
+  }
+
+  void save() {
+    try {
+      Path directory = file.toAbsolutePath().getParent();
+      Files.createDirectories(directory);
+      Path temp = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+      try (DataOutputStream out = new DataOutputStream(new GZIPOutputStream(Files.newOutputStream(temp)))) {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        // sorted, so the same recording gives the same file
+        Map<String, List<Exchange>> sorted = new TreeMap<>(exchanges);
+        out.writeInt(sorted.size());
+        for (Map.Entry<String, List<Exchange>> entry : sorted.entrySet()) {
+          writeString(out, entry.getKey());
+          List<Exchange> recorded = List.copyOf(entry.getValue());
+          out.writeInt(recorded.size());
+          for (Exchange exchange : recorded) {
+            writeExchange(out, exchange);
+          }
+        }
+      }
+      Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private static void writeExchange(DataOutputStream out, Exchange exchange) throws IOException {
+    out.writeInt(exchange.status());
+    out.writeLong(exchange.nanos());
+    out.writeInt(exchange.headers().size());
+    for (Map.Entry<String, List<String>> header : exchange.headers().entrySet()) {
+      writeString(out, header.getKey());
+      out.writeInt(header.getValue().size());
+      for (String value : header.getValue()) {
+        writeString(out, value);
+      }
+    }
+    out.writeInt(exchange.body().length);
+    out.write(exchange.body());
+  }
+
+  private static Exchange readExchange(DataInputStream in) throws IOException {
+    int status = in.readInt();
+    long nanos = in.readLong();
+    int headerCount = in.readInt();
+    Map<String, List<String>> headers = new LinkedHashMap<>();
+    for (int i = 0; i < headerCount; i++) {
+      String name = readString(in);
+      List<String> values = new ArrayList<>();
+      for (int j = in.readInt(); j > 0; j--) {
+        values.add(readString(in));
+      }
+      headers.put(name, List.copyOf(values));
+    }
+    byte[] body = new byte[in.readInt()];
+    in.readFully(body);
+    return new Exchange(status, Collections.unmodifiableMap(headers), body, nanos);
+  }
+
+  // writeUTF stops at 64 KB, keys carry whole request bodies
+  private static void writeString(DataOutputStream out, String value) throws IOException {
+    byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  private static String readString(DataInputStream in) throws IOException {
+    byte[] bytes = new byte[in.readInt()];
+    in.readFully(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+}
@@ -0,0 +1,178 @@
+package aws.common;
+
+import java.io.IOException;
+import java.net.Authenticator;
+import java.net.CookieHandler;
+import java.net.ProxySelector;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSession;
+
+// The java.net.http side of a Cassette, for the application probes. Requests are keyed by method and URI only:
+// the probes are GETs. Replayed responses go through the caller's body handler like live ones, and with latency
+// emulation they complete after the recorded time, so the probe timeouts still apply.
+class CassetteHttpClient extends HttpClient {
+  private final Cassette cassette;
+  // sends only when recording, but its configuration is reported either way
+  private final HttpClient delegate;
+
+  CassetteHttpClient(Cassette cassette, HttpClient delegate) {
+    this.cassette = cassette;
+    this.delegate = delegate;
+  }
+
+  @Override
+  public <T> HttpResponse<T> send(HttpRequest request, HttpResponse.BodyHandler<T> handler)
+      throws IOException, InterruptedException {
+    try {
+      return sendAsync(request, handler).get();
+    } catch (ExecutionException e) {
+      throw e.getCause() instanceof IOException io ? io : new IOException(e.getCause());
+    }
+  }
+
+  @Override
+  public <T> CompletableFuture<HttpResponse<T>> sendAsync(HttpRequest request, HttpResponse.BodyHandler<T> handler) {
+    String key = Cassette.key(request.method(), request.uri(), false, new byte[0]);
+    if (!cassette.isRecording()) {
+      Cassette.Exchange exchange;
+      try {
+        exchange = cassette.replay(key);
+      } catch (IllegalStateException e) {
+        return CompletableFuture.failedFuture(new IOException(e.getMessage(), e));
+      }
+      Executor later = CompletableFuture.delayedExecutor(cassette.latency(exchange).toNanos(), TimeUnit.NANOSECONDS);
+      return CompletableFuture.supplyAsync(() -> respond(request, exchange, handler), later);
+    }
+
+    long start = System.nanoTime();
+    return delegate.sendAsync(request, HttpResponse.BodyHandlers.ofByteArray()).thenApply(response -> {
+      Cassette.Exchange exchange = new Cassette.Exchange(response.statusCode(), response.headers().map(),
+          response.body(), System.nanoTime() - start);
+      cassette.record(key, exchange);
+      return respond(request, exchange, handler);
+    });
+  }
+
+  @Override
+  public <T> CompletableFuture<HttpResponse<T>> sendAsync(HttpRequest request, HttpResponse.BodyHandler<T> handler,
+                                                          HttpResponse.PushPromiseHandler<T> pushPromiseHandler) {
+    return sendAsync(request, handler);
+  }
+
+  // Feeds the recorded body to the caller's handler in one buffer
+  private static <T> HttpResponse<T> respond(HttpRequest request, Cassette.Exchange exchange,
+                                             HttpResponse.BodyHandler<T> handler) {
+    HttpHeaders headers = HttpHeaders.of(exchange.headers(), (name, value) -> true);
+    HttpResponse.BodySubscriber<T> subscriber = handler.apply(new Info(exchange.status(), headers, Version.HTTP_1_1));
+    subscriber.onSubscribe(new Flow.Subscription() {
+      private boolean done;
+
+      @Override
+      public synchronized void request(long n) {
+        if (!done && n > 0) {
+          done = true;
+          subscriber.onNext(List.of(ByteBuffer.wrap(exchange.body()).asReadOnlyBuffer()));
+          subscriber.onComplete();
+        }
+      }
+
+      @Override
+      public synchronized void cancel() {
+        done = true;
+      }
+    });
+    try {
+      return new Response<>(request, exchange.status(), headers, subscriber.getBody().toCompletableFuture().join());
+    } catch (CompletionException e) {
+      throw new IllegalStateException("Body handler failed on the recorded response of " + request.uri(),
+          e.getCause());
+    }
+  }
+
+  private record Info(int statusCode, HttpHeaders headers, Version version) implements HttpResponse.ResponseInfo {
+  }
+
+  private record Response<T>(HttpRequest request, int statusCode, HttpHeaders headers, T body)
+      implements HttpResponse<T> {
+    @Override
+    public Optional<HttpResponse<T>> previousResponse() {
+      return Optional.empty();
+    }
+
+    @Override
+    public Optional<SSLSession> sslSession() {
+      return Optional.empty();
+    }
+
+    @Override
+    public URI uri() {
+      return request.uri();
+    }
+
+    @Override
+    public Version version() {
+      return Version.HTTP_1_1;
+    }
+  }
+
+  @Override
+  public Optional<CookieHandler> cookieHandler() {
+    return delegate.cookieHandler();
+  }
+
+  @Override
+  public Optional<Duration> connectTimeout() {
+    return delegate.connectTimeout();
+  }
+
+  @Override
+  public Redirect followRedirects() {
+    return delegate.followRedirects();
+  }
+
+  @Override
+  public Optional<ProxySelector> proxy() {
+    return delegate.proxy();
+  }
+
+  @Override
+  public SSLContext sslContext() {
+    return delegate.sslContext();
+  }
+
+  @Override
+  public SSLParameters sslParameters() {
+    return delegate.sslParameters();
+  }
+
+  @Override
+  public Optional<Authenticator> authenticator() {
+    return delegate.authenticator();
+  }
+
+  @Override
+  public Version version() {
+    return delegate.version();
+  }
+
+  @Override
+  public Optional<Executor> executor() {
+    return delegate.executor();
+  }
+}
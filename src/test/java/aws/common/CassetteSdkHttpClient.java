@@ -0,0 +1,122 @@
+package aws.common;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import software.amazon.awssdk.http.AbortableInputStream;
+import software.amazon.awssdk.http.ContentStreamProvider;
+import software.amazon.awssdk.http.ExecutableHttpRequest;
+import software.amazon.awssdk.http.HttpExecuteRequest;
+import software.amazon.awssdk.http.HttpExecuteResponse;
+import software.amazon.awssdk.http.SdkHttpClient;
+import software.amazon.awssdk.http.SdkHttpRequest;
+import software.amazon.awssdk.http.SdkHttpResponse;
+import software.amazon.awssdk.utils.AttributeMap;
+
+// The SDK's HTTP layer over a Cassette: records what the real client sends and receives, or answers from the
+// cassette without opening a connection. Signing, retries and unmarshalling stay in the SDK, so replayed calls
+// go through the same code as live ones.
+class CassetteSdkHttpClient implements SdkHttpClient {
+  private final Cassette cassette;
+  // null when replaying
+  private final SdkHttpClient delegate;
+
+  CassetteSdkHttpClient(Cassette cassette, SdkHttpClient delegate) {
+    this.cassette = cassette;
+    this.delegate = delegate;
+  }
+
+  // Builds the real client only when recording, with the defaults the SDK hands to it
+  static final class Builder implements SdkHttpClient.Builder<Builder> {
+    private final Cassette cassette;
+    private final SdkHttpClient.Builder<?> delegate;
+
+    Builder(Cassette cassette, SdkHttpClient.Builder<?> delegate) {
+      this.cassette = cassette;
+      this.delegate = delegate;
+    }
+
+    @Override
+    public SdkHttpClient buildWithDefaults(AttributeMap serviceDefaults) {
+      return new CassetteSdkHttpClient(cassette,
+          cassette.isRecording() ? delegate.buildWithDefaults(serviceDefaults) : null);
+    }
+  }
+
+  @Override
+  public ExecutableHttpRequest prepareRequest(HttpExecuteRequest request) {
+    return new ExecutableHttpRequest() {
+      @Override
+      public HttpExecuteResponse call() throws IOException {
+        return execute(request);
+      }
+
+      @Override
+      public void abort() {
+      }
+    };
+  }
+
+  @Override
+  public String clientName() {
+    return "Cassette";
+  }
+
+  @Override
+  public void close() {
+    if (delegate != null) {
+      delegate.close();
+    }
+  }
+
+  private HttpExecuteResponse execute(HttpExecuteRequest request) throws IOException {
+    SdkHttpRequest http = request.httpRequest();
+    byte[] body = read(request.contentStreamProvider().map(ContentStreamProvider::newStream));
+    boolean form = http.firstMatchingHeader("Content-Type")
+        .filter(type -> type.startsWith("application/x-www-form-urlencoded")).isPresent();
+    String key = Cassette.key(http.method().name(), http.getUri(), form, body);
+
+    Cassette.Exchange exchange = delegate == null ? replay(key) : record(key, request, body);
+    return HttpExecuteResponse.builder()
+        .response(SdkHttpResponse.builder().statusCode(exchange.status()).headers(exchange.headers()).build())
+        .responseBody(AbortableInputStream.create(new ByteArrayInputStream(exchange.body())))
+        .build();
+  }
+
+  private Cassette.Exchange replay(String key) throws IOException {
+    Cassette.Exchange exchange = cassette.replay(key);
+    try {
+      TimeUnit.NANOSECONDS.sleep(cassette.latency(exchange).toNanos());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("interrupted while replaying " + key);
+    }
+    return exchange;
+  }
+
+  // The request body was consumed for the key, so the real client gets a copy of it
+  private Cassette.Exchange record(String key, HttpExecuteRequest request, byte[] body) throws IOException {
+    HttpExecuteRequest.Builder copy = HttpExecuteRequest.builder().request(request.httpRequest())
+        .contentStreamProvider(ContentStreamProvider.fromByteArrayUnsafe(body));
+    request.metricCollector().ifPresent(copy::metricCollector);
+    long start = System.nanoTime();
+    HttpExecuteResponse response = delegate.prepareRequest(copy.build()).call();
+    byte[] responseBody = read(response.responseBody().map(InputStream.class::cast));
+    Cassette.Exchange exchange = new Cassette.Exchange(response.httpResponse().statusCode(),
+        response.httpResponse().headers(), responseBody, System.nanoTime() - start);
+    cassette.record(key, exchange);
+    return exchange;
+  }
+
+  private static byte[] read(Optional<InputStream> stream) throws IOException {
+    if (stream.isEmpty()) {
+      return new byte[0];
+    }
+    try (InputStream in = stream.get()) {
+      return in.readAllBytes();
+    }
+  }
+}
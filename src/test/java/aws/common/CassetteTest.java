@@ -0,0 +1,128 @@
+package aws.common;
+
+import aws.stub.Fleet;
+import aws.stub.LocalAwsServer;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.Executors;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.http.apache.ApacheHttpClient;
+import software.amazon.awssdk.services.ec2.Ec2Client;
+import software.amazon.awssdk.services.ec2.model.Instance;
+import software.amazon.awssdk.services.ec2.model.Reservation;
+
+public class CassetteTest {
+  private static final Duration LATENCY = Duration.ofMillis(150);
+
+  @Test(description = "Paged SDK calls recorded against the stub replay the same responses once it is gone",
+      groups = "offline")
+  public void verifySdkRecordAndReplay() throws IOException {
+    Path file = Files.createTempDirectory("cassette").resolve("ec2.cassette.gz");
+    Cassette recording = Cassette.recording(file);
+    List<Instance> recorded;
+    long requests;
+    URI endpoint;
+    try (LocalAwsServer server = new LocalAwsServer(Fleet.generate(100, 2), Duration.ZERO, 0, 30);
+         Ec2Client ec2 = Clients.configure(Ec2Client.builder(), server)
+             .httpClient(new CassetteSdkHttpClient(recording, ApacheHttpClient.create())).build()) {
+      recorded = instances(ec2);
+      requests = server.requestCount();
+      endpoint = server.endpoint();
+    }
+    recording.save();
+
+    Cassette replay = Cassette.load(file, false);
+    Assert.assertEquals(replay.size(), requests);
+    try (Ec2Client ec2 = Ec2Client.builder().region(Clients.region()).endpointOverride(endpoint)
+        .credentialsProvider(StaticCredentialsProvider.create(AwsBasicCredentials.create("replay", "replay")))
+        .httpClient(new CassetteSdkHttpClient(replay, null)).build()) {
+      Assert.assertEquals(instances(ec2), recorded);
+    }
+  }
+
+  @Test(description = "Form parameters in any order give the same key, a different value does not",
+      groups = "offline")
+  public void verifyCanonicalKey() {
+    URI uri = URI.create("https://ec2.eu-central-1.amazonaws.com/?b=2&a=1");
+    byte[] body = "Version=2016-11-15&Action=DescribeInstances&NextToken=x".getBytes(StandardCharsets.UTF_8);
+    byte[] reordered = "Action=DescribeInstances&NextToken=x&Version=2016-11-15".getBytes(StandardCharsets.UTF_8);
+    byte[] other = "Action=DescribeInstances&NextToken=y&Version=2016-11-15".getBytes(StandardCharsets.UTF_8);
+
+    Assert.assertEquals(Cassette.key("POST", uri, true, body),
+        Cassette.key("POST", URI.create("https://ec2.eu-central-1.amazonaws.com/?a=1&b=2"), true, reordered));
+    Assert.assertNotEquals(Cassette.key("POST", uri, true, body), Cassette.key("POST", uri, true, other));
+  }
+
+  @Test(description = "Probe responses replay through the caller's body handler, at the recorded pace on request",
+      groups = "offline")
+  public void verifyProbeRecordAndReplay() throws Exception {
+    HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+    server.createContext("/", CassetteTest::slowAnswer);
+    server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+    server.start();
+    URI uri = URI.create("http://127.0.0.1:" + server.getAddress().getPort() + "/");
+    HttpRequest request = HttpRequest.newBuilder(uri).GET().build();
+
+    Path file = Files.createTempDirectory("cassette").resolve("probe.cassette.gz");
+    Cassette recording = Cassette.recording(file);
+    HttpResponse<String> live;
+    try {
+      live = new CassetteHttpClient(recording, HttpClient.newHttpClient())
+          .send(request, HttpResponse.BodyHandlers.ofString());
+    } finally {
+      server.stop(0);
+    }
+    recording.save();
+
+    HttpClient fast = new CassetteHttpClient(Cassette.load(file, false), HttpClient.newHttpClient());
+    long start = System.nanoTime();
+    HttpResponse<String> replayed = fast.send(request, HttpResponse.BodyHandlers.ofString());
+    Assert.assertTrue(Duration.ofNanos(System.nanoTime() - start).compareTo(LATENCY) < 0);
+    Assert.assertEquals(replayed.statusCode(), live.statusCode());
+    Assert.assertEquals(replayed.body(), live.body());
+    Assert.assertEquals(replayed.headers().firstValue("Content-Type"), live.headers().firstValue("Content-Type"));
+
+    HttpClient paced = new CassetteHttpClient(Cassette.load(file, true), HttpClient.newHttpClient());
+    start = System.nanoTime();
+    Assert.assertEquals(paced.send(request, HttpResponse.BodyHandlers.ofString()).body(), live.body());
+    Assert.assertTrue(Duration.ofNanos(System.nanoTime() - start).compareTo(LATENCY) >= 0);
+
+    Assert.assertThrows(IOException.class, () -> fast.send(HttpRequest.newBuilder(uri.resolve("/other")).build(),
+        HttpResponse.BodyHandlers.ofString()));
+  }
+
+  private static List<Instance> instances(Ec2Client ec2) {
+    return ec2.describeInstancesPaginator().reservations().stream()
+        .map(Reservation::instances).flatMap(List::stream).toList();
+  }
+
+  private static void slowAnswer(HttpExchange exchange) throws IOException {
+    byte[] body = "{\"availability_zone\":\"eu-central-1a\"}".getBytes(StandardCharsets.UTF_8);
+    try {
+      Thread.sleep(LATENCY.toMillis());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    exchange.getResponseHeaders().add("Content-Type", "application/json");
+    exchange.sendResponseHeaders(200, body.length);
+    try (OutputStream out = exchange.getResponseBody()) {
+      out.write(body);
+    }
+  }
+}
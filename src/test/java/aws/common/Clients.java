@@ -0,0 +1,140 @@
+package aws.common;
+
+import aws.stub.LocalAwsServer;
+import java.net.URI;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.AwsCredentialsProvider;
+import software.amazon.awssdk.auth.credentials.EnvironmentVariableCredentialsProvider;
+import software.amazon.awssdk.auth.credentials.ProfileCredentialsProvider;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.awscore.client.builder.AwsClientBuilder;
+import software.amazon.awssdk.core.SdkClient;
+import software.amazon.awssdk.core.client.config.ClientOverrideConfiguration;
+import software.amazon.awssdk.core.interceptor.ExecutionInterceptor;
+import software.amazon.awssdk.http.apache.ApacheHttpClient;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.ec2.Ec2Client;
+import software.amazon.awssdk.services.iam.IamClient;
+
+// Points the clients at the real account, at -Daws.endpoint, or at the embedded stub with -Daws.stub=true;
+// -Daws.cassette records their HTTP exchanges or replays them without the network (see Cassette).
+// ec2() and iam() hand out one pooled, rate-limited client per service/region/account for the whole suite;
+// ClientsListener closes them when the suite finishes, tests never do.
+public class Clients {
+  // Account names other than the default one are credential profiles from ~/.aws/credentials
+  public static final String DEFAULT_ACCOUNT = "default";
+
+  private static final Region REGION = Region.of(TestConfig.get("aws.region", "eu-central-1"));
+  private static final CallMetricsInterceptor METRICS = new CallMetricsInterceptor();
+  private static final Map<ClientKey, SdkClient> REGISTRY = new ConcurrentHashMap<>();
+
+  record ClientKey(String service, Region region, String account) {
+  }
+
+  public static Region region() {
+    return REGION;
+  }
+
+  public static Ec2Client ec2() {
+    return ec2(REGION, DEFAULT_ACCOUNT);
+  }
+
+  public static Ec2Client ec2(Region region, String account) {
+    return shared(Ec2Client.SERVICE_NAME, region, account,
+        () -> rateLimited(configure(Ec2Client.builder(), region, account))
+            .httpClientBuilder(Cassette.wrap(pooledHttpClient())).build());
+  }
+
+  public static IamClient iam() {
+    return shared(IamClient.SERVICE_NAME, REGION, DEFAULT_ACCOUNT,
+        () -> rateLimited(configure(IamClient.builder())).httpClientBuilder(Cassette.wrap(pooledHttpClient()))
+            .build());
+  }
+
+  // Builds the clients up front and in parallel, so the first test does not pay for SDK start-up
+  static void warmUp() {
+    CompletableFuture.allOf(CompletableFuture.runAsync(Clients::ec2), CompletableFuture.runAsync(Clients::iam))
+        .join();
+  }
+
+  static void closeAll() {
+    List<SdkClient> clients = List.copyOf(REGISTRY.values());
+    REGISTRY.clear();
+    clients.forEach(SdkClient::close);
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <C extends SdkClient> C shared(String service, Region region, String account, Supplier<C> factory) {
+    return (C) REGISTRY.computeIfAbsent(new ClientKey(service, region, account), key -> factory.get());
+  }
+
+  // Enough connections for every test thread plus the crawler's in-flight calls, kept alive between tests
+  private static ApacheHttpClient.Builder pooledHttpClient() {
+    int parallelism = TestConfig.getInt("test.parallelism", Runtime.getRuntime().availableProcessors());
+    return ApacheHttpClient.builder()
+        .maxConnections(TestConfig.getInt("clients.maxConnections",
+            parallelism + TestConfig.getInt("crawler.maxInFlight", 8)))
+        .tcpKeepAlive(true)
+        .connectionMaxIdleTime(Duration.ofMinutes(1))
+        .useIdleConnectionReaper(true);
+  }
+
+  // Every client gets its own limiter, so each endpoint is paced by its own throttling; a replayed cassette has none
+  public static <B extends AwsClientBuilder<B, ?>> B rateLimited(B builder) {
+    if (Cassette.replaying()) {
+      return builder;
+    }
+    return addInterceptor(builder, RateLimiter.fromConfig());
+  }
+
+  public static <B extends AwsClientBuilder<B, ?>> B configure(B builder) {
+    return configure(builder, REGION, DEFAULT_ACCOUNT);
+  }
+
+  public static <B extends AwsClientBuilder<B, ?>> B configure(B builder, Region region, String account) {
+    addInterceptor(builder, METRICS);
+
+    if (LocalAwsServer.enabled()) {
+      return configure(builder, LocalAwsServer.shared()).region(region);
+    }
+
+    builder.region(region);
+
+    String endpoint = TestConfig.get("aws.endpoint", null);
+    if (endpoint != null) {
+      builder.endpointOverride(URI.create(endpoint));
+    }
+    return builder.credentialsProvider(credentials(account));
+  }
+
+  public static <B extends AwsClientBuilder<B, ?>> B configure(B builder, LocalAwsServer server) {
+    return builder.region(REGION).endpointOverride(server.endpoint())
+        .credentialsProvider(StaticCredentialsProvider.create(AwsBasicCredentials.create("stub", "stub")));
+  }
+
+  private static AwsCredentialsProvider credentials(String account) {
+    // the recorded responses do not check signatures
+    if (Cassette.replaying()) {
+      return StaticCredentialsProvider.create(AwsBasicCredentials.create("replay", "replay"));
+    }
+    if (DEFAULT_ACCOUNT.equals(account)) {
+      //AWS_ACCESS_KEY_ID and AWS_SECRET_ACCESS_KEY environment variables should be set
+      return EnvironmentVariableCredentialsProvider.create();
+    }
+    return ProfileCredentialsProvider.create(account);
+  }
+
+  // overrideConfiguration(...) replaces the whole configuration, so interceptors are appended to the current one
+  private static <B extends AwsClientBuilder<B, ?>> B addInterceptor(B builder, ExecutionInterceptor interceptor) {
+    ClientOverrideConfiguration current = builder.overrideConfiguration();
+    ClientOverrideConfiguration.Builder config =
+        current == null ? ClientOverrideConfiguration.builder() : current.toBuilder();
+    return builder.overrideConfiguration(config.addExecutionInterceptor(interceptor).build());
+  }
+}
@@ -0,0 +1,18 @@
+package aws.common;
+
+import org.testng.ISuite;
+import org.testng.ISuiteListener;
+
+// Suite-scoped lifetime of the shared clients: built once before the first test, closed after the last one
+public class ClientsListener implements ISuiteListener {
+  @Override
+  public void onStart(ISuite suite) {
+    Clients.warmUp();
+  }
+
+  @Override
+  public void onFinish(ISuite suite) {
+    Clients.closeAll();
+    Cassette.finish();
+  }
+}
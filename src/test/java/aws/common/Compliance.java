@@ -0,0 +1,117 @@
+package aws.common;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Function;
+
+// Declarative compliance checks: a JSON spec is compiled once into rules, which are then evaluated against an
+// inventory in a single pass - every subject is visited once and runs all subject rules, with the subjects split
+// across cores by fork-join when -Dcompliance.parallel=true (the default). Every violation is reported, none stops
+// the evaluation.
+public class Compliance {
+  // subjects per fork-join leaf; below this the split costs more than the checks
+  private static final int SPLIT_THRESHOLD = 256;
+
+  public record Violation(String ruleId, String description, String subject, String message) {
+    @Override
+    public String toString() {
+      return ruleId + " " + subject + ": " + message + " (" + description + ")";
+    }
+  }
+
+  // Returns the violation message, or null when the subject complies
+  @FunctionalInterface
+  public interface Check<C, S> {
+    String check(C context, S subject);
+  }
+
+  public record Rule<C, S>(String id, String description, Check<C, S> check) {
+  }
+
+  // Subject rules run per subject, inventory rules once against the context
+  public record Evaluator<C, T>(List<Rule<C, T>> subjectRules, List<Rule<C, C>> inventoryRules,
+                                Function<T, String> subjectName) {
+    public List<Violation> evaluate(C context, List<T> subjects) {
+      return evaluate(context, subjects, TestConfig.getBoolean("compliance.parallel", true));
+    }
+
+    public List<Violation> evaluate(C context, List<T> subjects, boolean parallel) {
+      // parallel streams run on the same fork-join pool
+      List<Violation> result = new ArrayList<>((parallel ? inventoryRules.parallelStream() : inventoryRules.stream())
+          .map(rule -> {
+            String message = rule.check().check(context, context);
+            return message == null ? null : new Violation(rule.id(), rule.description(), "inventory", message);
+          })
+          .filter(Objects::nonNull).toList());
+      if (parallel && subjects.size() > SPLIT_THRESHOLD) {
+        result.addAll(ForkJoinPool.commonPool().invoke(new Pass<>(this, context, subjects, 0, subjects.size())));
+      } else {
+        result.addAll(pass(context, subjects, 0, subjects.size()));
+      }
+      return result;
+    }
+
+    private List<Violation> pass(C context, List<T> subjects, int from, int to) {
+      List<Violation> result = new ArrayList<>();
+      for (int i = from; i < to; i++) {
+        T subject = subjects.get(i);
+        for (Rule<C, T> rule : subjectRules) {
+          String message = rule.check().check(context, subject);
+          if (message != null) {
+            result.add(new Violation(rule.id(), rule.description(), subjectName.apply(subject), message));
+          }
+        }
+      }
+      return result;
+    }
+  }
+
+  // Halves the subject range until it is small enough; violations keep the subjects' order
+  private static final class Pass<C, T> extends RecursiveTask<List<Violation>> {
+    private final Evaluator<C, T> evaluator;
+    private final C context;
+    private final List<T> subjects;
+    private final int from;
+    private final int to;
+
+    private Pass(Evaluator<C, T> evaluator, C context, List<T> subjects, int from, int to) {
+      this.evaluator = evaluator;
+      this.context = context;
+      this.subjects = subjects;
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    protected List<Violation> compute() {
+      if (to - from <= SPLIT_THRESHOLD) {
+        return evaluator.pass(context, subjects, from, to);
+      }
+      int middle = (from + to) >>> 1;
+      Pass<C, T> left = new Pass<>(evaluator, context, subjects, from, middle);
+      left.fork();
+      List<Violation> right = new Pass<>(evaluator, context, subjects, middle, to).compute();
+      List<Violation> result = new ArrayList<>(left.join());
+      result.addAll(right);
+      return result;
+    }
+  }
+
+  // Specs live on the test classpath, e.g. compliance/ec2.json
+  public static <S> S loadSpec(String resource, Class<S> type) {
+    try (InputStream json = Compliance.class.getClassLoader().getResourceAsStream(resource)) {
+      if (json == null) {
+        throw new IllegalArgumentException("No compliance spec " + resource + " on the classpath");
+      }
+      return Json.read(json, type);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+}
@@ -0,0 +1,12 @@
+package aws.common;
+
+// -Dcrawler.mode=async switches the helpers to the concurrent crawlers and prefetched paging, limited by
+// crawler.maxInFlight; sync makes one call at a time
+public enum CrawlerMode {
+  SYNC,
+  ASYNC;
+
+  public static CrawlerMode current() {
+    return valueOf(TestConfig.get("crawler.mode", "sync").toUpperCase());
+  }
+}
@@ -0,0 +1,47 @@
+package aws.common;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// One preconfigured, thread-safe mapper for every JSON payload of the suite.
+// Single values are accepted where an array is expected, as IAM allows "Action": "s3:*".
+public class Json {
+  private static final ObjectMapper MAPPER = new ObjectMapper()
+      .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES)
+      .enable(DeserializationFeature.ACCEPT_SINGLE_VALUE_AS_ARRAY);
+  private static final Map<Class<?>, ObjectReader> READERS = new ConcurrentHashMap<>();
+
+  public static ObjectMapper mapper() {
+    return MAPPER;
+  }
+
+  public static <T> T read(String json, Class<T> type) throws JsonProcessingException {
+    return reader(type).readValue(json);
+  }
+
+  public static <T> T read(InputStream json, Class<T> type) throws IOException {
+    return reader(type).readValue(json);
+  }
+
+  // Decodes the percent-encoding while parsing, without building the decoded String first
+  public static <T> T readUrlEncoded(String encodedJson, Class<T> type) throws JsonProcessingException {
+    try {
+      return read(new PercentDecodingInputStream(encodedJson), type);
+    } catch (JsonProcessingException e) {
+      throw e;
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private static ObjectReader reader(Class<?> type) {
+    return READERS.computeIfAbsent(type, MAPPER::readerFor);
+  }
+}
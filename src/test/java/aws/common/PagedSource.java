@@ -0,0 +1,47 @@
+package aws.common;
+
+import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+// A token/marker paginated API call. The streams are lazy: the first page is fetched on first use and a closed
+// stream starts no further fetch. pages() and stream() follow -Dcrawler.mode: async prefetches page N+1 on the
+// shared executor while page N is consumed, sync fetches every page on the calling thread. pages(executor)
+// prefetches whatever the mode; onDemand() never does, for short-circuiting lookups, which then stop without a page
+// in flight, and for callers that already run on the executor.
+@FunctionalInterface
+public interface PagedSource<T> {
+  Page<T> fetch(String token);
+
+  default Stream<Page<T>> pages() {
+    return pages(new PrefetchingIterator<>(this, CrawlerMode.current() == CrawlerMode.ASYNC
+        ? BoundedExecutor.shared() : null));
+  }
+
+  default Stream<Page<T>> pages(BoundedExecutor executor) {
+    return pages(new PrefetchingIterator<>(this, executor));
+  }
+
+  default Stream<T> stream() {
+    return pages().flatMap(page -> page.items().stream());
+  }
+
+  default Stream<T> onDemand() {
+    return pages(new PrefetchingIterator<>(this, null)).flatMap(page -> page.items().stream());
+  }
+
+  record Page<T>(List<T> items, String nextToken) {
+    // IAM style: the marker is only meaningful when the response is truncated
+    public static <T> Page<T> of(List<T> items, boolean truncated, String marker) {
+      return new Page<>(items, truncated ? marker : null);
+    }
+  }
+
+  private static <T> Stream<Page<T>> pages(PrefetchingIterator<T> iterator) {
+    return StreamSupport.stream(
+            Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED | Spliterator.NONNULL), false)
+        .onClose(iterator::close);
+  }
+}
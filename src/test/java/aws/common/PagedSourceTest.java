@@ -0,0 +1,84 @@
+package aws.common;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class PagedSourceTest {
+  private static final int PAGES = 5;
+  private static final int PAGE_SIZE = 10;
+
+  @Test(description = "A full listing fetches every page once and keeps their order", groups = "offline")
+  public void verifyFullListing() {
+    AtomicInteger fetches = new AtomicInteger();
+
+    List<Integer> items = numbers(fetches).stream().toList();
+
+    Assert.assertEquals(items, IntStream.range(0, PAGES * PAGE_SIZE).boxed().toList());
+    Assert.assertEquals(fetches.get(), PAGES);
+  }
+
+  @Test(description = "In sync crawler mode every page is fetched on the calling thread", groups = "offline")
+  public void verifySyncListingStaysOnCallingThread() {
+    Assert.assertEquals(CrawlerMode.current(), CrawlerMode.SYNC);
+    Set<Thread> fetchers = ConcurrentHashMap.newKeySet();
+    PagedSource<Integer> recorded = fetchedBy(fetchers);
+
+    Assert.assertEquals(recorded.stream().count(), (long) PAGES * PAGE_SIZE);
+    Assert.assertEquals(fetchers, Set.of(Thread.currentThread()));
+  }
+
+  @Test(description = "Pages of an executor are prefetched off the calling thread", groups = "offline")
+  public void verifyExecutorPrefetches() {
+    Set<Thread> fetchers = ConcurrentHashMap.newKeySet();
+    PagedSource<Integer> recorded = fetchedBy(fetchers);
+
+    try (BoundedExecutor executor = new BoundedExecutor(2)) {
+      Assert.assertEquals(recorded.pages(executor).count(), (long) PAGES);
+    }
+    Assert.assertFalse(fetchers.contains(Thread.currentThread()));
+  }
+
+  @Test(description = "A short-circuiting lookup fetches no page past the one with the match", groups = "offline")
+  public void verifyLookupStopsAtMatch() {
+    AtomicInteger fetches = new AtomicInteger();
+
+    try (Stream<Integer> items = numbers(fetches).onDemand()) {
+      Assert.assertTrue(items.anyMatch(item -> item == PAGE_SIZE + 3));
+    }
+
+    Assert.assertEquals(fetches.get(), 2);
+  }
+
+  @Test(description = "A stream closed before use fetches nothing", groups = "offline")
+  public void verifyClosedStreamFetchesNothing() {
+    AtomicInteger fetches = new AtomicInteger();
+
+    numbers(fetches).pages().close();
+
+    Assert.assertEquals(fetches.get(), 0);
+  }
+
+  private static PagedSource<Integer> fetchedBy(Set<Thread> fetchers) {
+    PagedSource<Integer> source = numbers(new AtomicInteger());
+    return token -> {
+      fetchers.add(Thread.currentThread());
+      return source.fetch(token);
+    };
+  }
+
+  // Pages of consecutive numbers; the token is the index of the next page
+  private static PagedSource<Integer> numbers(AtomicInteger fetches) {
+    return token -> {
+      fetches.incrementAndGet();
+      int page = token == null ? 0 : Integer.parseInt(token);
+      List<Integer> items = IntStream.range(page * PAGE_SIZE, (page + 1) * PAGE_SIZE).boxed().toList();
+      return new PagedSource.Page<>(items, page + 1 < PAGES ? String.valueOf(page + 1) : null);
+    };
+  }
+}
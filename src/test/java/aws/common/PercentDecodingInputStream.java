@@ -0,0 +1,75 @@
+package aws.common;
+
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+// URL-decoded UTF-8 bytes of an encoded string, decoded on the fly ('+' is a space, as in URLDecoder)
+class PercentDecodingInputStream extends InputStream {
+  private final String encoded;
+  private int position;
+  private byte[] pending;
+  private int pendingPosition;
+
+  PercentDecodingInputStream(String encoded) {
+    this.encoded = encoded;
+  }
+
+  @Override
+  public int read() {
+    if (pending != null) {
+      int b = pending[pendingPosition++] & 0xFF;
+      if (pendingPosition == pending.length) {
+        pending = null;
+      }
+      return b;
+    }
+    if (position >= encoded.length()) {
+      return -1;
+    }
+
+    char c = encoded.charAt(position++);
+    if (c == '%') {
+      // rejected like URLDecoder does, rather than decoded into a wrong byte
+      if (position + 1 >= encoded.length()) {
+        throw new IllegalArgumentException("Incomplete trailing escape (%) pattern");
+      }
+      int high = Character.digit(encoded.charAt(position), 16);
+      int low = Character.digit(encoded.charAt(position + 1), 16);
+      if (high < 0 || low < 0) {
+        throw new IllegalArgumentException("Illegal hex characters in escape (%) pattern: "
+            + encoded.substring(position - 1, position + 2));
+      }
+      position += 2;
+      return high << 4 | low;
+    }
+    if (c == '+') {
+      return ' ';
+    }
+    if (c < 0x80) {
+      return c;
+    }
+
+    // not expected in encoded text, pass it through as UTF-8
+    int end = Character.isHighSurrogate(c) && position < encoded.length() ? position + 1 : position;
+    pending = encoded.substring(position - 1, end).getBytes(StandardCharsets.UTF_8);
+    position = end;
+    pendingPosition = 0;
+    return read();
+  }
+
+  @Override
+  public int read(byte[] buffer, int offset, int length) {
+    if (length == 0) {
+      return 0;
+    }
+    int count = 0;
+    while (count < length) {
+      int b = read();
+      if (b < 0) {
+        break;
+      }
+      buffer[offset + count++] = (byte) b;
+    }
+    return count == 0 ? -1 : count;
+  }
+}
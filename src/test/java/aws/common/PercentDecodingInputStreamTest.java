@@ -0,0 +1,44 @@
+package aws.common;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+public class PercentDecodingInputStreamTest {
+  @DataProvider(name = "Encoded")
+  public Object[][] encoded() {
+    return new Object[][] {{"%7B%22a%22%3A%22b+c%22%7D"}, {"caf%C3%A9%2f%e2%82%AC"}, {"plain"}, {""}};
+  }
+
+  @DataProvider(name = "Invalid")
+  public Object[][] invalid() {
+    return new Object[][] {{"%zz"}, {"%4g"}, {"a%-1"}, {"%"}, {"%4"}};
+  }
+
+  @Test(description = "Decodes to the same bytes as URLDecoder", groups = "offline", dataProvider = "Encoded")
+  public void verifyDecoding(String encoded) throws IOException {
+    try (InputStream in = new PercentDecodingInputStream(encoded)) {
+      Assert.assertEquals(new String(in.readAllBytes(), StandardCharsets.UTF_8),
+          URLDecoder.decode(encoded, StandardCharsets.UTF_8));
+    }
+  }
+
+  @Test(description = "A malformed escape is rejected like URLDecoder rejects it", groups = "offline",
+      dataProvider = "Invalid", expectedExceptions = IllegalArgumentException.class)
+  public void verifyInvalidEscape(String encoded) throws IOException {
+    try (InputStream in = new PercentDecodingInputStream(encoded)) {
+      in.readAllBytes();
+    }
+  }
+
+  @Test(description = "The parser does not turn a malformed escape into a parse error or a wrong value",
+      groups = "offline", expectedExceptions = IllegalArgumentException.class)
+  public void verifyInvalidEscapeInJson() throws IOException {
+    Json.readUrlEncoded("%7B%22a%22%3A%22b%zz%22%7D", Map.class);
+  }
+}
@@ -0,0 +1,67 @@
+package aws.common;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+// With an executor, page N+1 is requested as soon as page N is handed out. Without one, every page is fetched on
+// the calling thread when it is asked for, so a consumer that stops early leaves nothing in flight.
+class PrefetchingIterator<T> implements Iterator<PagedSource.Page<T>>, AutoCloseable {
+  private final PagedSource<T> source;
+  private final BoundedExecutor executor;
+  private CompletableFuture<PagedSource.Page<T>> prefetched;
+  private String token;
+  private boolean exhausted;
+  // read by queued prefetches: once closed, none of them reaches the API
+  private volatile boolean closed;
+
+  PrefetchingIterator(PagedSource<T> source, BoundedExecutor executor) {
+    this.source = source;
+    this.executor = executor;
+  }
+
+  @Override
+  public boolean hasNext() {
+    return !closed && !exhausted;
+  }
+
+  @Override
+  public PagedSource.Page<T> next() {
+    if (!hasNext()) {
+      throw new NoSuchElementException();
+    }
+
+    PagedSource.Page<T> page;
+    try {
+      page = executor == null ? source.fetch(token) : (prefetched != null ? prefetched : prefetch(token)).join();
+    } catch (CompletionException e) {
+      exhausted = true;
+      if (e.getCause() instanceof RuntimeException cause) {
+        throw cause;
+      }
+      throw e;
+    } catch (RuntimeException e) {
+      exhausted = true;
+      throw e;
+    }
+
+    token = page.nextToken();
+    exhausted = token == null;
+    prefetched = executor == null || exhausted ? null : prefetch(token);
+    return page;
+  }
+
+  @Override
+  public void close() {
+    closed = true;
+    if (prefetched != null) {
+      prefetched.cancel(false);
+      prefetched = null;
+    }
+  }
+
+  private CompletableFuture<PagedSource.Page<T>> prefetch(String pageToken) {
+    return executor.submit(() -> closed ? null : source.fetch(pageToken));
+  }
+}
@@ -0,0 +1,107 @@
+package aws.common;
+
+import java.io.InputStream;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.function.LongSupplier;
+import software.amazon.awssdk.core.exception.AbortedException;
+import software.amazon.awssdk.core.interceptor.Context;
+import software.amazon.awssdk.core.interceptor.ExecutionAttributes;
+import software.amazon.awssdk.core.interceptor.ExecutionInterceptor;
+
+// Token bucket for one endpoint (service/region/account) that adapts to throttling (AIMD):
+// a throttled response halves the refill rate, every successful one grows it back by about 1 request/s per second.
+// Every attempt takes a token, so SDK retries are paced too.
+public class RateLimiter implements ExecutionInterceptor {
+  private static final long DECREASE_INTERVAL_NANOS = Duration.ofSeconds(1).toNanos();
+
+  private final LongSupplier clock;
+  private final double maxRate;
+  private final double minRate;
+  private final double burst;
+  private double rate;
+  private double tokens;
+  private long refilledAt;
+  private long decreasedAt;
+
+  public RateLimiter(double maxRate, int burst) {
+    this(maxRate, burst, System::nanoTime);
+  }
+
+  RateLimiter(double maxRate, int burst, LongSupplier clock) {
+    this.clock = clock;
+    this.maxRate = maxRate;
+    this.minRate = Math.min(1, maxRate);
+    this.burst = Math.max(1, burst);
+    this.rate = maxRate;
+    this.tokens = this.burst;
+    this.refilledAt = clock.getAsLong();
+    this.decreasedAt = refilledAt - DECREASE_INTERVAL_NANOS;
+  }
+
+  // EC2 refills its bucket for Describe* calls at 20 requests/s
+  static RateLimiter fromConfig() {
+    return new RateLimiter(TestConfig.getInt("rateLimit.rate", 20), TestConfig.getInt("rateLimit.burst", 40));
+  }
+
+  public void acquire() {
+    long waitNanos = reserve();
+    if (waitNanos > 0) {
+      try {
+        Thread.sleep(Duration.ofNanos(waitNanos));
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw AbortedException.builder().cause(e).build();
+      }
+    }
+  }
+
+  // Takes a token and returns how long to wait for it; a missing token is reserved, so waiting callers are served
+  // in order
+  synchronized long reserve() {
+    refill();
+    tokens -= 1;
+    return tokens >= 0 ? 0 : (long) (-tokens / rate * 1e9);
+  }
+
+  public synchronized double rate() {
+    return rate;
+  }
+
+  synchronized void onThrottled() {
+    long now = clock.getAsLong();
+    // calls that were already in flight report the same throttling episode, halve only once for it
+    if (now - decreasedAt < DECREASE_INTERVAL_NANOS) {
+      return;
+    }
+    refill();
+    decreasedAt = now;
+    rate = Math.max(minRate, rate / 2);
+    tokens = Math.min(tokens, 0);
+  }
+
+  synchronized void onSuccess() {
+    refill();
+    rate = Math.min(maxRate, rate + 1 / rate);
+  }
+
+  private void refill() {
+    long now = clock.getAsLong();
+    tokens = Math.min(burst, tokens + (now - refilledAt) / 1e9 * rate);
+    refilledAt = now;
+  }
+
+  @Override
+  public void beforeTransmission(Context.BeforeTransmission context, ExecutionAttributes executionAttributes) {
+    acquire();
+  }
+
+  @Override
+  public Optional<InputStream> modifyHttpResponseContent(Context.ModifyHttpResponse context,
+                                                         ExecutionAttributes executionAttributes) {
+    if (context.httpResponse().isSuccessful()) {
+      onSuccess();
+    }
+    return Throttling.inspect(context, this::onThrottled);
+  }
+}
@@ -0,0 +1,95 @@
+package aws.common;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class RateLimiterTest {
+  private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+  private static final double DELTA = 1e-9;
+
+  private final AtomicLong clock = new AtomicLong();
+
+  @Test(description = "The burst is free, every further token waits 1/rate behind the ones reserved before it",
+      groups = "offline")
+  public void verifyTokenBucket() {
+    RateLimiter limiter = new RateLimiter(10, 2, clock::get);
+
+    Assert.assertEquals(limiter.reserve(), 0L);
+    Assert.assertEquals(limiter.reserve(), 0L);
+    Assert.assertEquals(limiter.reserve(), SECOND / 10);
+    Assert.assertEquals(limiter.reserve(), 2 * SECOND / 10);
+
+    // a second refills 10 tokens: the 2 reserved ones and the burst, no more
+    clock.addAndGet(SECOND);
+    Assert.assertEquals(limiter.reserve(), 0L);
+    Assert.assertEquals(limiter.reserve(), 0L);
+    Assert.assertEquals(limiter.reserve(), SECOND / 10);
+  }
+
+  @Test(description = "A throttled response halves the rate once per second, down to 1 request/s",
+      groups = "offline")
+  public void verifyThrottlingHalvesRate() {
+    RateLimiter limiter = new RateLimiter(20, 40, clock::get);
+
+    limiter.onThrottled();
+    Assert.assertEquals(limiter.rate(), 10, DELTA);
+    // the calls that were in flight report the same episode
+    clock.addAndGet(SECOND - 1);
+    limiter.onThrottled();
+    Assert.assertEquals(limiter.rate(), 10, DELTA);
+
+    clock.addAndGet(1);
+    limiter.onThrottled();
+    Assert.assertEquals(limiter.rate(), 5, DELTA);
+    for (int i = 0; i < 5; i++) {
+      clock.addAndGet(SECOND);
+      limiter.onThrottled();
+    }
+    Assert.assertEquals(limiter.rate(), 1, DELTA);
+  }
+
+  @Test(description = "Throttling drops the saved burst, the next call waits for a token at the halved rate",
+      groups = "offline")
+  public void verifyThrottlingDropsBurst() {
+    RateLimiter limiter = new RateLimiter(20, 40, clock::get);
+
+    limiter.onThrottled();
+
+    Assert.assertEquals(limiter.reserve(), SECOND / 10);
+  }
+
+  @Test(description = "Every success grows the rate by 1/rate, about 1 request/s per second, up to the maximum",
+      groups = "offline")
+  public void verifyRecovery() {
+    RateLimiter limiter = new RateLimiter(8, 1, clock::get);
+    limiter.onThrottled();
+    Assert.assertEquals(limiter.rate(), 4, DELTA);
+
+    limiter.onSuccess();
+    Assert.assertEquals(limiter.rate(), 4.25, DELTA);
+    limiter.onSuccess();
+    Assert.assertEquals(limiter.rate(), 4.25 + 1 / 4.25, DELTA);
+
+    for (int i = 0; i < 100; i++) {
+      limiter.onSuccess();
+    }
+    Assert.assertEquals(limiter.rate(), 8, DELTA);
+  }
+
+  @Test(description = "acquire() sleeps for the reserved wait", groups = "offline")
+  public void verifyAcquireWaits() {
+    RateLimiter limiter = new RateLimiter(20, 1);
+    limiter.acquire();
+
+    long start = System.nanoTime();
+    limiter.acquire();
+    limiter.acquire();
+    Duration elapsed = Duration.ofNanos(System.nanoTime() - start);
+
+    // each waits ~50 ms for its token
+    Assert.assertTrue(elapsed.compareTo(Duration.ofMillis(90)) >= 0, elapsed.toString());
+  }
+}
@@ -0,0 +1,67 @@
+package aws.common;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Supplier;
+
+// Holds one value for the whole suite. Concurrent first callers wait on the single in-flight load,
+// a failed load is not cached, and an expired value is reloaded by the next caller.
+public class SnapshotCache<T> {
+  private final Duration ttl;
+  private CompletableFuture<Snapshot<T>> current;
+
+  public SnapshotCache(Duration ttl) {
+    this.ttl = ttl;
+  }
+
+  public T get(Supplier<T> loader) {
+    CompletableFuture<Snapshot<T>> future;
+    boolean owner = false;
+
+    synchronized (this) {
+      if (current == null || isExpired(current)) {
+        current = new CompletableFuture<>();
+        owner = true;
+      }
+      future = current;
+    }
+
+    if (owner) {
+      try {
+        future.complete(new Snapshot<>(loader.get(), System.nanoTime()));
+      } catch (RuntimeException | Error e) {
+        synchronized (this) {
+          if (current == future) {
+            current = null;
+          }
+        }
+        future.completeExceptionally(e);
+        throw e;
+      }
+    }
+
+    try {
+      return future.join().value();
+    } catch (CompletionException e) {
+      if (e.getCause() instanceof RuntimeException cause) {
+        throw cause;
+      }
+      throw e;
+    }
+  }
+
+  public synchronized void invalidate() {
+    current = null;
+  }
+
+  private boolean isExpired(CompletableFuture<Snapshot<T>> future) {
+    if (!future.isDone() || future.isCompletedExceptionally()) {
+      return false;
+    }
+    return System.nanoTime() - future.join().loadedAt() > ttl.toNanos();
+  }
+
+  private record Snapshot<T>(T value, long loadedAt) {
+  }
+}
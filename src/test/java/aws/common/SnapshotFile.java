@@ -0,0 +1,221 @@
+package aws.common;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+// Compact binary inventory snapshots: a header, a table of the distinct strings, then varint-encoded records
+// that refer to strings by index. Files are memory-mapped for reading and replaced atomically on write.
+public class SnapshotFile {
+  private static final int MAGIC = 0x41575353; // "AWSS"
+  private static final int VERSION = 1;
+
+  public interface Codec<T> {
+    void write(Writer out, T value);
+
+    T read(Reader in);
+  }
+
+  // -Dinventory.source=snapshot reads <inventory.snapshot>/<name>.snap instead of calling the API;
+  // a live crawl is saved there whenever -Dinventory.snapshot is set, so the next run can replay or diff it
+  public static <T> T liveOrSnapshot(String name, Codec<T> codec, Supplier<T> crawl) {
+    String directory = TestConfig.get("inventory.snapshot", null);
+    if (directory == null) {
+      return crawl.get();
+    }
+
+    Path file = Path.of(directory, name + ".snap");
+    if ("snapshot".equals(TestConfig.get("inventory.source", "live"))) {
+      return read(file, name, codec);
+    }
+    T value = crawl.get();
+    write(file, name, codec, value);
+    return value;
+  }
+
+  public static <T> void write(Path file, String kind, Codec<T> codec, T value) {
+    Writer writer = new Writer();
+    codec.write(writer, value);
+
+    try {
+      if (file.toAbsolutePath().getParent() != null) {
+        Files.createDirectories(file.toAbsolutePath().getParent());
+      }
+      Path temp = Files.createTempFile(file.toAbsolutePath().getParent(), file.getFileName().toString(), ".tmp");
+      try (OutputStream out = Files.newOutputStream(temp)) {
+        writer.writeTo(out, kind);
+      }
+      Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  public static <T> T read(Path file, String kind, Codec<T> codec) {
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      return codec.read(new Reader(buffer, kind, file));
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  public static class Writer {
+    private final Map<String, Integer> stringIds = new HashMap<>();
+    private final List<String> strings = new ArrayList<>();
+    private final ByteArrayOutputStream payload = new ByteArrayOutputStream();
+
+    Writer() {
+      // index 0 is null
+      strings.add(null);
+    }
+
+    public void writeInt(int value) {
+      writeVarint((value << 1) ^ (value >> 31));
+    }
+
+    public void writeOptionalInt(Integer value) {
+      writeBoolean(value != null);
+      if (value != null) {
+        writeInt(value);
+      }
+    }
+
+    public void writeBoolean(boolean value) {
+      payload.write(value ? 1 : 0);
+    }
+
+    public void writeOptionalBoolean(Boolean value) {
+      payload.write(value == null ? 2 : value ? 1 : 0);
+    }
+
+    public void writeString(String value) {
+      if (value == null) {
+        writeVarint(0);
+        return;
+      }
+      Integer id = stringIds.get(value);
+      if (id == null) {
+        id = strings.size();
+        stringIds.put(value, id);
+        strings.add(value);
+      }
+      writeVarint(id);
+    }
+
+    public void writeStrings(Collection<String> values) {
+      writeInt(values.size());
+      values.forEach(this::writeString);
+    }
+
+    private void writeVarint(int value) {
+      while ((value & ~0x7F) != 0) {
+        payload.write((value & 0x7F) | 0x80);
+        value >>>= 7;
+      }
+      payload.write(value);
+    }
+
+    private void writeTo(OutputStream stream, String kind) throws IOException {
+      DataOutputStream out = new DataOutputStream(stream);
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeUTF(kind);
+      out.writeInt(strings.size());
+      for (int i = 1; i < strings.size(); i++) {
+        byte[] bytes = strings.get(i).getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+      }
+      payload.writeTo(out);
+      out.flush();
+    }
+  }
+
+  public static class Reader {
+    private final ByteBuffer buffer;
+    private final String[] strings;
+
+    Reader(ByteBuffer buffer, String kind, Path file) {
+      this.buffer = buffer;
+      if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+        throw new IllegalStateException(file + " is not a version " + VERSION + " inventory snapshot");
+      }
+      String fileKind = readUtf();
+      if (!kind.equals(fileKind)) {
+        throw new IllegalStateException(file + " is a " + fileKind + " snapshot, expected " + kind);
+      }
+
+      strings = new String[buffer.getInt()];
+      for (int i = 1; i < strings.length; i++) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        strings[i] = new String(bytes, StandardCharsets.UTF_8);
+      }
+    }
+
+    public int readInt() {
+      int value = readVarint();
+      return (value >>> 1) ^ -(value & 1);
+    }
+
+    public Integer readOptionalInt() {
+      return readBoolean() ? readInt() : null;
+    }
+
+    public boolean readBoolean() {
+      return buffer.get() == 1;
+    }
+
+    public Boolean readOptionalBoolean() {
+      byte value = buffer.get();
+      return value == 2 ? null : value == 1;
+    }
+
+    public String readString() {
+      return strings[readVarint()];
+    }
+
+    public List<String> readStrings() {
+      int size = readInt();
+      List<String> result = new ArrayList<>(size);
+      for (int i = 0; i < size; i++) {
+        result.add(readString());
+      }
+      return result;
+    }
+
+    private int readVarint() {
+      int result = 0;
+      for (int shift = 0; ; shift += 7) {
+        byte b = buffer.get();
+        result |= (b & 0x7F) << shift;
+        if (b >= 0) {
+          return result;
+        }
+      }
+    }
+
+    // DataOutputStream.writeUTF: unsigned short length, then modified UTF-8 (plain ASCII for the kind names)
+    private String readUtf() {
+      byte[] bytes = new byte[Short.toUnsignedInt(buffer.getShort())];
+      buffer.get(bytes);
+      return new String(bytes, StandardCharsets.UTF_8);
+    }
+  }
+}
@@ -0,0 +1,38 @@
+package aws.common;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+
+// Suite settings: -Dkey=value system property first, then KEY_NAME environment variable (dots as underscores)
+public class TestConfig {
+  public static String get(String key, String defaultValue) {
+    String value = System.getProperty(key);
+    if (value == null) {
+      value = System.getenv(key.toUpperCase().replace('.', '_'));
+    }
+    return value == null || value.isBlank() ? defaultValue : value.trim();
+  }
+
+  public static int getInt(String key, int defaultValue) {
+    return Integer.parseInt(get(key, String.valueOf(defaultValue)));
+  }
+
+  public static boolean getBoolean(String key, boolean defaultValue) {
+    return Boolean.parseBoolean(get(key, String.valueOf(defaultValue)));
+  }
+
+  // ISO-8601 durations, e.g. PT10M
+  public static Duration getDuration(String key, Duration defaultValue) {
+    String value = get(key, null);
+    return value == null ? defaultValue : Duration.parse(value);
+  }
+
+  public static List<String> getList(String key, List<String> defaultValue) {
+    String value = get(key, null);
+    if (value == null) {
+      return defaultValue;
+    }
+    return Arrays.stream(value.split(",")).map(String::trim).filter(item -> !item.isEmpty()).toList();
+  }
+}
@@ -0,0 +1,41 @@
+package aws.common;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Optional;
+import software.amazon.awssdk.core.interceptor.Context;
+
+// EC2 answers throttled calls with 503 RequestLimitExceeded, IAM with 400 Throttling
+class Throttling {
+  static boolean isThrottled(int status, byte[] body) {
+    if (status == 429) {
+      return true;
+    }
+    if (status < 400) {
+      return false;
+    }
+    String text = new String(body, StandardCharsets.UTF_8);
+    return text.contains("<Code>RequestLimitExceeded</Code>") || text.contains("<Code>Throttling</Code>")
+        || text.contains("<Code>ThrottlingException</Code>") || text.contains("<Code>TooManyRequests");
+  }
+
+  // Error bodies are small: the body is buffered to look for a throttling code and handed back to the SDK as a copy
+  static Optional<InputStream> inspect(Context.ModifyHttpResponse context, Runnable onThrottled) {
+    if (context.httpResponse().isSuccessful() || context.responseBody().isEmpty()) {
+      return context.responseBody();
+    }
+
+    try (InputStream body = context.responseBody().get()) {
+      byte[] bytes = body.readAllBytes();
+      if (isThrottled(context.httpResponse().statusCode(), bytes)) {
+        onThrottled.run();
+      }
+      return Optional.of(new ByteArrayInputStream(bytes));
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+}
@@ -0,0 +1,59 @@
+package aws.ec2;
+
+import java.util.List;
+
+// IPv4 prefix, e.g. 10.0.0.0/16; a plain address is a /32
+record Cidr(int address, int length) {
+  // RFC 1918, carrier-grade NAT, loopback and link-local space: not reachable from the internet
+  private static final List<Cidr> NON_PUBLIC = List.of(parse("10.0.0.0/8"),
+      parse("172.16.0.0/12"), parse("192.168.0.0/16"), parse("100.64.0.0/10"), parse("127.0.0.0/8"),
+      parse("169.254.0.0/16"));
+
+  Cidr {
+    address &= mask(length);
+  }
+
+  static Cidr parse(String value) {
+    int slash = value.indexOf('/');
+    int length = slash < 0 ? 32 : Integer.parseInt(value.substring(slash + 1));
+    return new Cidr(address(slash < 0 ? value : value.substring(0, slash)), length);
+  }
+
+  static int address(String value) {
+    String[] octets = value.split("\\.");
+    if (octets.length != 4) {
+      throw new IllegalArgumentException("Not an IPv4 address: " + value);
+    }
+    int result = 0;
+    for (String octet : octets) {
+      result = (result << 8) | Integer.parseInt(octet);
+    }
+    return result;
+  }
+
+  boolean contains(int other) {
+    return (other & mask(length)) == address;
+  }
+
+  boolean contains(Cidr other) {
+    return other.length >= length && contains(other.address);
+  }
+
+  // true when some address of the prefix is routable on the internet
+  boolean isPublic() {
+    return NON_PUBLIC.stream().noneMatch(range -> range.contains(this));
+  }
+
+  static int mask(int length) {
+    return length == 0 ? 0 : -1 << (32 - length);
+  }
+
+  static String format(int address) {
+    return (address >>> 24) + "." + ((address >>> 16) & 0xFF) + "." + ((address >>> 8) & 0xFF) + "." + (address & 0xFF);
+  }
+
+  @Override
+  public String toString() {
+    return format(address) + "/" + length;
+  }
+}
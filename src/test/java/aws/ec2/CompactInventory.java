@@ -0,0 +1,213 @@
+package aws.ec2;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import software.amazon.awssdk.services.ec2.model.SecurityGroupRule;
+
+// Columnar, de-duplicated inventory: one array per attribute, strings interned in a dictionary, addresses packed
+// into ints, and one shared tag list and rule set per distinct combination. Instances are materialised on access
+// from the shared parts, so the list reads like the records it was built from.
+final class CompactInventory extends AbstractList<Ec2Helper.Ec2Instance> implements RandomAccess {
+  private static final int NULL = -1;
+
+  private final String[] instanceIds;
+  private final int[] types;
+  private final int[] osNames;
+  private final int[] zones;
+  private final int[] regions;
+  private final int[] ebsSizes;
+  private final int[] publicIps;
+  private final int[] privateIps;
+  private final BitSet isPrivate;
+  private final BitSet hasPublicIp;
+  private final BitSet hasPrivateIp;
+  private final int[] tagSets;
+  private final int[] groupSets;
+
+  private final String[] dictionary;
+  private final List<List<String>> tagLists;
+  private final List<GroupSet> groupSetList;
+
+  // The groups of an instance with their rules, one object per distinct combination of groups
+  record GroupSet(List<String> groupIds, List<SecurityGroupRule> inRules, List<SecurityGroupRule> outRules) {
+  }
+
+  private CompactInventory(Builder builder) {
+    instanceIds = builder.instanceIds;
+    types = builder.types;
+    osNames = builder.osNames;
+    zones = builder.zones;
+    regions = builder.regions;
+    ebsSizes = builder.ebsSizes;
+    publicIps = builder.publicIps;
+    privateIps = builder.privateIps;
+    isPrivate = builder.isPrivate;
+    hasPublicIp = builder.hasPublicIp;
+    hasPrivateIp = builder.hasPrivateIp;
+    tagSets = builder.tagSets;
+    groupSets = builder.groupSets;
+    dictionary = builder.dictionary.toArray(String[]::new);
+    tagLists = List.copyOf(builder.tagLists);
+    groupSetList = List.copyOf(builder.groupSetList);
+  }
+
+  static CompactInventory of(List<Ec2Helper.Ec2Instance> instances) {
+    if (instances instanceof CompactInventory compact) {
+      return compact;
+    }
+    Builder builder = new Builder(instances.size());
+    for (int i = 0; i < instances.size(); i++) {
+      builder.set(i, instances.get(i));
+    }
+    return new CompactInventory(builder);
+  }
+
+  @Override
+  public int size() {
+    return instanceIds.length;
+  }
+
+  @Override
+  public Ec2Helper.Ec2Instance get(int index) {
+    GroupSet groups = groupSetList.get(groupSets[index]);
+    return new Ec2Helper.Ec2Instance(
+        instanceIds[index],
+        string(types[index]),
+        isPrivate.get(index),
+        tagLists.get(tagSets[index]),
+        ebsSizes[index],
+        string(osNames[index]),
+        hasPublicIp.get(index) ? Cidr.format(publicIps[index]) : null,
+        hasPrivateIp.get(index) ? Cidr.format(privateIps[index]) : null,
+        groups.groupIds(),
+        groups.inRules(),
+        groups.outRules(),
+        string(zones[index]),
+        string(regions[index]));
+  }
+
+  // Column reads that skip materialising the instance
+  String instanceId(int index) {
+    return instanceIds[index];
+  }
+
+  String type(int index) {
+    return string(types[index]);
+  }
+
+  GroupSet groupSet(int index) {
+    return groupSetList.get(groupSets[index]);
+  }
+
+  int distinctGroupSets() {
+    return groupSetList.size();
+  }
+
+  int distinctTagSets() {
+    return tagLists.size();
+  }
+
+  private String string(int id) {
+    return id == NULL ? null : dictionary[id];
+  }
+
+  private static final class Builder {
+    private final String[] instanceIds;
+    private final int[] types;
+    private final int[] osNames;
+    private final int[] zones;
+    private final int[] regions;
+    private final int[] ebsSizes;
+    private final int[] publicIps;
+    private final int[] privateIps;
+    private final BitSet isPrivate = new BitSet();
+    private final BitSet hasPublicIp = new BitSet();
+    private final BitSet hasPrivateIp = new BitSet();
+    private final int[] tagSets;
+    private final int[] groupSets;
+
+    private final List<String> dictionary = new ArrayList<>();
+    private final Map<String, Integer> dictionaryIds = new HashMap<>();
+    private final List<List<String>> tagLists = new ArrayList<>();
+    private final Map<List<String>, Integer> tagListIds = new HashMap<>();
+    private final List<GroupSet> groupSetList = new ArrayList<>();
+    private final Map<GroupSet, Integer> groupSetIds = new HashMap<>();
+    private final Map<SecurityGroupRule, SecurityGroupRule> rules = new HashMap<>();
+
+    private Builder(int size) {
+      instanceIds = new String[size];
+      types = new int[size];
+      osNames = new int[size];
+      zones = new int[size];
+      regions = new int[size];
+      ebsSizes = new int[size];
+      publicIps = new int[size];
+      privateIps = new int[size];
+      tagSets = new int[size];
+      groupSets = new int[size];
+    }
+
+    private void set(int index, Ec2Helper.Ec2Instance instance) {
+      instanceIds[index] = instance.instanceId();
+      types[index] = intern(instance.type());
+      osNames[index] = intern(instance.osName());
+      zones[index] = intern(instance.availabilityZone());
+      regions[index] = intern(instance.region());
+      ebsSizes[index] = instance.ebsSize();
+      isPrivate.set(index, instance.isPrivate());
+      if (instance.publicIp() != null) {
+        publicIps[index] = address(instance.publicIp());
+        hasPublicIp.set(index);
+      }
+      if (instance.privateIp() != null) {
+        privateIps[index] = address(instance.privateIp());
+        hasPrivateIp.set(index);
+      }
+      tagSets[index] = tagListIds.computeIfAbsent(instance.tags(), tags -> {
+        tagLists.add(tags.stream().map(this::internString).toList());
+        return tagLists.size() - 1;
+      });
+      GroupSet groups = new GroupSet(instance.securityGroupIds(), instance.inRules(), instance.outRules());
+      groupSets[index] = groupSetIds.computeIfAbsent(groups, key -> {
+        groupSetList.add(new GroupSet(key.groupIds().stream().map(this::internString).toList(),
+            key.inRules().stream().map(this::internRule).toList(),
+            key.outRules().stream().map(this::internRule).toList()));
+        return groupSetList.size() - 1;
+      });
+    }
+
+    private int intern(String value) {
+      if (value == null) {
+        return NULL;
+      }
+      return dictionaryIds.computeIfAbsent(value, key -> {
+        dictionary.add(key);
+        return dictionary.size() - 1;
+      });
+    }
+
+    private String internString(String value) {
+      int id = intern(value);
+      return id == NULL ? null : dictionary.get(id);
+    }
+
+    // rules of groups that appear in several combinations are shared as well
+    private SecurityGroupRule internRule(SecurityGroupRule rule) {
+      return rules.computeIfAbsent(rule, key -> key);
+    }
+
+    // Addresses are kept as ints, so only the canonical dotted form can be restored exactly
+    private static int address(String value) {
+      int address = Cidr.address(value);
+      if (!Cidr.format(address).equals(value)) {
+        throw new IllegalArgumentException("Not a canonical IPv4 address: " + value);
+      }
+      return address;
+    }
+  }
+}
@@ -0,0 +1,70 @@
+package aws.ec2;
+
+import aws.common.Clients;
+import aws.stub.Fleet;
+import aws.stub.LocalAwsServer;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import software.amazon.awssdk.services.ec2.Ec2Client;
+
+// The cost of compacting a crawled inventory and of a full scan over the records versus CompactInventory; the
+// retained heap of both is compared in CompactInventoryTest
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 10)
+@Fork(1)
+public class CompactInventoryBenchmark {
+  @Param({"10000", "50000"})
+  public int instances;
+
+  private List<Ec2Helper.Ec2Instance> records;
+  private CompactInventory compact;
+
+  @Setup
+  public void setUp() throws Exception {
+    try (LocalAwsServer server = new LocalAwsServer(Fleet.generate(instances, 3), Duration.ZERO, 0, 1000);
+         Ec2Client ec2 = Clients.configure(Ec2Client.builder(), server).build()) {
+      records = List.copyOf(Ec2Helper.getInstances(ec2));
+    }
+    compact = CompactInventory.of(records);
+  }
+
+  @Benchmark
+  public CompactInventory compact() {
+    return CompactInventory.of(records);
+  }
+
+  @Benchmark
+  public int scanRecords() {
+    return countTypes(records);
+  }
+
+  @Benchmark
+  public int scanCompact() {
+    return countTypes(compact);
+  }
+
+  private static int countTypes(List<Ec2Helper.Ec2Instance> inventory) {
+    int count = 0;
+    for (Ec2Helper.Ec2Instance instance : inventory) {
+      if ("t3.micro".equals(instance.type()) && instance.ebsSize() == 8) {
+        count++;
+      }
+    }
+    return count;
+  }
+}
@@ -0,0 +1,82 @@
+package aws.ec2;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.testng.Assert;
+import org.openjdk.jol.info.GraphLayout;
+import org.testng.annotations.Test;
+import software.amazon.awssdk.services.ec2.model.SecurityGroupRule;
+
+public class CompactInventoryTest {
+  private static final int INSTANCES = 1000;
+  private static final List<List<String>> GROUPS = List.of(List.of("sg-web"), List.of("sg-app", "sg-ops"),
+      List.of("sg-db"));
+
+  @Test(description = "The compact inventory reads back exactly the instances it was built from", groups = "offline")
+  public void verifyRoundTrip() {
+    List<Ec2Helper.Ec2Instance> instances = fleet();
+
+    CompactInventory compact = CompactInventory.of(instances);
+
+    Assert.assertEquals(compact.size(), instances.size());
+    for (int i = 0; i < instances.size(); i++) {
+      Assert.assertEquals(compact.get(i), instances.get(i));
+    }
+    Assert.assertEquals(compact, instances);
+    Assert.assertSame(CompactInventory.of(compact), compact);
+  }
+
+  @Test(description = "Strings, tag lists and rule sets are stored once however many instances share them",
+      groups = "offline")
+  public void verifySharing() {
+    CompactInventory compact = CompactInventory.of(fleet());
+
+    Assert.assertEquals(compact.distinctGroupSets(), GROUPS.size());
+    Assert.assertEquals(compact.distinctTagSets(), 2);
+
+    Ec2Helper.Ec2Instance first = compact.get(0);
+    Ec2Helper.Ec2Instance sameGroups = compact.get(GROUPS.size());
+    Assert.assertSame(sameGroups.inRules(), first.inRules());
+    Assert.assertSame(sameGroups.securityGroupIds(), first.securityGroupIds());
+    Assert.assertSame(compact.get(1).type(), first.type());
+    Assert.assertSame(compact.get(2).tags(), first.tags());
+    Assert.assertSame(compact.groupSet(0), compact.groupSet(GROUPS.size()));
+  }
+
+  @Test(description = "The compact inventory retains less than half the heap of the records it was built from",
+      groups = "offline")
+  public void verifyFootprint() {
+    List<Ec2Helper.Ec2Instance> instances = fleet();
+
+    long recordBytes = GraphLayout.parseInstance(instances).totalSize();
+    long compactBytes = GraphLayout.parseInstance(CompactInventory.of(instances)).totalSize();
+
+    Assert.assertTrue(compactBytes < recordBytes / 2,
+        "records " + recordBytes / INSTANCES + " B/instance, compact " + compactBytes / INSTANCES + " B/instance");
+  }
+
+  @Test(description = "Only canonical dotted IPv4 addresses can be packed", groups = "offline",
+      expectedExceptions = IllegalArgumentException.class)
+  public void verifyNonCanonicalAddressIsRejected() {
+    CompactInventory.of(List.of(instance(0, "10.0.0.01")));
+  }
+
+  // every instance gets its own copies of strings and lists, as a crawl produces them
+  private static List<Ec2Helper.Ec2Instance> fleet() {
+    List<Ec2Helper.Ec2Instance> result = new ArrayList<>();
+    for (int i = 0; i < INSTANCES; i++) {
+      result.add(instance(i, "10.0." + (i / 250) + "." + (i % 250 + 1)));
+    }
+    return result;
+  }
+
+  private static Ec2Helper.Ec2Instance instance(int index, String privateIp) {
+    List<String> groupIds = GROUPS.get(index % GROUPS.size());
+    List<SecurityGroupRule> rules = groupIds.stream()
+        .map(groupId -> Ec2Fixtures.cidr(groupId, false, "tcp", 22, 22, "10.0.0.0/8")).toList();
+    boolean isPrivate = index % 2 == 1;
+    return Ec2Fixtures.instance("i-" + index, new String("t3.micro"), privateIp,
+        isPrivate ? null : "3.120." + (index / 250) + "." + (index % 250 + 1),
+        List.of(new String("cloudx:qa"), isPrivate ? "tier:private" : "tier:public"), List.copyOf(groupIds), rules);
+  }
+}
@@ -0,0 +1,18 @@
+package aws.ec2;
+
+import aws.common.BoundedExecutor;
+import java.util.ArrayList;
+import java.util.List;
+import software.amazon.awssdk.services.ec2.Ec2Client;
+
+// Page N+1 of DescribeInstances is prefetched while page N is enriched; the enrichment batches run concurrently too
+class Ec2AsyncCrawler {
+  static List<Ec2Helper.Ec2Instance> getInstances(Ec2Client ec2, BoundedExecutor executor) {
+    List<Ec2Helper.Ec2Instance> result = new ArrayList<>();
+    Ec2Enricher enricher = new Ec2Enricher(ec2, executor);
+
+    Ec2Helper.runningInstances(ec2).pages(executor).forEach(page -> result.addAll(enricher.enrich(page.items())));
+
+    return result;
+  }
+}
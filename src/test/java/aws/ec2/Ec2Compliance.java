@@ -0,0 +1,242 @@
+package aws.ec2;
+
+import aws.common.Compliance;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+// The CXQA-EC2 requirements as data (compliance/ec2.json), compiled into Compliance rules over the inventory.
+// A rule may narrow its instances with "where" and combine several checks; each one is compiled once into a
+// lambda, so a spec of a hundred rules still visits every instance only once.
+class Ec2Compliance {
+  static final String SPEC = "compliance/ec2.json";
+
+  private static final Map<String, Function<Ec2Helper.Ec2Instance, Object>> FIELDS = new LinkedHashMap<>();
+
+  static {
+    FIELDS.put("instanceId", Ec2Helper.Ec2Instance::instanceId);
+    FIELDS.put("type", Ec2Helper.Ec2Instance::type);
+    FIELDS.put("isPrivate", Ec2Helper.Ec2Instance::isPrivate);
+    FIELDS.put("tags", Ec2Helper.Ec2Instance::tags);
+    FIELDS.put("ebsSize", Ec2Helper.Ec2Instance::ebsSize);
+    FIELDS.put("osName", Ec2Helper.Ec2Instance::osName);
+    FIELDS.put("publicIp", Ec2Helper.Ec2Instance::publicIp);
+    FIELDS.put("privateIp", Ec2Helper.Ec2Instance::privateIp);
+    FIELDS.put("securityGroupIds", Ec2Helper.Ec2Instance::securityGroupIds);
+    FIELDS.put("availabilityZone", Ec2Helper.Ec2Instance::availabilityZone);
+    FIELDS.put("region", Ec2Helper.Ec2Instance::region);
+  }
+
+  record Spec(List<RuleSpec> rules) {
+  }
+
+  // Port sets use the PortSet form, e.g. {"tcp": "22,80"}; an empty map means no port at all.
+  // ingressFromGroupsOnly fails on any CIDR source, private ranges and ones no inventory instance lives in included
+  record RuleSpec(String id, String description, Integer count, Map<String, Object> where, String field,
+                  Object equals, Object contains, Boolean present, Map<String, String> ingressPorts,
+                  Map<String, String> internetExposure, Map<String, String> internetAccess,
+                  Boolean ingressFromGroupsOnly, Reachers reachableOnlyFrom, Boolean metadata) {
+  }
+
+  // Every instance that can reach the subject on the ports matches "where", and there is at least one
+  record Reachers(Map<String, Object> where, String protocol, List<Integer> ports) {
+  }
+
+  // The instances with their network model; the application endpoints are probed once, when a rule first asks
+  static final class Context {
+    private final List<Ec2Helper.Ec2Instance> instances;
+    private final Reachability network;
+    private final Function<List<Ec2Helper.Ec2Instance>, MetadataProber.Report> prober;
+    private final Map<Predicate<Ec2Helper.Ec2Instance>, Set<String>> selections = new ConcurrentHashMap<>();
+    private Map<String, MetadataProber.Result> probes;
+
+    Context(List<Ec2Helper.Ec2Instance> instances,
+            Function<List<Ec2Helper.Ec2Instance>, MetadataProber.Report> prober) {
+      this.instances = instances;
+      this.network = Reachability.of(instances);
+      this.prober = prober;
+    }
+
+    List<Ec2Helper.Ec2Instance> instances() {
+      return instances;
+    }
+
+    private Set<String> select(Predicate<Ec2Helper.Ec2Instance> where) {
+      return selections.computeIfAbsent(where, key -> instances.stream().filter(key)
+          .map(Ec2Helper.Ec2Instance::instanceId).collect(Collectors.toSet()));
+    }
+
+    private synchronized MetadataProber.Result probe(String instanceId) {
+      if (probes == null) {
+        probes = new HashMap<>();
+        List<Ec2Helper.Ec2Instance> exposed = instances.stream().filter(instance -> instance.publicIp() != null)
+            .toList();
+        prober.apply(exposed).results().forEach(result -> probes.put(result.instance().instanceId(), result));
+      }
+      return probes.get(instanceId);
+    }
+  }
+
+  static Compliance.Evaluator<Context, Ec2Helper.Ec2Instance> compile(Spec spec) {
+    List<Compliance.Rule<Context, Ec2Helper.Ec2Instance>> subjectRules = new ArrayList<>();
+    List<Compliance.Rule<Context, Context>> inventoryRules = new ArrayList<>();
+    for (RuleSpec rule : spec.rules()) {
+      if (rule.count() != null) {
+        int expected = rule.count();
+        inventoryRules.add(new Compliance.Rule<>(rule.id(), rule.description(), (context, ignored) ->
+            context.instances().size() == expected ? null
+                : "expected " + expected + " instances, found " + context.instances().size()));
+      }
+      List<Compliance.Check<Context, Ec2Helper.Ec2Instance>> checks = checks(rule);
+      if (!checks.isEmpty()) {
+        subjectRules.add(new Compliance.Rule<>(rule.id(), rule.description(), combine(where(rule.where()), checks)));
+      }
+    }
+    return new Compliance.Evaluator<>(List.copyOf(subjectRules), List.copyOf(inventoryRules),
+        Ec2Helper.Ec2Instance::instanceId);
+  }
+
+  private static List<Compliance.Check<Context, Ec2Helper.Ec2Instance>> checks(RuleSpec rule) {
+    List<Compliance.Check<Context, Ec2Helper.Ec2Instance>> checks = new ArrayList<>();
+    if (rule.field() != null) {
+      Function<Ec2Helper.Ec2Instance, Object> field = field(rule.field());
+      if (rule.equals() != null) {
+        String expected = String.valueOf(rule.equals());
+        checks.add((context, instance) -> expected.equals(String.valueOf(field.apply(instance))) ? null
+            : rule.field() + " is " + field.apply(instance) + ", expected " + expected);
+      }
+      if (rule.contains() != null) {
+        String expected = String.valueOf(rule.contains());
+        checks.add((context, instance) -> contains(field.apply(instance), expected) ? null
+            : rule.field() + " " + field.apply(instance) + " does not contain " + expected);
+      }
+      if (rule.present() != null) {
+        boolean expected = rule.present();
+        checks.add((context, instance) -> (field.apply(instance) != null) == expected ? null
+            : rule.field() + (expected ? " is missing" : " is set to " + field.apply(instance)));
+      }
+    }
+    if (rule.ingressPorts() != null) {
+      Map<String, PortSet> expected = ports(rule.ingressPorts());
+      checks.add((context, instance) -> portCheck("ingress ports",
+          context.network.ingressPorts(instance.instanceId()), expected));
+    }
+    if (rule.internetExposure() != null) {
+      Map<String, PortSet> expected = ports(rule.internetExposure());
+      checks.add((context, instance) -> portCheck("ports open to the internet",
+          context.network.internetExposure(instance.instanceId()), expected));
+    }
+    if (rule.internetAccess() != null) {
+      Map<String, PortSet> expected = ports(rule.internetAccess());
+      checks.add((context, instance) -> portCheck("internet access",
+          context.network.internetAccess(instance.instanceId()), expected));
+    }
+    if (Boolean.TRUE.equals(rule.ingressFromGroupsOnly())) {
+      checks.add((context, instance) -> {
+        Set<String> cidrs = context.network.cidrSources(instance.instanceId());
+        return cidrs.isEmpty() ? null : "ingress from address ranges " + cidrs;
+      });
+    }
+    if (rule.reachableOnlyFrom() != null) {
+      checks.add(reachers(rule.reachableOnlyFrom()));
+    }
+    if (Boolean.TRUE.equals(rule.metadata())) {
+      checks.add((context, instance) -> {
+        MetadataProber.Result result = context.probe(instance.instanceId());
+        if (result == null) {
+          return "no public address to probe";
+        }
+        if (result.error() != null) {
+          return result.endpoint() + " failed: " + result.error();
+        }
+        return result.mismatches().isEmpty() ? null : String.join(", ", result.mismatches());
+      });
+    }
+    if (checks.isEmpty() && rule.count() == null) {
+      throw new IllegalArgumentException("Rule " + rule.id() + " (" + rule.description() + ") checks nothing");
+    }
+    return checks;
+  }
+
+  private static Compliance.Check<Context, Ec2Helper.Ec2Instance> reachers(Reachers spec) {
+    Predicate<Ec2Helper.Ec2Instance> allowed = where(spec.where());
+    return (context, instance) -> {
+      Set<String> sources = context.select(allowed);
+      List<String> problems = new ArrayList<>();
+      for (int port : spec.ports()) {
+        Set<String> reachers = context.network.reachers(instance.instanceId(), spec.protocol(), port);
+        Set<String> unexpected = reachers.stream().filter(id -> !sources.contains(id)).collect(Collectors.toSet());
+        if (reachers.isEmpty()) {
+          problems.add("no instance reaches " + spec.protocol() + "/" + port);
+        } else if (!unexpected.isEmpty()) {
+          problems.add(unexpected + " reach " + spec.protocol() + "/" + port);
+        }
+      }
+      return problems.isEmpty() ? null : String.join(", ", problems);
+    };
+  }
+
+  // Runs every check of the rule on the instances it applies to and reports all their findings together
+  private static Compliance.Check<Context, Ec2Helper.Ec2Instance> combine(
+      Predicate<Ec2Helper.Ec2Instance> where, List<Compliance.Check<Context, Ec2Helper.Ec2Instance>> checks) {
+    return (context, instance) -> {
+      if (!where.test(instance)) {
+        return null;
+      }
+      String result = null;
+      for (Compliance.Check<Context, Ec2Helper.Ec2Instance> check : checks) {
+        String message = check.check(context, instance);
+        if (message != null) {
+          result = result == null ? message : result + "; " + message;
+        }
+      }
+      return result;
+    };
+  }
+
+  private static Predicate<Ec2Helper.Ec2Instance> where(Map<String, Object> where) {
+    Predicate<Ec2Helper.Ec2Instance> result = instance -> true;
+    if (where == null) {
+      return result;
+    }
+    for (Map.Entry<String, Object> condition : where.entrySet()) {
+      Function<Ec2Helper.Ec2Instance, Object> field = field(condition.getKey());
+      String expected = String.valueOf(condition.getValue());
+      result = result.and(instance -> expected.equals(String.valueOf(field.apply(instance))));
+    }
+    return result;
+  }
+
+  private static Function<Ec2Helper.Ec2Instance, Object> field(String name) {
+    Function<Ec2Helper.Ec2Instance, Object> field = FIELDS.get(name);
+    if (field == null) {
+      throw new IllegalArgumentException("Unknown instance field " + name + ", expected one of " + FIELDS.keySet());
+    }
+    return field;
+  }
+
+  private static boolean contains(Object actual, String expected) {
+    if (actual instanceof Collection<?> values) {
+      return values.contains(expected);
+    }
+    return actual != null && actual.toString().contains(expected);
+  }
+
+  static Map<String, PortSet> ports(Map<String, String> spec) {
+    Map<String, PortSet> result = new HashMap<>();
+    spec.forEach((protocol, ports) -> result.put(Reachability.protocol(protocol), PortSet.parse(ports)));
+    return Map.copyOf(result);
+  }
+
+  private static String portCheck(String what, Map<String, PortSet> actual, Map<String, PortSet> expected) {
+    return actual.equals(expected) ? null : what + " are " + actual + ", expected " + expected;
+  }
+}
@@ -0,0 +1,131 @@
+package aws.ec2;
+
+import aws.common.Compliance;
+import java.net.URI;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+import software.amazon.awssdk.services.ec2.model.SecurityGroupRule;
+
+public class Ec2ComplianceTest {
+  private static final List<SecurityGroupRule> PUBLIC_IN = List.of(
+      Ec2Fixtures.cidr("sg-public", false, "tcp", 22, 22, "0.0.0.0/0"),
+      Ec2Fixtures.cidr("sg-public", false, "tcp", 80, 80, "0.0.0.0/0"));
+  private static final List<SecurityGroupRule> PRIVATE_IN = List.of(
+      Ec2Fixtures.group("sg-private", false, "tcp", 22, 22, "sg-public"),
+      Ec2Fixtures.group("sg-private", false, "tcp", 80, 80, "sg-public"));
+  private static final Compliance.Evaluator<Ec2Compliance.Context, Ec2Helper.Ec2Instance> SPEC =
+      Ec2Compliance.compile(Compliance.loadSpec(Ec2Compliance.SPEC, Ec2Compliance.Spec.class));
+
+  @Test(description = "The deployed pair satisfies every rule of compliance/ec2.json", groups = "offline")
+  public void verifyCompliantFleet() {
+    List<Ec2Helper.Ec2Instance> instances = List.of(
+        instance("i-public", "t3.micro", "10.0.0.10", "3.120.0.10", "sg-public", PUBLIC_IN),
+        instance("i-private", "t3.micro", "10.0.1.10", null, "sg-private", PRIVATE_IN));
+
+    Assert.assertEquals(SPEC.evaluate(context(instances), instances), List.of());
+  }
+
+  @Test(description = "Every violation of every rule is reported, not only the first one", groups = "offline")
+  public void verifyAllViolationsAreReported() {
+    List<Ec2Helper.Ec2Instance> instances = List.of(
+        instance("i-public", "t3.large", "10.0.0.10", "3.120.0.10", "sg-public", List.of(
+            Ec2Fixtures.cidr("sg-public", false, "tcp", 22, 22, "0.0.0.0/0"),
+            Ec2Fixtures.cidr("sg-public", false, "tcp", 3389, 3389, "0.0.0.0/0"))),
+        instance("i-private", "t3.micro", "10.0.1.10", null, "sg-private", PRIVATE_IN),
+        instance("i-stray", "t3.micro", "10.0.2.10", null, "sg-public", PUBLIC_IN));
+
+    List<Compliance.Violation> violations = SPEC.evaluate(context(instances), instances);
+
+    Set<String> found = violations.stream().map(violation -> violation.ruleId() + " " + violation.subject())
+        .collect(Collectors.toSet());
+    Assert.assertEquals(found, Set.of(
+        "CXQA-EC2-01 inventory",
+        "CXQA-EC2-02 i-public",
+        "CXQA-EC2-03 i-public",
+        "CXQA-EC2-03 i-private",
+        "CXQA-EC2-03 i-stray"), violations.toString());
+    // the public instance breaks the type rule and the port rule at the same time
+    Assert.assertEquals(violations.stream().filter(violation -> violation.subject().equals("i-public")).count(), 2L);
+  }
+
+  @DataProvider(name = "PrivateRanges")
+  public Object[][] privateRanges() {
+    return new Object[][] {{"0.0.0.0/0"}, {"10.0.0.0/8"}};
+  }
+
+  @Test(description = "An address range on the private group is a violation, though it has no public address and " +
+      "no other instance lives there", groups = "offline", dataProvider = "PrivateRanges")
+  public void verifyPrivateCidrIngress(String range) {
+    List<SecurityGroupRule> opened = new ArrayList<>(PRIVATE_IN);
+    opened.add(Ec2Fixtures.cidr("sg-private", false, "tcp", 80, 80, range));
+    List<Ec2Helper.Ec2Instance> instances = List.of(
+        instance("i-public", "t3.micro", "10.0.0.10", "3.120.0.10", "sg-public", PUBLIC_IN),
+        instance("i-private", "t3.micro", "10.0.1.10", null, "sg-private", opened));
+
+    List<Compliance.Violation> violations = SPEC.evaluate(context(instances), instances);
+
+    Assert.assertEquals(violations.size(), 1, violations.toString());
+    Assert.assertEquals(violations.getFirst().ruleId() + " " + violations.getFirst().subject(),
+        "CXQA-EC2-03 i-private");
+    Assert.assertTrue(violations.getFirst().toString().contains(range), violations.toString());
+  }
+
+  @Test(description = "A large fleet against a hundred rules gives the same violations in parallel and sequentially",
+      groups = "offline")
+  public void verifyParallelPass() {
+    List<Ec2Compliance.RuleSpec> rules = new ArrayList<>();
+    for (int i = 0; i < 10; i++) {
+      rules.addAll(Compliance.loadSpec(Ec2Compliance.SPEC, Ec2Compliance.Spec.class).rules().stream()
+          .filter(rule -> rule.metadata() == null).toList());
+    }
+    Compliance.Evaluator<Ec2Compliance.Context, Ec2Helper.Ec2Instance> evaluator =
+        Ec2Compliance.compile(new Ec2Compliance.Spec(rules));
+    Assert.assertTrue(evaluator.subjectRules().size() >= 90);
+
+    List<Ec2Helper.Ec2Instance> instances = new ArrayList<>();
+    for (int i = 0; i < 10_000; i++) {
+      // one public/private group pair per 50 instances, as in a generated fleet
+      String publicGroup = "sg-public-" + i / 50;
+      String privateGroup = "sg-private-" + i / 50;
+      String privateIp = "10.1." + (i / 250) + "." + (i % 250 + 1);
+      instances.add(i % 2 == 0
+          ? instance("i-" + i, i % 7 == 0 ? "t3.large" : "t3.micro", privateIp, "3.121." + (i / 250) + "." + (i % 250),
+              publicGroup, List.of(Ec2Fixtures.cidr(publicGroup, false, "tcp", 22, 22, "0.0.0.0/0"),
+                  Ec2Fixtures.cidr(publicGroup, false, "tcp", 80, 80, "0.0.0.0/0")))
+          : instance("i-" + i, "t3.micro", privateIp, null, privateGroup, List.of(
+              Ec2Fixtures.group(privateGroup, false, "tcp", 22, 22, publicGroup),
+              Ec2Fixtures.group(privateGroup, false, "tcp", 80, 80, publicGroup))));
+    }
+    Ec2Compliance.Context context = context(instances);
+
+    List<Compliance.Violation> sequential = evaluator.evaluate(context, instances, false);
+    List<Compliance.Violation> parallel = evaluator.evaluate(context, instances, true);
+
+    Assert.assertEquals(parallel, sequential);
+    // 10 copies of the type rule for every 14th instance, plus 10 copies of the count rule
+    Assert.assertEquals(sequential.size(), 10 * ((10_000 + 13) / 14) + 10);
+  }
+
+  // The application answers with what the inventory says, without any HTTP
+  private static Ec2Compliance.Context context(List<Ec2Helper.Ec2Instance> instances) {
+    return new Ec2Compliance.Context(instances, probed -> new MetadataProber.Report(probed.stream()
+        .map(instance -> new MetadataProber.Result(instance, URI.create("http://" + instance.publicIp() + "/"),
+            new MetadataProber.Metadata(instance.availabilityZone(), instance.region(), instance.privateIp()),
+            List.of(), List.of(Duration.ofMillis(1)), 1, null))
+        .toList(), Duration.ZERO, Duration.ofSeconds(1)));
+  }
+
+  // One group each, open to the internet outbound
+  private static Ec2Helper.Ec2Instance instance(String instanceId, String type, String privateIp, String publicIp,
+                                                String groupId, List<SecurityGroupRule> inRules) {
+    List<SecurityGroupRule> rules = new ArrayList<>(inRules);
+    rules.add(Ec2Fixtures.cidr(groupId, true, "-1", -1, -1, "0.0.0.0/0"));
+    return Ec2Fixtures.instance(instanceId, type, privateIp, publicIp, List.of("cloudx:qa"), List.of(groupId), rules);
+  }
+}
@@ -0,0 +1,113 @@
+package aws.ec2;
+
+import aws.common.SnapshotFile;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Function;
+import software.amazon.awssdk.services.ec2.model.SecurityGroupRule;
+
+// Structural difference of two inventories, matched by instance id.
+// Tags, security groups and rules are compared as sets: the API does not promise their order.
+// Usage: Ec2Diff <before.snap> <after.snap>
+record Ec2Diff(List<Ec2Helper.Ec2Instance> added, List<Ec2Helper.Ec2Instance> removed, List<Change> changed) {
+  private static final Map<String, Function<Ec2Helper.Ec2Instance, Object>> FIELDS = fields();
+
+  record Change(String instanceId, List<String> fields, Set<SecurityGroupRule> addedRules,
+                Set<SecurityGroupRule> removedRules) {
+  }
+
+  static Ec2Diff between(List<Ec2Helper.Ec2Instance> before, List<Ec2Helper.Ec2Instance> after) {
+    Map<String, Ec2Helper.Ec2Instance> previous = byId(before);
+    Map<String, Ec2Helper.Ec2Instance> current = byId(after);
+
+    List<Ec2Helper.Ec2Instance> added = new ArrayList<>();
+    List<Change> changed = new ArrayList<>();
+    for (Ec2Helper.Ec2Instance instance : current.values()) {
+      Ec2Helper.Ec2Instance old = previous.get(instance.instanceId());
+      if (old == null) {
+        added.add(instance);
+        continue;
+      }
+      Change change = change(old, instance);
+      if (!change.fields().isEmpty()) {
+        changed.add(change);
+      }
+    }
+    List<Ec2Helper.Ec2Instance> removed =
+        previous.values().stream().filter(instance -> !current.containsKey(instance.instanceId())).toList();
+
+    return new Ec2Diff(List.copyOf(added), removed, List.copyOf(changed));
+  }
+
+  boolean isEmpty() {
+    return added.isEmpty() && removed.isEmpty() && changed.isEmpty();
+  }
+
+  List<String> describe() {
+    List<String> result = new ArrayList<>();
+    added.forEach(instance -> result.add("+ " + instance.instanceId() + " " + instance.type()));
+    removed.forEach(instance -> result.add("- " + instance.instanceId() + " " + instance.type()));
+    for (Change change : changed) {
+      result.add("~ " + change.instanceId() + " " + String.join(", ", change.fields()));
+      change.addedRules().forEach(rule -> result.add("    + rule " + rule));
+      change.removedRules().forEach(rule -> result.add("    - rule " + rule));
+    }
+    return result;
+  }
+
+  private static Change change(Ec2Helper.Ec2Instance before, Ec2Helper.Ec2Instance after) {
+    List<String> fields = FIELDS.entrySet().stream()
+        .filter(field -> !Objects.equals(field.getValue().apply(before), field.getValue().apply(after)))
+        .map(Map.Entry::getKey).toList();
+    return new Change(after.instanceId(), fields, difference(rules(after), rules(before)),
+        difference(rules(before), rules(after)));
+  }
+
+  private static Set<SecurityGroupRule> rules(Ec2Helper.Ec2Instance instance) {
+    Set<SecurityGroupRule> result = new LinkedHashSet<>(instance.inRules());
+    result.addAll(instance.outRules());
+    return result;
+  }
+
+  private static Set<SecurityGroupRule> difference(Set<SecurityGroupRule> left, Set<SecurityGroupRule> right) {
+    Set<SecurityGroupRule> result = new LinkedHashSet<>(left);
+    result.removeAll(right);
+    return result;
+  }
+
+  private static Map<String, Ec2Helper.Ec2Instance> byId(List<Ec2Helper.Ec2Instance> instances) {
+    Map<String, Ec2Helper.Ec2Instance> result = new LinkedHashMap<>();
+    instances.forEach(instance -> result.put(instance.instanceId(), instance));
+    return result;
+  }
+
+  private static Map<String, Function<Ec2Helper.Ec2Instance, Object>> fields() {
+    Map<String, Function<Ec2Helper.Ec2Instance, Object>> result = new LinkedHashMap<>();
+    result.put("type", Ec2Helper.Ec2Instance::type);
+    result.put("isPrivate", Ec2Helper.Ec2Instance::isPrivate);
+    result.put("tags", instance -> Set.copyOf(instance.tags()));
+    result.put("ebsSize", Ec2Helper.Ec2Instance::ebsSize);
+    result.put("osName", Ec2Helper.Ec2Instance::osName);
+    result.put("publicIp", Ec2Helper.Ec2Instance::publicIp);
+    result.put("privateIp", Ec2Helper.Ec2Instance::privateIp);
+    result.put("securityGroupIds", instance -> Set.copyOf(instance.securityGroupIds()));
+    result.put("inRules", instance -> Set.copyOf(instance.inRules()));
+    result.put("outRules", instance -> Set.copyOf(instance.outRules()));
+    result.put("availabilityZone", Ec2Helper.Ec2Instance::availabilityZone);
+    result.put("region", Ec2Helper.Ec2Instance::region);
+    return result;
+  }
+
+  public static void main(String[] args) {
+    Ec2Diff diff = between(SnapshotFile.read(Path.of(args[0]), Ec2SnapshotCodec.KIND, Ec2SnapshotCodec.INSTANCE),
+        SnapshotFile.read(Path.of(args[1]), Ec2SnapshotCodec.KIND, Ec2SnapshotCodec.INSTANCE));
+    diff.describe().forEach(System.out::println);
+    System.exit(diff.isEmpty() ? 0 : 1);
+  }
+}
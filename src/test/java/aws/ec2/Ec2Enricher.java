@@ -0,0 +1,289 @@
+package aws.ec2;
+
+import aws.common.BoundedExecutor;
+import aws.common.PagedSource;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import software.amazon.awssdk.services.ec2.Ec2Client;
+import software.amazon.awssdk.services.ec2.model.AvailabilityZone;
+import software.amazon.awssdk.services.ec2.model.DescribeAvailabilityZonesRequest;
+import software.amazon.awssdk.services.ec2.model.DescribeImagesRequest;
+import software.amazon.awssdk.services.ec2.model.DescribeSecurityGroupRulesRequest;
+import software.amazon.awssdk.services.ec2.model.DescribeSecurityGroupRulesResponse;
+import software.amazon.awssdk.services.ec2.model.DescribeVolumesRequest;
+import software.amazon.awssdk.services.ec2.model.DescribeVolumesModificationsRequest;
+import software.amazon.awssdk.services.ec2.model.DescribeVolumesModificationsResponse;
+import software.amazon.awssdk.services.ec2.model.DescribeVolumesResponse;
+import software.amazon.awssdk.services.ec2.model.Filter;
+import software.amazon.awssdk.services.ec2.model.GroupIdentifier;
+import software.amazon.awssdk.services.ec2.model.Image;
+import software.amazon.awssdk.services.ec2.model.Instance;
+import software.amazon.awssdk.services.ec2.model.SecurityGroupRule;
+import software.amazon.awssdk.services.ec2.model.Volume;
+import software.amazon.awssdk.services.ec2.model.VolumeModification;
+
+// Resolves volumes, images, security group rules and AZs of a page with one batched call per resource kind.
+// Lookups are kept between pages, so only ids not seen before are described.
+// With an executor the batches run concurrently; results are merged on the calling thread.
+class Ec2Enricher {
+  // EC2 accepts up to 200 values per filter / id list
+  private static final int BATCH_SIZE = 200;
+  private static final Set<Ec2InventoryView.Field> ALL = EnumSet.allOf(Ec2InventoryView.Field.class);
+
+  private final Ec2Client ec2;
+  private final BoundedExecutor executor;
+  private final Map<String, Integer> volumeSizes = new HashMap<>();
+  private final Map<String, String> imageDescriptions = new HashMap<>();
+  private final Map<String, List<SecurityGroupRule>> groupRules = new HashMap<>();
+  private final Map<String, String> zoneRegions = new HashMap<>();
+
+  Ec2Enricher(Ec2Client ec2) {
+    this(ec2, null);
+  }
+
+  Ec2Enricher(Ec2Client ec2, BoundedExecutor executor) {
+    this.ec2 = ec2;
+    this.executor = executor;
+  }
+
+  List<Ec2Helper.Ec2Instance> enrich(List<Instance> instances) {
+    load(instances, ALL);
+    List<Ec2Helper.Ec2Instance> result = new ArrayList<>(instances.size());
+    for (Instance instance : instances) {
+      result.add(build(instance, ALL));
+    }
+    return result;
+  }
+
+  // Describes only the given fields, and of those only the ids not resolved before
+  void load(Collection<Instance> instances, Set<Ec2InventoryView.Field> fields) {
+    Set<String> volumeIds = new LinkedHashSet<>();
+    Set<String> amiIds = new LinkedHashSet<>();
+    Set<String> groupIds = new LinkedHashSet<>();
+    Set<String> zones = new LinkedHashSet<>();
+
+    for (Instance instance : instances) {
+      if (fields.contains(Ec2InventoryView.Field.VOLUME)) {
+        volumeIds.add(rootVolumeId(instance));
+      }
+      if (fields.contains(Ec2InventoryView.Field.IMAGE)) {
+        amiIds.add(instance.imageId());
+      }
+      if (fields.contains(Ec2InventoryView.Field.RULES)) {
+        instance.securityGroups().forEach(group -> groupIds.add(group.groupId()));
+      }
+      if (fields.contains(Ec2InventoryView.Field.REGION)) {
+        zones.add(instance.placement().availabilityZone());
+      }
+    }
+
+    volumeIds.removeAll(volumeSizes.keySet());
+    amiIds.removeAll(imageDescriptions.keySet());
+    groupIds.removeAll(groupRules.keySet());
+    zones.removeAll(zoneRegions.keySet());
+
+    List<CompletableFuture<Map<String, Integer>>> volumes = submit(volumeIds, this::describeVolumes);
+    List<CompletableFuture<Map<String, String>>> images = submit(amiIds, this::describeImages);
+    List<CompletableFuture<Map<String, List<SecurityGroupRule>>>> rules =
+        submit(groupIds, this::describeSecurityGroupRules);
+    List<CompletableFuture<Map<String, String>>> regions = submit(zones, this::describeAvailabilityZones);
+
+    volumes.forEach(batch -> volumeSizes.putAll(batch.join()));
+    images.forEach(batch -> imageDescriptions.putAll(batch.join()));
+    rules.forEach(batch -> groupRules.putAll(batch.join()));
+    regions.forEach(batch -> zoneRegions.putAll(batch.join()));
+  }
+
+  // Drops the rules of the groups no longer in use
+  void retainRules(Collection<String> groupIds) {
+    groupRules.keySet().retainAll(Set.copyOf(groupIds));
+  }
+
+  // Describes the rules of the groups again and returns the groups whose rule set is new or changed
+  Set<String> refreshRules(Collection<String> groupIds) {
+    Set<String> changed = new HashSet<>();
+    for (CompletableFuture<Map<String, List<SecurityGroupRule>>> batch :
+        submit(groupIds, this::describeSecurityGroupRules)) {
+      batch.join().forEach((groupId, rules) -> {
+        List<SecurityGroupRule> previous = groupRules.put(groupId, rules);
+        if (previous == null || !Set.copyOf(previous).equals(Set.copyOf(rules))) {
+          changed.add(groupId);
+        }
+      });
+    }
+    return changed;
+  }
+
+  // Drops the sizes of the volumes no longer in use
+  void retainVolumes(Collection<String> volumeIds) {
+    volumeSizes.keySet().retainAll(Set.copyOf(volumeIds));
+  }
+
+  // Describes the volumes again and returns those whose size is new or changed
+  Set<String> refreshVolumes(Collection<String> volumeIds) {
+    Set<String> changed = new HashSet<>();
+    for (CompletableFuture<Map<String, Integer>> batch : submit(volumeIds, this::describeVolumes)) {
+      batch.join().forEach((volumeId, size) -> {
+        if (!size.equals(volumeSizes.put(volumeId, size))) {
+          changed.add(volumeId);
+        }
+      });
+    }
+    return changed;
+  }
+
+  // Volumes with a modification started since the given time. The start-time filter matches the UTC days since
+  // then, so the answer grows with the recent modifications, not with the fleet; EC2 keeps only the latest
+  // modification of each volume.
+  Set<String> modifiedVolumes(Instant since) {
+    List<String> days = new ArrayList<>();
+    for (LocalDate day = LocalDate.ofInstant(since, ZoneOffset.UTC);
+         !day.isAfter(LocalDate.now(ZoneOffset.UTC)) && days.size() < BATCH_SIZE; day = day.plusDays(1)) {
+      days.add(day + "*");
+    }
+    PagedSource<VolumeModification> source = nextToken -> {
+      DescribeVolumesModificationsResponse response = ec2.describeVolumesModifications(
+          DescribeVolumesModificationsRequest.builder().filters(Filter.builder().name("start-time").values(days)
+              .build()).nextToken(nextToken).build());
+      return new PagedSource.Page<>(response.volumesModifications(), response.nextToken());
+    };
+    try (Stream<VolumeModification> modifications = source.onDemand()) {
+      return modifications.filter(modification -> !modification.startTime().isBefore(since))
+          .map(VolumeModification::volumeId).collect(Collectors.toCollection(HashSet::new));
+    }
+  }
+
+  // Fields that were not asked for are left unloaded: the record throws when they are read
+  Ec2Helper.Ec2Instance build(Instance instance, Set<Ec2InventoryView.Field> fields) {
+    Set<Ec2InventoryView.Field> unprojected = EnumSet.allOf(Ec2InventoryView.Field.class);
+    unprojected.removeAll(fields);
+
+    int instanceVolumeSize = 0;
+    if (fields.contains(Ec2InventoryView.Field.VOLUME)) {
+      Integer size = volumeSizes.get(rootVolumeId(instance));
+      assert size != null;
+      instanceVolumeSize = size;
+    }
+
+    String imageName = null;
+    if (fields.contains(Ec2InventoryView.Field.IMAGE)) {
+      imageName = imageDescriptions.get(instance.imageId());
+      assert imageDescriptions.containsKey(instance.imageId());
+    }
+
+    List<String> securityGroupIds = instance.securityGroups().stream().map(GroupIdentifier::groupId).toList();
+    List<SecurityGroupRule> inRules = List.of();
+    List<SecurityGroupRule> outRules = List.of();
+    if (fields.contains(Ec2InventoryView.Field.RULES)) {
+      List<SecurityGroupRule> rules = securityGroupIds.stream()
+          .flatMap(groupId -> groupRules.getOrDefault(groupId, List.of()).stream()).toList();
+      inRules = rules.stream().filter(sg -> !sg.isEgress()).toList();
+      outRules = rules.stream().filter(SecurityGroupRule::isEgress).toList();
+    }
+
+    String az = instance.placement().availabilityZone();
+    String region = null;
+    if (fields.contains(Ec2InventoryView.Field.REGION)) {
+      region = zoneRegions.get(az);
+      assert region != null;
+    }
+
+    return new Ec2Helper.Ec2Instance(instance.instanceId(),
+        instance.instanceTypeAsString(),
+        instance.publicIpAddress() == null,
+        instance.tags().stream().map(tag -> tag.key() + ":" + tag.value()).toList(),
+        instanceVolumeSize,
+        imageName,
+        instance.publicIpAddress(),
+        instance.privateIpAddress(),
+        securityGroupIds,
+        inRules,
+        outRules,
+        az,
+        region,
+        unprojected);
+  }
+
+  // The describe calls run on the executor already, so their pages are fetched on demand, not prefetched
+  private Map<String, Integer> describeVolumes(List<String> volumeIds) {
+    PagedSource<Volume> source = nextToken -> {
+      DescribeVolumesResponse response =
+          ec2.describeVolumes(DescribeVolumesRequest.builder().volumeIds(volumeIds).nextToken(nextToken).build());
+      return new PagedSource.Page<>(response.volumes(), response.nextToken());
+    };
+    Map<String, Integer> result = new HashMap<>();
+    source.onDemand().forEach(volume -> result.put(volume.volumeId(), volume.size()));
+    return result;
+  }
+
+  private Map<String, String> describeImages(List<String> amiIds) {
+    Map<String, String> result = new HashMap<>();
+    List<Image> images = ec2.describeImages(DescribeImagesRequest.builder().imageIds(amiIds).build()).images();
+    for (Image image : images) {
+      result.put(image.imageId(), image.description());
+    }
+    return result;
+  }
+
+  private Map<String, List<SecurityGroupRule>> describeSecurityGroupRules(List<String> groupIds) {
+    Map<String, List<SecurityGroupRule>> result = new HashMap<>();
+    // groups without rules still count as resolved
+    groupIds.forEach(groupId -> result.put(groupId, new ArrayList<>()));
+
+    PagedSource<SecurityGroupRule> source = nextToken -> {
+      DescribeSecurityGroupRulesRequest request = DescribeSecurityGroupRulesRequest.builder()
+          .filters(Filter.builder().name("group-id").values(groupIds).build()).nextToken(nextToken).build();
+      DescribeSecurityGroupRulesResponse response = ec2.describeSecurityGroupRules(request);
+      return new PagedSource.Page<>(response.securityGroupRules(), response.nextToken());
+    };
+    source.onDemand().forEach(rule -> result.get(rule.groupId()).add(rule));
+    return result;
+  }
+
+  private Map<String, String> describeAvailabilityZones(List<String> zones) {
+    Map<String, String> result = new HashMap<>();
+    DescribeAvailabilityZonesRequest request = DescribeAvailabilityZonesRequest.builder()
+        .filters(Filter.builder().name("zone-name").values(zones).build()).build();
+    for (AvailabilityZone zone : ec2.describeAvailabilityZones(request).availabilityZones()) {
+      result.put(zone.zoneName(), zone.regionName());
+    }
+    return result;
+  }
+
+  private <T> List<CompletableFuture<T>> submit(Collection<String> ids, Function<List<String>, T> call) {
+    List<CompletableFuture<T>> result = new ArrayList<>();
+    for (List<String> batch : batches(ids)) {
+      result.add(executor == null
+          ? CompletableFuture.completedFuture(call.apply(batch))
+          : executor.submit(() -> call.apply(batch)));
+    }
+    return result;
+  }
+
+  static String rootVolumeId(Instance instance) {
+    return instance.blockDeviceMappings().getFirst().ebs().volumeId();
+  }
+
+  private static List<List<String>> batches(Collection<String> ids) {
+    List<String> all = List.copyOf(ids);
+    List<List<String>> result = new ArrayList<>();
+    for (int i = 0; i < all.size(); i += BATCH_SIZE) {
+      result.add(all.subList(i, Math.min(i + BATCH_SIZE, all.size())));
+    }
+    return result;
+  }
+}
@@ -0,0 +1,42 @@
+package aws.ec2;
+
+import java.util.List;
+import software.amazon.awssdk.services.ec2.model.ReferencedSecurityGroup;
+import software.amazon.awssdk.services.ec2.model.SecurityGroupRule;
+
+// Instances and security group rules for the offline tests, configured like the deployed application
+final class Ec2Fixtures {
+  static final String OS = "Amazon Linux 2 AMI 2.0.20240109.0 x86_64 HVM gp2";
+
+  private Ec2Fixtures() {
+  }
+
+  // A t3.micro tagged cloudx:qa; private when it has no public address
+  static Ec2Helper.Ec2Instance instance(String id, String privateIp, String publicIp, List<String> groupIds,
+                                        List<SecurityGroupRule> rules) {
+    return instance(id, "t3.micro", privateIp, publicIp, List.of("cloudx:qa"), groupIds, rules);
+  }
+
+  // The rules are split into ingress and egress by their direction
+  static Ec2Helper.Ec2Instance instance(String id, String type, String privateIp, String publicIp, List<String> tags,
+                                        List<String> groupIds, List<SecurityGroupRule> rules) {
+    return new Ec2Helper.Ec2Instance(id, type, publicIp == null, tags, 8, OS, publicIp, privateIp, groupIds,
+        rules.stream().filter(rule -> !rule.isEgress()).toList(),
+        rules.stream().filter(SecurityGroupRule::isEgress).toList(), "eu-central-1a", "eu-central-1");
+  }
+
+  static SecurityGroupRule cidr(String groupId, boolean egress, String protocol, int from, int to, String cidr) {
+    return rule(groupId, egress, protocol, from, to).cidrIpv4(cidr).build();
+  }
+
+  static SecurityGroupRule group(String groupId, boolean egress, String protocol, int from, int to,
+                                 String referencedGroupId) {
+    return rule(groupId, egress, protocol, from, to)
+        .referencedGroupInfo(ReferencedSecurityGroup.builder().groupId(referencedGroupId).build()).build();
+  }
+
+  private static SecurityGroupRule.Builder rule(String groupId, boolean egress, String protocol, int from, int to) {
+    return SecurityGroupRule.builder().securityGroupRuleId("sgr-" + groupId + "-" + egress + "-" + from + "-" + to)
+        .groupId(groupId).isEgress(egress).ipProtocol(protocol).fromPort(from).toPort(to);
+  }
+}
@@ -1,101 +1,53 @@
 package aws.ec2;
 
+import aws.common.BoundedExecutor;
+import aws.common.CrawlerMode;
+import aws.common.PagedSource;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
 import software.amazon.awssdk.services.ec2.Ec2Client;
-import software.amazon.awssdk.services.ec2.model.DescribeAvailabilityZonesRequest;
-import software.amazon.awssdk.services.ec2.model.DescribeAvailabilityZonesResponse;
-import software.amazon.awssdk.services.ec2.model.DescribeImagesRequest;
-import software.amazon.awssdk.services.ec2.model.DescribeImagesResponse;
 import software.amazon.awssdk.services.ec2.model.DescribeInstancesRequest;
 import software.amazon.awssdk.services.ec2.model.DescribeInstancesResponse;
-import software.amazon.awssdk.services.ec2.model.DescribeSecurityGroupRulesRequest;
-import software.amazon.awssdk.services.ec2.model.DescribeSecurityGroupRulesResponse;
-import software.amazon.awssdk.services.ec2.model.DescribeVolumesRequest;
-import software.amazon.awssdk.services.ec2.model.DescribeVolumesResponse;
 import software.amazon.awssdk.services.ec2.model.Filter;
-import software.amazon.awssdk.services.ec2.model.GroupIdentifier;
-import software.amazon.awssdk.services.ec2.model.Image;
 import software.amazon.awssdk.services.ec2.model.Instance;
-import software.amazon.awssdk.services.ec2.model.Reservation;
 import software.amazon.awssdk.services.ec2.model.SecurityGroupRule;
-import software.amazon.awssdk.services.ec2.model.Volume;
 
 public class Ec2Helper {
   static List<Ec2Instance> getInstances(Ec2Client ec2) {
-    List<Ec2Instance> result = new ArrayList<>();
+    if (CrawlerMode.current() == CrawlerMode.ASYNC) {
+      return Ec2AsyncCrawler.getInstances(ec2, BoundedExecutor.shared());
+    }
 
-    String nextToken = null;
-    do {
-      DescribeInstancesRequest request = DescribeInstancesRequest.builder().filters(
-          Filter.builder().name("instance-state-name").values("running").build()).nextToken(nextToken).build();
-      DescribeInstancesResponse response = ec2.describeInstances(request);
+    List<Ec2Instance> result = new ArrayList<>();
+    Ec2Enricher enricher = new Ec2Enricher(ec2);
 
-      for (Reservation reservation : response.reservations()) {
-        for (Instance instance : reservation.instances()) {
-          String rootDeviceId = instance.blockDeviceMappings().getFirst().ebs().volumeId();
-
-          // Get volume details
-          DescribeVolumesRequest dvReq = DescribeVolumesRequest.builder().volumeIds(rootDeviceId).build();
-          DescribeVolumesResponse dvRes = ec2.describeVolumes(dvReq);
-          List<Volume> volumes = dvRes.volumes();
-
-          assert volumes != null;
-          assert volumes.size() == 1;
-
-          int instanceVolumeSize = volumes.getFirst().size();
-          // Get image details
-          String amiId = instance.imageId();
-          DescribeImagesRequest diReq = DescribeImagesRequest.builder().imageIds(amiId).build();
-          DescribeImagesResponse diRes = ec2.describeImages(diReq);
-          List<Image> images = diRes.images();
-
-          assert images != null;
-          assert images.size() == 1;
-          String imageName = images.getFirst().description();
-
-          // get security rules
-          List<String> securityGroupIds = instance.securityGroups().stream().map(GroupIdentifier::groupId).toList();
-          DescribeSecurityGroupRulesRequest dsgReq = DescribeSecurityGroupRulesRequest.builder().filters(
-              List.of(Filter.builder().name("group-id").values(securityGroupIds).build())).build();
-          DescribeSecurityGroupRulesResponse dsgRes = ec2.describeSecurityGroupRules(dsgReq);
-
-          List<SecurityGroupRule> inRules = dsgRes.securityGroupRules().stream().filter(sg -> !sg.isEgress()).toList();
-          List<SecurityGroupRule> outRules =
-              dsgRes.securityGroupRules().stream().filter(SecurityGroupRule::isEgress).toList();
-
-          String az = instance.placement().availabilityZone();
-
-          DescribeAvailabilityZonesRequest dazReq = DescribeAvailabilityZonesRequest.builder().filters(
-              Filter.builder().name("zone-name").values(az).build()).build();
-          DescribeAvailabilityZonesResponse dazRes = ec2.describeAvailabilityZones(dazReq);
-
-          assert dazRes.availabilityZones().size() == 1;
-          String region = dazRes.availabilityZones().getFirst().regionName();
-
-          Ec2Instance inst = new Ec2Instance(instance.instanceTypeAsString(),
-              instance.publicIpAddress() == null,
-              instance.tags().stream().map(tag -> tag.key() + ":" + tag.value()).toList(),
-              instanceVolumeSize,
-              imageName,
-              instance.publicIpAddress(),
-              instance.privateIpAddress(),
-              securityGroupIds,
-              inRules,
-              outRules,
-              az,
-              region);
-
-          result.add(inst);
-        }
-      }
-      nextToken = response.nextToken();
-    } while (nextToken != null);
+    runningInstances(ec2).pages().forEach(page -> result.addAll(enricher.enrich(page.items())));
 
     return result;
   }
 
+  static PagedSource<Instance> runningInstances(Ec2Client ec2) {
+    return instances(ec2, List.of(Filter.builder().name("instance-state-name").values("running").build()), null);
+  }
+
+  // Instances matching the filters, at most maxResults per page (null for the API default)
+  static PagedSource<Instance> instances(Ec2Client ec2, List<Filter> filters, Integer maxResults) {
+    return nextToken -> {
+      DescribeInstancesRequest request = DescribeInstancesRequest.builder().filters(filters).maxResults(maxResults)
+          .nextToken(nextToken).build();
+      DescribeInstancesResponse response = ec2.describeInstances(request);
+
+      List<Instance> instances =
+          response.reservations().stream().flatMap(reservation -> reservation.instances().stream()).toList();
+      return new PagedSource.Page<>(instances, response.nextToken());
+    };
+  }
+
+  // A projection (Ec2InventoryView.project) leaves the fields it was not asked for unloaded; reading one of them
+  // throws rather than answering 0, null or no rules
   record Ec2Instance(
+      String instanceId,
       String type,
       boolean isPrivate,
       List<String> tags,
@@ -107,7 +59,50 @@ public class Ec2Helper {
       List<SecurityGroupRule> inRules,
       List<SecurityGroupRule> outRules,
       String availabilityZone,
-      String region
+      String region,
+      Set<Ec2InventoryView.Field> unprojected
   ) {
+    Ec2Instance {
+      unprojected = Set.copyOf(unprojected);
+    }
+
+    // Every field loaded
+    Ec2Instance(String instanceId, String type, boolean isPrivate, List<String> tags, int ebsSize, String osName,
+                String publicIp, String privateIp, List<String> securityGroupIds, List<SecurityGroupRule> inRules,
+                List<SecurityGroupRule> outRules, String availabilityZone, String region) {
+      this(instanceId, type, isPrivate, tags, ebsSize, osName, publicIp, privateIp, securityGroupIds, inRules,
+          outRules, availabilityZone, region, Set.of());
+    }
+
+    public int ebsSize() {
+      loaded(Ec2InventoryView.Field.VOLUME, "ebsSize");
+      return ebsSize;
+    }
+
+    public String osName() {
+      loaded(Ec2InventoryView.Field.IMAGE, "osName");
+      return osName;
+    }
+
+    public List<SecurityGroupRule> inRules() {
+      loaded(Ec2InventoryView.Field.RULES, "inRules");
+      return inRules;
+    }
+
+    public List<SecurityGroupRule> outRules() {
+      loaded(Ec2InventoryView.Field.RULES, "outRules");
+      return outRules;
+    }
+
+    public String region() {
+      loaded(Ec2InventoryView.Field.REGION, "region");
+      return region;
+    }
+
+    private void loaded(Ec2InventoryView.Field field, String name) {
+      if (unprojected.contains(field)) {
+        throw new IllegalStateException(name + " of " + instanceId + " was not projected, project " + field + " too");
+      }
+    }
   }
 }
\ No newline at end of file
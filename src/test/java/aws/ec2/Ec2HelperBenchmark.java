@@ -0,0 +1,62 @@
+package aws.ec2;
+
+import aws.common.BoundedExecutor;
+import aws.common.Clients;
+import aws.stub.Fleet;
+import aws.stub.LocalAwsServer;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import software.amazon.awssdk.services.ec2.Ec2Client;
+
+// Ec2Helper.getInstances against the local stub for several fleet sizes and per-call latencies
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 10)
+@Fork(1)
+public class Ec2HelperBenchmark {
+  @Param({"2", "1000", "10000"})
+  public int instances;
+
+  @Param({"0", "5"})
+  public int latencyMillis;
+
+  @Param({"SYNC", "ASYNC"})
+  public String mode;
+
+  private LocalAwsServer server;
+  private Ec2Client ec2;
+
+  @Setup
+  public void setUp() throws Exception {
+    server = new LocalAwsServer(Fleet.generate(instances, 3), Duration.ofMillis(latencyMillis), 0, 1000);
+    ec2 = Clients.configure(Ec2Client.builder(), server).build();
+  }
+
+  @TearDown
+  public void tearDown() {
+    ec2.close();
+    server.close();
+  }
+
+  @Benchmark
+  public List<Ec2Helper.Ec2Instance> getInstances() {
+    return "ASYNC".equals(mode)
+        ? Ec2AsyncCrawler.getInstances(ec2, BoundedExecutor.shared())
+        : Ec2Helper.getInstances(ec2);
+  }
+}
@@ -0,0 +1,52 @@
+package aws.ec2;
+
+import aws.common.BoundedExecutor;
+import aws.stub.Fleet;
+import aws.stub.StubAccount;
+import java.util.List;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+import software.amazon.awssdk.services.ec2.Ec2Client;
+
+public class Ec2HelperTest {
+  private static final int INSTANCES = 250;
+
+  private StubAccount account;
+  private Ec2Client ec2;
+
+  @BeforeClass
+  public void setUp() throws Exception {
+    account = StubAccount.start(Fleet.generate(INSTANCES, 3), 40);
+    ec2 = account.ec2();
+  }
+
+  @AfterClass
+  public void cleanUp() {
+    account.close();
+  }
+
+  @Test(description = "Paged instances are enriched with batched calls instead of per-instance ones",
+      groups = "offline")
+  public void verifyBatchedEnrichment() {
+    long before = account.requestCount();
+    List<Ec2Helper.Ec2Instance> instances = Ec2Helper.getInstances(ec2);
+    long calls = account.requestCount() - before;
+
+    Assert.assertEquals(instances.size(), INSTANCES);
+    Assert.assertTrue(instances.stream().allMatch(instance -> instance.ebsSize() == 8));
+    Assert.assertTrue(instances.stream().allMatch(instance -> "eu-central-1".equals(instance.region())));
+    Assert.assertTrue(instances.stream().allMatch(instance -> instance.osName().startsWith("Amazon Linux")));
+    Assert.assertTrue(instances.stream().allMatch(instance -> instance.inRules().size() == 2
+        && instance.outRules().size() == 1));
+    Assert.assertTrue(calls < INSTANCES / 4, "API calls: " + calls);
+  }
+
+  @Test(description = "The async crawler returns the same inventory as the sequential one", groups = "offline")
+  public void verifyAsyncCrawler() {
+    try (BoundedExecutor executor = new BoundedExecutor(4)) {
+      Assert.assertEquals(Ec2AsyncCrawler.getInstances(ec2, executor), Ec2Helper.getInstances(ec2));
+    }
+  }
+}
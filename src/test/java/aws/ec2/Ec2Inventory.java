@@ -0,0 +1,61 @@
+package aws.ec2;
+
+import aws.common.SnapshotCache;
+import aws.common.SnapshotFile;
+import aws.common.TestConfig;
+import java.time.Duration;
+import java.util.List;
+import software.amazon.awssdk.services.ec2.Ec2Client;
+
+// Suite-level inventory: the instances are listed (or read from -Dinventory.snapshot) once and shared by all tests
+// until the TTL expires, and so is the scan of every configured account and region. The cache holds a view that
+// describes volumes, images, rules and regions only when a test reads them, and keeps the full records in compact
+// columnar form.
+class Ec2Inventory {
+  private static final SnapshotCache<Ec2InventoryView> INSTANCES =
+      new SnapshotCache<>(TestConfig.getDuration("inventory.ttl", Duration.ofMinutes(10)));
+  private static final SnapshotCache<List<Ec2Scanner.ScannedInstance>> SCAN =
+      new SnapshotCache<>(TestConfig.getDuration("inventory.ttl", Duration.ofMinutes(10)));
+  private static Ec2Refresher refresher;
+
+  // Snapshots are written and read whole, so with -Dinventory.snapshot every field is loaded up front
+  static Ec2InventoryView view(Ec2Client ec2) {
+    return INSTANCES.get(() -> TestConfig.get("inventory.snapshot", null) == null
+        ? lazy(ec2)
+        : Ec2InventoryView.of(SnapshotFile.liveOrSnapshot(Ec2SnapshotCodec.KIND, Ec2SnapshotCodec.INSTANCE,
+            () -> crawl(ec2))));
+  }
+
+  // An expired inventory is refreshed incrementally, through the refresher's lookups; -Dinventory.refresh=full
+  // repeats the whole crawl instead
+  private static Ec2InventoryView lazy(Ec2Client ec2) {
+    if ("full".equals(TestConfig.get("inventory.refresh", "incremental"))) {
+      return Ec2InventoryView.lazy(ec2);
+    }
+    return refresher(ec2).view();
+  }
+
+  private static List<Ec2Helper.Ec2Instance> crawl(Ec2Client ec2) {
+    if ("full".equals(TestConfig.get("inventory.refresh", "incremental"))) {
+      return Ec2Helper.getInstances(ec2);
+    }
+    return refresher(ec2).refresh();
+  }
+
+  private static synchronized Ec2Refresher refresher(Ec2Client ec2) {
+    if (refresher == null || refresher.client() != ec2) {
+      refresher = new Ec2Refresher(ec2);
+    }
+    return refresher;
+  }
+
+  // All configured accounts and regions, tagged with where each instance was found
+  static List<Ec2Scanner.ScannedInstance> scanned() {
+    return SCAN.get(() -> List.copyOf(Ec2Scanner.scan(Ec2Scanner.configuredTargets())));
+  }
+
+  static void invalidate() {
+    INSTANCES.invalidate();
+    SCAN.invalidate();
+  }
+}
@@ -0,0 +1,105 @@
+package aws.ec2;
+
+import aws.common.BoundedExecutor;
+import aws.common.CrawlerMode;
+import java.util.AbstractList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.Set;
+import software.amazon.awssdk.services.ec2.Ec2Client;
+import software.amazon.awssdk.services.ec2.model.Instance;
+
+// The running instances as listed by DescribeInstances, enriched only as far as callers read. size() needs nothing
+// more; project(fields) describes just the declared fields, each at most once per view and in batches; reading
+// the list itself builds the full records once, reusing what the projections described.
+final class Ec2InventoryView extends AbstractList<Ec2Helper.Ec2Instance> implements RandomAccess {
+  // What DescribeInstances does not tell: root volume size, AMI description, security group rules, region
+  enum Field { VOLUME, IMAGE, RULES, REGION }
+
+  private static final Set<Field> ALL = EnumSet.allOf(Field.class);
+
+  // Describes the fields of a listing and builds its records, one caller at a time, so concurrent tests share one
+  // set of calls
+  interface Enrichment {
+    List<Ec2Helper.Ec2Instance> project(List<Instance> running, Set<Field> fields);
+
+    List<Ec2Helper.Ec2Instance> full(List<Instance> running);
+  }
+
+  // null for a view over already enriched instances
+  private final List<Instance> running;
+  private final Enrichment enrichment;
+  private volatile List<Ec2Helper.Ec2Instance> full;
+
+  private Ec2InventoryView(List<Instance> running, Enrichment enrichment, List<Ec2Helper.Ec2Instance> full) {
+    this.running = running;
+    this.enrichment = enrichment;
+    this.full = full;
+  }
+
+  // Lists the running instances now and nothing else; the view gets an enricher of its own
+  static Ec2InventoryView lazy(Ec2Client ec2) {
+    Ec2Enricher enricher =
+        new Ec2Enricher(ec2, CrawlerMode.current() == CrawlerMode.ASYNC ? BoundedExecutor.shared() : null);
+    return over(Ec2Helper.runningInstances(ec2).stream().toList(), enrichment(enricher));
+  }
+
+  static Ec2InventoryView over(List<Instance> running, Enrichment enrichment) {
+    return new Ec2InventoryView(running, enrichment, null);
+  }
+
+  // Every field is already there, e.g. read from a snapshot
+  static Ec2InventoryView of(List<Ec2Helper.Ec2Instance> instances) {
+    return new Ec2InventoryView(null, null, CompactInventory.of(instances));
+  }
+
+  @Override
+  public int size() {
+    return running != null ? running.size() : full.size();
+  }
+
+  @Override
+  public Ec2Helper.Ec2Instance get(int index) {
+    return full().get(index);
+  }
+
+  // Instances with the DescribeInstances attributes and the given fields; reading any other field throws
+  List<Ec2Helper.Ec2Instance> project(Field... fields) {
+    if (running == null) {
+      return full;
+    }
+    Set<Field> wanted = EnumSet.noneOf(Field.class);
+    wanted.addAll(List.of(fields));
+    return enrichment.project(running, wanted);
+  }
+
+  private List<Ec2Helper.Ec2Instance> full() {
+    List<Ec2Helper.Ec2Instance> result = full;
+    if (result == null) {
+      synchronized (this) {
+        if (full == null) {
+          full = CompactInventory.of(enrichment.full(running));
+        }
+        result = full;
+      }
+    }
+    return result;
+  }
+
+  // An enricher of the view's own: the ids it described once are not described again
+  private static Enrichment enrichment(Ec2Enricher enricher) {
+    return new Enrichment() {
+      @Override
+      public synchronized List<Ec2Helper.Ec2Instance> project(List<Instance> running, Set<Field> fields) {
+        enricher.load(running, fields);
+        return running.stream().map(instance -> enricher.build(instance, fields)).toList();
+      }
+
+      @Override
+      public List<Ec2Helper.Ec2Instance> full(List<Instance> running) {
+        return project(running, ALL);
+      }
+    };
+  }
+}
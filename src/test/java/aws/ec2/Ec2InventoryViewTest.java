@@ -0,0 +1,122 @@
+package aws.ec2;
+
+import aws.stub.Fleet;
+import aws.stub.StubAccount;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+import software.amazon.awssdk.services.ec2.Ec2Client;
+
+public class Ec2InventoryViewTest {
+  private static final int INSTANCES = 250;
+  private static final List<String> ENRICHMENT =
+      List.of("DescribeVolumes", "DescribeImages", "DescribeSecurityGroupRules", "DescribeAvailabilityZones");
+
+  private StubAccount account;
+  private Ec2Client ec2;
+
+  @BeforeClass
+  public void setUp() throws Exception {
+    account = StubAccount.start(Fleet.generate(INSTANCES, 3), 40);
+    ec2 = account.ec2();
+  }
+
+  @AfterClass
+  public void cleanUp() {
+    account.close();
+  }
+
+  @Test(description = "Counting and basic attributes make only DescribeInstances calls", groups = "offline")
+  public void verifyBasicAttributesOnly() {
+    Map<String, Long> before = counts();
+    Ec2InventoryView view = Ec2InventoryView.lazy(ec2);
+
+    Assert.assertEquals(view.size(), INSTANCES);
+    List<Ec2Helper.Ec2Instance> basic = view.project();
+    Assert.assertTrue(basic.stream().allMatch(instance -> instance.privateIp() != null));
+    // a field the projection did not ask for is not made up
+    Assert.assertThrows(IllegalStateException.class, () -> basic.getFirst().osName());
+
+    Map<String, Long> calls = delta(before);
+    Assert.assertEquals(calls.get("DescribeInstances"), (long) (INSTANCES + 39) / 40);
+    ENRICHMENT.forEach(action -> Assert.assertEquals(calls.get(action), 0L, action));
+  }
+
+  @Test(description = "A projected field is described once, in batches, however many tests ask for it at once",
+      groups = "offline")
+  public void verifyProjectionLoadsOnce() {
+    Ec2InventoryView view = Ec2InventoryView.lazy(ec2);
+    Map<String, Long> before = counts();
+
+    List<CompletableFuture<List<Ec2Helper.Ec2Instance>>> readers = IntStream.range(0, 8)
+        .mapToObj(i -> CompletableFuture.supplyAsync(() -> view.project(Ec2InventoryView.Field.RULES))).toList();
+    readers.forEach(reader -> Assert.assertTrue(reader.join().stream().allMatch(instance ->
+        instance.inRules().size() == 2 && instance.outRules().size() == 1)));
+    Assert.assertThrows(IllegalStateException.class, () -> readers.getFirst().join().getFirst().ebsSize());
+    view.project(Ec2InventoryView.Field.RULES, Ec2InventoryView.Field.REGION);
+
+    Map<String, Long> calls = delta(before);
+    Assert.assertEquals(calls.get("DescribeSecurityGroupRules"), 1L);
+    Assert.assertEquals(calls.get("DescribeAvailabilityZones"), 1L);
+    Assert.assertEquals(calls.get("DescribeVolumes") + calls.get("DescribeImages"), 0L);
+  }
+
+  @Test(description = "The full records equal the eager crawl and reuse the fields already projected",
+      groups = "offline")
+  public void verifyFullRecords() {
+    Ec2InventoryView view = Ec2InventoryView.lazy(ec2);
+    view.project(Ec2InventoryView.Field.VOLUME);
+    Map<String, Long> before = counts();
+
+    List<Ec2Helper.Ec2Instance> full = List.copyOf(view);
+    // a second read builds nothing
+    List.copyOf(view);
+
+    Map<String, Long> calls = delta(before);
+    Assert.assertEquals(calls.get("DescribeInstances") + calls.get("DescribeVolumes"), 0L);
+    Assert.assertEquals(calls.get("DescribeImages"), 1L);
+    Assert.assertEquals(calls.get("DescribeSecurityGroupRules"), 1L);
+    Assert.assertEquals(calls.get("DescribeAvailabilityZones"), 1L);
+    Assert.assertEquals(full, Ec2Helper.getInstances(ec2));
+  }
+
+  @Test(description = "Views of the incremental refresher build the full records on what their projections read",
+      groups = "offline")
+  public void verifyRefresherViewReusesProjections() {
+    Ec2Refresher refresher = new Ec2Refresher(ec2);
+    Ec2InventoryView view = refresher.view();
+    view.project(Ec2InventoryView.Field.RULES);
+    view.project(Ec2InventoryView.Field.RULES, Ec2InventoryView.Field.REGION);
+    Map<String, Long> before = counts();
+
+    List<Ec2Helper.Ec2Instance> full = List.copyOf(view);
+
+    Map<String, Long> calls = delta(before);
+    Assert.assertEquals(calls.get("DescribeInstances") + calls.get("DescribeSecurityGroupRules")
+        + calls.get("DescribeAvailabilityZones"), 0L);
+    Assert.assertEquals(calls.get("DescribeImages"), 1L);
+    Assert.assertEquals(full, Ec2Helper.getInstances(ec2));
+
+    // the next listing found no changed instance, so no rules are read again
+    before = counts();
+    refresher.view().project(Ec2InventoryView.Field.RULES);
+    Assert.assertEquals(delta(before).get("DescribeSecurityGroupRules"), 0L);
+  }
+
+  private Map<String, Long> counts() {
+    return Stream.concat(Stream.of("DescribeInstances"), ENRICHMENT.stream())
+        .collect(Collectors.toMap(action -> action, account::requestCount));
+  }
+
+  private Map<String, Long> delta(Map<String, Long> before) {
+    return counts().entrySet().stream()
+        .collect(Collectors.toMap(Map.Entry::getKey, entry -> entry.getValue() - before.get(entry.getKey())));
+  }
+}
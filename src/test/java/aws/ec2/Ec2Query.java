@@ -0,0 +1,131 @@
+package aws.ec2;
+
+import aws.common.PagedSource;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import software.amazon.awssdk.services.ec2.Ec2Client;
+import software.amazon.awssdk.services.ec2.model.DescribeImagesRequest;
+import software.amazon.awssdk.services.ec2.model.DescribeVolumesRequest;
+import software.amazon.awssdk.services.ec2.model.DescribeVolumesResponse;
+import software.amazon.awssdk.services.ec2.model.Filter;
+import software.amazon.awssdk.services.ec2.model.Image;
+import software.amazon.awssdk.services.ec2.model.Instance;
+import software.amazon.awssdk.services.ec2.model.Volume;
+
+// Expected configuration as server-side filters, answering with the ids of the matching running instances.
+// Type, tags and image ids are DescribeInstances filters. DescribeInstances knows neither the OS nor volume sizes,
+// so an OS description is matched by DescribeImages over the candidates' images and a root volume size by
+// DescribeVolumes (size filter) over their root volumes; no other enrichment is fetched.
+class Ec2Query {
+  // the DescribeInstances maximum: large accounts need the fewest round trips
+  private static final int MAX_RESULTS = 1000;
+  // EC2 accepts up to 200 values per filter
+  private static final int BATCH_SIZE = 200;
+
+  private final Map<String, List<String>> filters = new LinkedHashMap<>();
+  private String osDescription;
+  private Integer rootVolumeSize;
+
+  private Ec2Query() {
+    filters.put("instance-state-name", List.of("running"));
+  }
+
+  static Ec2Query running() {
+    return new Ec2Query();
+  }
+
+  Ec2Query type(String... types) {
+    return filter("instance-type", types);
+  }
+
+  Ec2Query tag(String key, String... values) {
+    return filter("tag:" + key, values);
+  }
+
+  Ec2Query imageId(String... imageIds) {
+    return filter("image-id", imageIds);
+  }
+
+  // EC2 filter wildcards: * and ?
+  Ec2Query osDescription(String pattern) {
+    this.osDescription = pattern;
+    return this;
+  }
+
+  Ec2Query rootVolumeSize(int gib) {
+    this.rootVolumeSize = gib;
+    return this;
+  }
+
+  private Ec2Query filter(String name, String... values) {
+    filters.put(name, List.of(values));
+    return this;
+  }
+
+  Set<String> instanceIds(Ec2Client ec2) {
+    List<Instance> candidates = instances(ec2).stream().toList();
+
+    Set<String> images = null;
+    if (osDescription != null) {
+      images = matchingImages(ec2, candidates.stream().map(Instance::imageId).distinct().toList());
+    }
+    Set<String> volumes = null;
+    if (rootVolumeSize != null) {
+      volumes = matchingVolumes(ec2, candidates.stream().map(Ec2Enricher::rootVolumeId).toList());
+    }
+
+    Set<String> result = new LinkedHashSet<>();
+    for (Instance instance : candidates) {
+      if ((images == null || images.contains(instance.imageId()))
+          && (volumes == null || volumes.contains(Ec2Enricher.rootVolumeId(instance)))) {
+        result.add(instance.instanceId());
+      }
+    }
+    return result;
+  }
+
+  private PagedSource<Instance> instances(Ec2Client ec2) {
+    List<Filter> requestFilters = filters.entrySet().stream()
+        .map(filter -> Filter.builder().name(filter.getKey()).values(filter.getValue()).build()).toList();
+    return Ec2Helper.instances(ec2, requestFilters, MAX_RESULTS);
+  }
+
+  private Set<String> matchingImages(Ec2Client ec2, List<String> imageIds) {
+    Set<String> result = new HashSet<>();
+    for (List<String> batch : batches(imageIds)) {
+      DescribeImagesRequest request = DescribeImagesRequest.builder().imageIds(batch)
+          .filters(Filter.builder().name("description").values(osDescription).build()).build();
+      ec2.describeImages(request).images().stream().map(Image::imageId).forEach(result::add);
+    }
+    return result;
+  }
+
+  private Set<String> matchingVolumes(Ec2Client ec2, List<String> volumeIds) {
+    Set<String> result = new HashSet<>();
+    for (List<String> batch : batches(volumeIds)) {
+      PagedSource<Volume> source = nextToken -> {
+        DescribeVolumesRequest request = DescribeVolumesRequest.builder()
+            .filters(Filter.builder().name("volume-id").values(batch).build(),
+                Filter.builder().name("size").values(String.valueOf(rootVolumeSize)).build())
+            .maxResults(MAX_RESULTS).nextToken(nextToken).build();
+        DescribeVolumesResponse response = ec2.describeVolumes(request);
+        return new PagedSource.Page<>(response.volumes(), response.nextToken());
+      };
+      source.stream().map(Volume::volumeId).forEach(result::add);
+    }
+    return result;
+  }
+
+  private static List<List<String>> batches(List<String> ids) {
+    List<List<String>> result = new ArrayList<>();
+    for (int i = 0; i < ids.size(); i += BATCH_SIZE) {
+      result.add(ids.subList(i, Math.min(i + BATCH_SIZE, ids.size())));
+    }
+    return result;
+  }
+}
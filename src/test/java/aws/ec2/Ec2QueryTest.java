@@ -0,0 +1,94 @@
+package aws.ec2;
+
+import aws.stub.Fleet;
+import aws.stub.StubAccount;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+import software.amazon.awssdk.services.ec2.Ec2Client;
+
+public class Ec2QueryTest {
+  private static final int INSTANCES = 100;
+  private static final List<String> VIOLATING = List.of("i-wrong-type", "i-wrong-tag", "i-big-volume", "i-windows");
+
+  private StubAccount account;
+  private Ec2Client ec2;
+
+  @BeforeClass
+  public void setUp() throws Exception {
+    account = StubAccount.start(withViolations(Fleet.generate(INSTANCES, 3)), 10);
+    ec2 = account.ec2();
+  }
+
+  @AfterClass
+  public void cleanUp() {
+    account.close();
+  }
+
+  @Test(description = "Pushed-down filters select the same instances as checking the full inventory",
+      groups = "offline")
+  public void verifyFiltersMatchClientSideChecks() {
+    Set<String> compliant = compliant().instanceIds(ec2);
+
+    Set<String> expected = new LinkedHashSet<>();
+    for (Ec2Helper.Ec2Instance instance : Ec2Helper.getInstances(ec2)) {
+      if ("t3.micro".equals(instance.type()) && instance.tags().contains("cloudx:qa") && instance.ebsSize() == 8
+          && instance.osName().contains("Amazon Linux 2")) {
+        expected.add(instance.instanceId());
+      }
+    }
+    Assert.assertEquals(compliant, expected);
+
+    Set<String> violating = new LinkedHashSet<>(Ec2Query.running().instanceIds(ec2));
+    violating.removeAll(compliant);
+    Assert.assertEquals(violating, Set.copyOf(VIOLATING));
+  }
+
+  @Test(description = "One DescribeInstances page covers the fleet and only the candidates' images and volumes "
+      + "are described", groups = "offline")
+  public void verifyRoundTrips() {
+    long instances = account.requestCount("DescribeInstances");
+    long images = account.requestCount("DescribeImages");
+    long volumes = account.requestCount("DescribeVolumes");
+
+    compliant().instanceIds(ec2);
+
+    // the stub pages 10 items by default, maxResults asks for 1000
+    Assert.assertEquals(account.requestCount("DescribeInstances") - instances, 1);
+    Assert.assertEquals(account.requestCount("DescribeImages") - images, 1);
+    Assert.assertEquals(account.requestCount("DescribeVolumes") - volumes, 1);
+  }
+
+  private static Ec2Query compliant() {
+    return Ec2Query.running().type("t3.micro").tag("cloudx", "qa").rootVolumeSize(8)
+        .osDescription("*Amazon Linux 2*");
+  }
+
+  private static Fleet withViolations(Fleet fleet) {
+    List<Fleet.Instance> instances = new ArrayList<>(fleet.instances());
+    Map<String, Fleet.Volume> volumes = new LinkedHashMap<>(fleet.volumes());
+    Map<String, Fleet.Image> images = new LinkedHashMap<>(fleet.images());
+    images.put("ami-windows", new Fleet.Image("ami-windows", "Windows_Server-2022", "Microsoft Windows Server 2022"));
+
+    Fleet.Instance template = instances.getFirst();
+    for (String instanceId : VIOLATING) {
+      String volumeId = "vol-" + instanceId.substring(2);
+      instances.add(new Fleet.Instance(instanceId,
+          instanceId.equals("i-wrong-type") ? "t3.large" : template.type(),
+          instanceId.equals("i-windows") ? "ami-windows" : template.imageId(),
+          template.zone(), template.privateIp(), null, volumeId, template.groupIds(),
+          instanceId.equals("i-wrong-tag") ? Map.of("cloudx", "dev") : template.tags(), template.launchTime()));
+      volumes.put(volumeId,
+          new Fleet.Volume(volumeId, instanceId.equals("i-big-volume") ? 16 : 8, template.zone(), instanceId));
+    }
+    return new Fleet(instances, volumes, images, fleet.rules(), fleet.zoneRegions(), fleet.users(), fleet.groups(),
+        fleet.roles(), fleet.policies());
+  }
+}
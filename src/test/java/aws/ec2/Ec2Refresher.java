@@ -0,0 +1,169 @@
+package aws.ec2;
+
+import aws.common.BoundedExecutor;
+import aws.common.CrawlerMode;
+import aws.common.TestConfig;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import software.amazon.awssdk.services.ec2.Ec2Client;
+import software.amazon.awssdk.services.ec2.model.EbsInstanceBlockDevice;
+import software.amazon.awssdk.services.ec2.model.GroupIdentifier;
+import software.amazon.awssdk.services.ec2.model.Instance;
+import software.amazon.awssdk.services.ec2.model.Tag;
+
+// Keeps the last inventory and refreshes it incrementally: the running instances are listed again and only new or
+// changed ones are rebuilt, so apart from the listing a refresh costs in proportion to the churn.
+// - Root volumes: DescribeVolumesModifications tells which were resized since the last refresh (a resize keeps the
+//   volume id and attachment, the fingerprint alone would miss it); only those are described again.
+// - Rules: the groups of new or changed instances are described again. EC2 reports no change time for rules, so an
+//   edit to a group whose instances did not change is seen only with -Dinventory.refresh.rules=all, which
+//   describes the rules of every group in use on each refresh.
+// AMI descriptions and AZ regions never change, so the enricher keeps them for the refresher's lifetime; rules and
+// sizes of groups and volumes no longer in use are dropped. Views over a listing share the enricher: rules and
+// sizes are read once per listing, whether a projection or the full inventory asks first.
+class Ec2Refresher implements Ec2InventoryView.Enrichment {
+  // DescribeVolumesModifications start times come from the EC2 clock, this one may be behind
+  private static final Duration CLOCK_SKEW = Duration.ofMinutes(5);
+
+  private final Ec2Client ec2;
+  private final Ec2Enricher enricher;
+  private final boolean allRules;
+  private Map<String, Entry> previous = Map.of();
+  private CompactInventory inventory = CompactInventory.of(List.of());
+  // the listing rules and sizes were last read for, and which of them were
+  private List<Instance> listed;
+  private final Set<Ec2InventoryView.Field> fresh = EnumSet.noneOf(Ec2InventoryView.Field.class);
+  // read since the last full inventory, so not in it yet
+  private final Set<String> changedGroups = new HashSet<>();
+  private final Set<String> changedVolumes = new HashSet<>();
+  // when the root volume sizes were last up to date, null before the first read
+  private Instant volumesCheckedAt;
+
+  // position of the instance in the last inventory
+  private record Entry(Fingerprint fingerprint, int index) {
+  }
+
+  record Fingerprint(String state, Instant launchTime, String type, String imageId, String zone, String volumeId,
+                     Instant attachTime, List<String> groupIds, String publicIp, String privateIp, List<Tag> tags) {
+    static Fingerprint of(Instance instance) {
+      EbsInstanceBlockDevice root = instance.blockDeviceMappings().getFirst().ebs();
+      return new Fingerprint(instance.state().nameAsString(), instance.launchTime(), instance.instanceTypeAsString(),
+          instance.imageId(), instance.placement().availabilityZone(), root.volumeId(), root.attachTime(),
+          instance.securityGroups().stream().map(GroupIdentifier::groupId).toList(), instance.publicIpAddress(),
+          instance.privateIpAddress(), instance.tags());
+    }
+  }
+
+  Ec2Refresher(Ec2Client ec2) {
+    this(ec2, "all".equals(TestConfig.get("inventory.refresh.rules", "changed")));
+  }
+
+  Ec2Refresher(Ec2Client ec2, boolean allRules) {
+    this.ec2 = ec2;
+    this.enricher = new Ec2Enricher(ec2, CrawlerMode.current() == CrawlerMode.ASYNC ? BoundedExecutor.shared() : null);
+    this.allRules = allRules;
+  }
+
+  Ec2Client client() {
+    return ec2;
+  }
+
+  List<Ec2Helper.Ec2Instance> refresh() {
+    return full(Ec2Helper.runningInstances(ec2).stream().toList());
+  }
+
+  // Lists the running instances now; what its projections describe is not described again for the full inventory
+  Ec2InventoryView view() {
+    return Ec2InventoryView.over(Ec2Helper.runningInstances(ec2).stream().toList(), this);
+  }
+
+  @Override
+  public synchronized List<Ec2Helper.Ec2Instance> project(List<Instance> running,
+                                                          Set<Ec2InventoryView.Field> fields) {
+    read(running, fields);
+    return running.stream().map(instance -> enricher.build(instance, fields)).toList();
+  }
+
+  @Override
+  public synchronized List<Ec2Helper.Ec2Instance> full(List<Instance> running) {
+    read(running, EnumSet.of(Ec2InventoryView.Field.RULES, Ec2InventoryView.Field.VOLUME));
+
+    Map<String, Entry> reused = new HashMap<>();
+    List<Instance> stale = new ArrayList<>();
+    for (Instance instance : running) {
+      Entry entry = previous.get(instance.instanceId());
+      if (entry == null || !entry.fingerprint().equals(Fingerprint.of(instance))
+          || changedVolumes.contains(Ec2Enricher.rootVolumeId(instance))
+          || instance.securityGroups().stream().anyMatch(group -> changedGroups.contains(group.groupId()))) {
+        stale.add(instance);
+      } else {
+        reused.put(instance.instanceId(), entry);
+      }
+    }
+
+    List<Ec2Helper.Ec2Instance> rebuilt = enricher.enrich(stale);
+    Map<String, Ec2Helper.Ec2Instance> rebuiltById = new HashMap<>();
+    for (int i = 0; i < stale.size(); i++) {
+      rebuiltById.put(stale.get(i).instanceId(), rebuilt.get(i));
+    }
+
+    List<Ec2Helper.Ec2Instance> result = new ArrayList<>(running.size());
+    Map<String, Entry> current = new HashMap<>();
+    for (Instance instance : running) {
+      Entry entry = reused.get(instance.instanceId());
+      result.add(entry != null ? inventory.get(entry.index()) : rebuiltById.get(instance.instanceId()));
+      current.put(instance.instanceId(), new Entry(entry != null ? entry.fingerprint() : Fingerprint.of(instance),
+          result.size() - 1));
+    }
+
+    previous = current;
+    inventory = CompactInventory.of(result);
+    changedGroups.clear();
+    changedVolumes.clear();
+    return inventory;
+  }
+
+  // Rules and sizes may have changed since the last listing, images and zones never do
+  private void read(List<Instance> running, Set<Ec2InventoryView.Field> fields) {
+    if (running != listed) {
+      listed = running;
+      fresh.clear();
+    }
+    if (fields.contains(Ec2InventoryView.Field.RULES) && fresh.add(Ec2InventoryView.Field.RULES)) {
+      Set<String> inUse = new LinkedHashSet<>();
+      Set<String> reread = new LinkedHashSet<>();
+      for (Instance instance : running) {
+        Entry entry = previous.get(instance.instanceId());
+        boolean changed = entry == null || !entry.fingerprint().equals(Fingerprint.of(instance));
+        instance.securityGroups().forEach(group -> {
+          inUse.add(group.groupId());
+          if (changed || allRules) {
+            reread.add(group.groupId());
+          }
+        });
+      }
+      enricher.retainRules(inUse);
+      changedGroups.addAll(enricher.refreshRules(reread));
+    }
+    if (fields.contains(Ec2InventoryView.Field.VOLUME) && fresh.add(Ec2InventoryView.Field.VOLUME)) {
+      Instant checkedAt = Instant.now();
+      List<String> inUse = running.stream().map(Ec2Enricher::rootVolumeId).toList();
+      enricher.retainVolumes(inUse);
+      if (volumesCheckedAt != null) {
+        Set<String> resized = enricher.modifiedVolumes(volumesCheckedAt.minus(CLOCK_SKEW));
+        resized.retainAll(Set.copyOf(inUse));
+        changedVolumes.addAll(enricher.refreshVolumes(resized));
+      }
+      volumesCheckedAt = checkedAt;
+    }
+    enricher.load(running, fields);
+  }
+}
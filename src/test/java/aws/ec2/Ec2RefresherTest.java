@@ -0,0 +1,137 @@
+package aws.ec2;
+
+import aws.stub.Fleet;
+import aws.stub.StubAccount;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+import software.amazon.awssdk.services.ec2.Ec2Client;
+
+public class Ec2RefresherTest {
+  private static final List<String> ENRICHMENT = List.of("DescribeVolumes", "DescribeVolumesModifications",
+      "DescribeImages", "DescribeSecurityGroupRules", "DescribeAvailabilityZones");
+  private static final int INSTANCES = 100;
+  private static final int PAGE_SIZE = 40;
+
+  private final Fleet fleet = Fleet.generate(INSTANCES, 3);
+  private StubAccount account;
+  private Ec2Client ec2;
+
+  @BeforeClass
+  public void setUp() throws Exception {
+    account = StubAccount.start(fleet, PAGE_SIZE);
+    ec2 = account.ec2();
+  }
+
+  @AfterClass
+  public void cleanUp() {
+    account.close();
+  }
+
+  @Test(description = "A refresh re-describes only new or changed instances, groups and volumes", groups = "offline")
+  public void verifyIncrementalRefresh() {
+    account.replaceFleet(fleet);
+    Ec2Refresher refresher = new Ec2Refresher(ec2, false);
+    Assert.assertEquals(refresher.refresh(), Ec2Helper.getInstances(ec2));
+
+    // nothing changed: one look at the recent volume modifications, nothing else is described
+    Map<String, Long> before = enrichmentCalls();
+    List<Ec2Helper.Ec2Instance> unchanged = refresher.refresh();
+    Assert.assertEquals(delta(before), Map.of("DescribeVolumes", 0L, "DescribeVolumesModifications", 1L,
+        "DescribeImages", 0L, "DescribeSecurityGroupRules", 0L, "DescribeAvailabilityZones", 0L));
+    Assert.assertEquals(unchanged, Ec2Helper.getInstances(ec2));
+
+    // one instance changed type, one terminated, one launched, a rule of their group changed: the new volume and
+    // the rules of that group are described, whatever the size of the fleet
+    Fleet churned = churn(fleet);
+    account.replaceFleet(churned);
+    before = enrichmentCalls();
+    List<Ec2Helper.Ec2Instance> refreshed = refresher.refresh();
+    Assert.assertEquals(delta(before), Map.of("DescribeVolumes", 1L, "DescribeVolumesModifications", 1L,
+        "DescribeImages", 0L, "DescribeSecurityGroupRules", 1L, "DescribeAvailabilityZones", 0L));
+    Assert.assertEquals(refreshed, Ec2Helper.getInstances(ec2));
+    Assert.assertEquals(refreshed.getFirst().type(), "t3.large");
+    Assert.assertEquals(refreshed.getLast().instanceId(), "i-new");
+
+    // a root volume grown in place keeps its id and attachment time: its modification tells, only it is described
+    account.replaceFleet(resize(churned, 2));
+    before = enrichmentCalls();
+    List<Ec2Helper.Ec2Instance> resized = refresher.refresh();
+    Assert.assertEquals(delta(before).get("DescribeVolumes"), 1L);
+    Assert.assertEquals(resized.get(2).ebsSize(), refreshed.get(2).ebsSize() + 10);
+    Assert.assertEquals(resized, Ec2Helper.getInstances(ec2));
+  }
+
+  @Test(description = "A rule edited in a group whose instances did not change is seen with the full rule re-read",
+      groups = "offline")
+  public void verifyFullRuleReread() {
+    account.replaceFleet(fleet);
+    Ec2Refresher incremental = new Ec2Refresher(ec2, false);
+    Ec2Refresher full = new Ec2Refresher(ec2, true);
+    incremental.refresh();
+    full.refresh();
+
+    account.replaceFleet(editRule(fleet));
+    Map<String, Long> before = enrichmentCalls();
+    List<Ec2Helper.Ec2Instance> stale = incremental.refresh();
+    Assert.assertEquals(delta(before).get("DescribeSecurityGroupRules"), 0L);
+    Assert.assertNotEquals(stale, Ec2Helper.getInstances(ec2));
+
+    before = enrichmentCalls();
+    List<Ec2Helper.Ec2Instance> reread = full.refresh();
+    Assert.assertEquals(delta(before).get("DescribeSecurityGroupRules"), 1L);
+    Assert.assertEquals(reread, Ec2Helper.getInstances(ec2));
+  }
+
+  private Map<String, Long> enrichmentCalls() {
+    Map<String, Long> result = new LinkedHashMap<>();
+    ENRICHMENT.forEach(action -> result.put(action, account.requestCount(action)));
+    return result;
+  }
+
+  private Map<String, Long> delta(Map<String, Long> before) {
+    Map<String, Long> result = new LinkedHashMap<>();
+    enrichmentCalls().forEach((action, count) -> result.put(action, count - before.get(action)));
+    return result;
+  }
+
+  private static Fleet churn(Fleet fleet) {
+    List<Fleet.Instance> instances = new ArrayList<>(fleet.instances());
+    Fleet.Instance first = instances.getFirst();
+    instances.set(0, new Fleet.Instance(first.instanceId(), "t3.large", first.imageId(), first.zone(),
+        first.privateIp(), first.publicIp(), first.volumeId(), first.groupIds(), first.tags(), first.launchTime()));
+    instances.remove(1);
+    instances.add(new Fleet.Instance("i-new", first.type(), first.imageId(), first.zone(), "10.0.9.9", null,
+        "vol-new", first.groupIds(), first.tags(), "2024-02-01T00:00:00.000Z"));
+
+    Map<String, Fleet.Volume> volumes = new LinkedHashMap<>(fleet.volumes());
+    volumes.put("vol-new", new Fleet.Volume("vol-new", 16, first.zone(), "i-new"));
+
+    return new Fleet(instances, volumes, fleet.images(), editRule(fleet).rules(), fleet.zoneRegions(), fleet.users(),
+        fleet.groups(), fleet.roles(), fleet.policies());
+  }
+
+  // SSH of the first instance's group moves to port 2222
+  private static Fleet editRule(Fleet fleet) {
+    List<Fleet.Rule> rules = new ArrayList<>(fleet.rules());
+    Fleet.Rule ssh = rules.getFirst();
+    rules.set(0, new Fleet.Rule(ssh.ruleId(), ssh.groupId(), ssh.egress(), ssh.protocol(), 2222, 2222, ssh.cidrIpv4(),
+        ssh.referencedGroupId()));
+    return new Fleet(fleet.instances(), fleet.volumes(), fleet.images(), rules, fleet.zoneRegions(), fleet.users(),
+        fleet.groups(), fleet.roles(), fleet.policies());
+  }
+
+  private static Fleet resize(Fleet fleet, int index) {
+    Map<String, Fleet.Volume> volumes = new LinkedHashMap<>(fleet.volumes());
+    Fleet.Volume volume = volumes.get(fleet.instances().get(index).volumeId());
+    volumes.put(volume.volumeId(), new Fleet.Volume(volume.volumeId(), volume.size() + 10, volume.zone(),
+        volume.instanceId()));
+    return new Fleet(fleet.instances(), volumes, fleet.images(), fleet.rules(), fleet.zoneRegions(), fleet.users(),
+        fleet.groups(), fleet.roles(), fleet.policies());
+  }
+}
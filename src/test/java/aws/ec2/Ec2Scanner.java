@@ -0,0 +1,82 @@
+package aws.ec2;
+
+import aws.common.BoundedExecutor;
+import aws.common.Clients;
+import aws.common.TestConfig;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.BiFunction;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.ec2.Ec2Client;
+
+// Crawls every account x region of -Dscan.accounts / -Dscan.regions at the same time, one virtual thread each,
+// so a scan takes about as long as the slowest region. Each endpoint is paced by its own client's RateLimiter and
+// crawled on an executor of its own, so a throttled region waits on its own permits, never on another region's.
+class Ec2Scanner {
+  record Target(String account, Region region) {
+  }
+
+  record ScannedInstance(String account, String region, Ec2Helper.Ec2Instance instance) {
+  }
+
+  static List<Target> configuredTargets() {
+    List<String> accounts = TestConfig.getList("scan.accounts", List.of(Clients.DEFAULT_ACCOUNT));
+    List<String> regions = TestConfig.getList("scan.regions", List.of(Clients.region().id()));
+
+    List<Target> result = new ArrayList<>();
+    for (String account : accounts) {
+      for (String region : regions) {
+        result.add(new Target(account, Region.of(region)));
+      }
+    }
+    return result;
+  }
+
+  static List<ScannedInstance> scan(List<Target> targets) {
+    return scan(targets, (account, region) -> Clients.ec2(region, account));
+  }
+
+  static List<ScannedInstance> scan(List<Target> targets, BiFunction<String, Region, Ec2Client> clients) {
+    Map<Target, CompletableFuture<List<Ec2Helper.Ec2Instance>>> crawls = new LinkedHashMap<>();
+    try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+      for (Target target : targets) {
+        crawls.put(target, CompletableFuture.supplyAsync(
+            () -> crawl(clients.apply(target.account(), target.region())), executor));
+      }
+
+      List<ScannedInstance> result = new ArrayList<>();
+      IllegalStateException failure = null;
+      for (Map.Entry<Target, CompletableFuture<List<Ec2Helper.Ec2Instance>>> crawl : crawls.entrySet()) {
+        Target target = crawl.getKey();
+        try {
+          for (Ec2Helper.Ec2Instance instance : crawl.getValue().join()) {
+            result.add(new ScannedInstance(target.account(), target.region().id(), instance));
+          }
+        } catch (CompletionException e) {
+          // every failed region is reported, not only the first one
+          if (failure == null) {
+            failure = new IllegalStateException("EC2 scan failed");
+          }
+          failure.addSuppressed(new IllegalStateException(target.account() + "/" + target.region(), e.getCause()));
+        }
+      }
+
+      if (failure != null) {
+        throw failure;
+      }
+      return result;
+    }
+  }
+
+  private static List<Ec2Helper.Ec2Instance> crawl(Ec2Client ec2) {
+    try (BoundedExecutor executor = new BoundedExecutor(TestConfig.getInt("crawler.maxInFlight", 8))) {
+      return Ec2AsyncCrawler.getInstances(ec2, executor);
+    }
+  }
+}
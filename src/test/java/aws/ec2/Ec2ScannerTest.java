@@ -0,0 +1,47 @@
+package aws.ec2;
+
+import aws.stub.Fleet;
+import aws.stub.StubAccount;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+import software.amazon.awssdk.regions.Region;
+
+public class Ec2ScannerTest {
+  private static final int INSTANCES = 20;
+  private static final List<String> ACCOUNTS = List.of("dev", "prod");
+  private static final List<String> REGIONS = List.of("eu-central-1", "eu-west-1", "us-east-1");
+
+  private StubAccount account;
+
+  @BeforeClass
+  public void setUp() throws Exception {
+    account = StubAccount.start(Fleet.generate(INSTANCES, 3), Duration.ofMillis(5), 0.05, 10);
+  }
+
+  @AfterClass
+  public void cleanUp() {
+    account.close();
+  }
+
+  @Test(description = "Every account x region is crawled and its instances are tagged with it, despite throttling",
+      groups = "offline")
+  public void verifyScanIsTaggedPerTarget() {
+    List<Ec2Scanner.Target> targets = ACCOUNTS.stream()
+        .flatMap(name -> REGIONS.stream().map(region -> new Ec2Scanner.Target(name, Region.of(region))))
+        .toList();
+
+    List<Ec2Scanner.ScannedInstance> scanned = Ec2Scanner.scan(targets, account::ec2);
+
+    Assert.assertEquals(scanned.size(), INSTANCES * targets.size());
+    Map<String, Long> perTarget = scanned.stream().collect(
+        Collectors.groupingBy(instance -> instance.account() + "/" + instance.region(), Collectors.counting()));
+    Assert.assertEquals(perTarget.size(), targets.size());
+    Assert.assertTrue(perTarget.values().stream().allMatch(count -> count == INSTANCES), perTarget.toString());
+  }
+}
@@ -0,0 +1,149 @@
+package aws.ec2;
+
+import aws.common.SnapshotFile;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import software.amazon.awssdk.services.ec2.model.ReferencedSecurityGroup;
+import software.amazon.awssdk.services.ec2.model.SecurityGroupRule;
+import software.amazon.awssdk.services.ec2.model.Tag;
+
+// Instances refer to a shared table of security group rules, since most instances of a fleet share their groups
+class Ec2SnapshotCodec implements SnapshotFile.Codec<List<Ec2Helper.Ec2Instance>> {
+  static final String KIND = "ec2";
+  static final Ec2SnapshotCodec INSTANCE = new Ec2SnapshotCodec();
+
+  @Override
+  public void write(SnapshotFile.Writer out, List<Ec2Helper.Ec2Instance> instances) {
+    Map<SecurityGroupRule, Integer> ruleIds = new LinkedHashMap<>();
+    for (Ec2Helper.Ec2Instance instance : instances) {
+      instance.inRules().forEach(rule -> ruleIds.putIfAbsent(rule, ruleIds.size()));
+      instance.outRules().forEach(rule -> ruleIds.putIfAbsent(rule, ruleIds.size()));
+    }
+
+    out.writeInt(ruleIds.size());
+    ruleIds.keySet().forEach(rule -> writeRule(out, rule));
+
+    out.writeInt(instances.size());
+    for (Ec2Helper.Ec2Instance instance : instances) {
+      out.writeString(instance.instanceId());
+      out.writeString(instance.type());
+      out.writeBoolean(instance.isPrivate());
+      out.writeStrings(instance.tags());
+      out.writeInt(instance.ebsSize());
+      out.writeString(instance.osName());
+      out.writeString(instance.publicIp());
+      out.writeString(instance.privateIp());
+      out.writeStrings(instance.securityGroupIds());
+      writeRuleIds(out, instance.inRules(), ruleIds);
+      writeRuleIds(out, instance.outRules(), ruleIds);
+      out.writeString(instance.availabilityZone());
+      out.writeString(instance.region());
+    }
+  }
+
+  @Override
+  public List<Ec2Helper.Ec2Instance> read(SnapshotFile.Reader in) {
+    SecurityGroupRule[] rules = new SecurityGroupRule[in.readInt()];
+    for (int i = 0; i < rules.length; i++) {
+      rules[i] = readRule(in);
+    }
+
+    int size = in.readInt();
+    List<Ec2Helper.Ec2Instance> result = new ArrayList<>(size);
+    for (int i = 0; i < size; i++) {
+      result.add(new Ec2Helper.Ec2Instance(
+          in.readString(),
+          in.readString(),
+          in.readBoolean(),
+          in.readStrings(),
+          in.readInt(),
+          in.readString(),
+          in.readString(),
+          in.readString(),
+          in.readStrings(),
+          readRuleIds(in, rules),
+          readRuleIds(in, rules),
+          in.readString(),
+          in.readString()));
+    }
+    return result;
+  }
+
+  private static void writeRule(SnapshotFile.Writer out, SecurityGroupRule rule) {
+    out.writeString(rule.securityGroupRuleId());
+    out.writeString(rule.securityGroupRuleArn());
+    out.writeString(rule.groupId());
+    out.writeString(rule.groupOwnerId());
+    out.writeOptionalBoolean(rule.isEgress());
+    out.writeString(rule.ipProtocol());
+    out.writeOptionalInt(rule.fromPort());
+    out.writeOptionalInt(rule.toPort());
+    out.writeString(rule.cidrIpv4());
+    out.writeString(rule.cidrIpv6());
+    out.writeString(rule.prefixListId());
+    out.writeString(rule.description());
+
+    ReferencedSecurityGroup referenced = rule.referencedGroupInfo();
+    out.writeBoolean(referenced != null);
+    if (referenced != null) {
+      out.writeString(referenced.groupId());
+      out.writeString(referenced.userId());
+      out.writeString(referenced.vpcId());
+    }
+
+    // no tag list and an empty one are different values to the SDK model
+    out.writeInt(rule.hasTags() ? rule.tags().size() + 1 : 0);
+    for (Tag tag : rule.tags()) {
+      out.writeString(tag.key());
+      out.writeString(tag.value());
+    }
+  }
+
+  private static SecurityGroupRule readRule(SnapshotFile.Reader in) {
+    SecurityGroupRule.Builder rule = SecurityGroupRule.builder()
+        .securityGroupRuleId(in.readString())
+        .securityGroupRuleArn(in.readString())
+        .groupId(in.readString())
+        .groupOwnerId(in.readString())
+        .isEgress(in.readOptionalBoolean())
+        .ipProtocol(in.readString())
+        .fromPort(in.readOptionalInt())
+        .toPort(in.readOptionalInt())
+        .cidrIpv4(in.readString())
+        .cidrIpv6(in.readString())
+        .prefixListId(in.readString())
+        .description(in.readString());
+
+    if (in.readBoolean()) {
+      rule.referencedGroupInfo(ReferencedSecurityGroup.builder()
+          .groupId(in.readString()).userId(in.readString()).vpcId(in.readString()).build());
+    }
+
+    int tags = in.readInt();
+    if (tags > 0) {
+      List<Tag> result = new ArrayList<>(tags - 1);
+      for (int i = 1; i < tags; i++) {
+        result.add(Tag.builder().key(in.readString()).value(in.readString()).build());
+      }
+      rule.tags(result);
+    }
+    return rule.build();
+  }
+
+  private static void writeRuleIds(SnapshotFile.Writer out, List<SecurityGroupRule> rules,
+                                   Map<SecurityGroupRule, Integer> ruleIds) {
+    out.writeInt(rules.size());
+    rules.forEach(rule -> out.writeInt(ruleIds.get(rule)));
+  }
+
+  private static List<SecurityGroupRule> readRuleIds(SnapshotFile.Reader in, SecurityGroupRule[] rules) {
+    int size = in.readInt();
+    List<SecurityGroupRule> result = new ArrayList<>(size);
+    for (int i = 0; i < size; i++) {
+      result.add(rules[in.readInt()]);
+    }
+    return List.copyOf(result);
+  }
+}
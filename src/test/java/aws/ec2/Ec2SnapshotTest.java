@@ -0,0 +1,79 @@
+package aws.ec2;
+
+import aws.common.SnapshotFile;
+import aws.stub.Fleet;
+import aws.stub.StubAccount;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+import software.amazon.awssdk.services.ec2.Ec2Client;
+
+public class Ec2SnapshotTest {
+  private StubAccount account;
+  private Ec2Client ec2;
+  private Path directory;
+
+  @BeforeClass
+  public void setUp() throws Exception {
+    account = StubAccount.start(Fleet.generate(100, 3), 40);
+    ec2 = account.ec2();
+    directory = Files.createTempDirectory("ec2-snapshot");
+  }
+
+  @AfterClass
+  public void cleanUp() {
+    account.close();
+  }
+
+  @Test(description = "A crawled inventory reads back from its snapshot file unchanged", groups = "offline")
+  public void verifyRoundTrip() {
+    List<Ec2Helper.Ec2Instance> instances = Ec2Helper.getInstances(ec2);
+    Path file = directory.resolve("ec2.snap");
+
+    SnapshotFile.write(file, Ec2SnapshotCodec.KIND, Ec2SnapshotCodec.INSTANCE, instances);
+
+    Assert.assertEquals(SnapshotFile.read(file, Ec2SnapshotCodec.KIND, Ec2SnapshotCodec.INSTANCE), instances);
+  }
+
+  @Test(description = "The diff reports added, removed and changed instances with their rule changes",
+      groups = "offline")
+  public void verifyDiff() {
+    List<Ec2Helper.Ec2Instance> before = Ec2Helper.getInstances(ec2);
+    List<Ec2Helper.Ec2Instance> after = new ArrayList<>(before.subList(1, before.size() - 1));
+    Ec2Helper.Ec2Instance changed = after.getFirst();
+    after.set(0, new Ec2Helper.Ec2Instance(changed.instanceId(), "t3.large", changed.isPrivate(), changed.tags(),
+        changed.ebsSize(), changed.osName(), changed.publicIp(), changed.privateIp(), changed.securityGroupIds(),
+        changed.inRules().subList(1, changed.inRules().size()), changed.outRules(), changed.availabilityZone(),
+        changed.region()));
+    Ec2Helper.Ec2Instance last = before.getLast();
+    after.add(new Ec2Helper.Ec2Instance("i-new", last.type(), last.isPrivate(), last.tags(), last.ebsSize(),
+        last.osName(), last.publicIp(), last.privateIp(), last.securityGroupIds(), last.inRules(), last.outRules(),
+        last.availabilityZone(), last.region()));
+
+    Ec2Diff diff = Ec2Diff.between(before, after);
+
+    Assert.assertEquals(diff.added().stream().map(Ec2Helper.Ec2Instance::instanceId).toList(), List.of("i-new"));
+    Assert.assertEquals(diff.removed(), List.of(before.getFirst(), before.getLast()));
+    Assert.assertEquals(diff.changed().size(), 1);
+    Assert.assertEquals(diff.changed().getFirst().fields(), List.of("type", "inRules"));
+    Assert.assertEquals(List.copyOf(diff.changed().getFirst().removedRules()), List.of(changed.inRules().getFirst()));
+    Assert.assertTrue(Ec2Diff.between(before, before).isEmpty());
+  }
+
+  @Test(description = "Reordered tags, groups and rules are not a change", groups = "offline")
+  public void verifyDiffIgnoresOrder() {
+    List<Ec2Helper.Ec2Instance> before = Ec2Helper.getInstances(ec2);
+    List<Ec2Helper.Ec2Instance> after = before.stream().map(instance -> new Ec2Helper.Ec2Instance(
+        instance.instanceId(), instance.type(), instance.isPrivate(), instance.tags().reversed(), instance.ebsSize(),
+        instance.osName(), instance.publicIp(), instance.privateIp(), instance.securityGroupIds().reversed(),
+        instance.inRules().reversed(), instance.outRules().reversed(), instance.availabilityZone(),
+        instance.region())).toList();
+
+    Assert.assertTrue(Ec2Diff.between(before, after).isEmpty(), String.valueOf(Ec2Diff.between(before, after)));
+  }
+}
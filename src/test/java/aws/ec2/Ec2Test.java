@@ -1,31 +1,46 @@
 package aws.ec2;
 
-import com.fasterxml.jackson.annotation.JsonAutoDetect;
-import com.fasterxml.jackson.annotation.JsonProperty;
-import com.fasterxml.jackson.databind.DeserializationFeature;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.introspect.VisibilityChecker;
-import java.net.URI;
-import java.net.http.HttpClient;
-import java.net.http.HttpRequest;
-import java.net.http.HttpResponse;
+import aws.common.Compliance;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
 import org.testng.Assert;
 import org.testng.annotations.Test;
-import software.amazon.awssdk.services.ec2.model.SecurityGroupRule;
 
 public class Ec2Test extends Ec2BaseTest {
-  private static final String INSTANCE_TYPE = "t3.micro";
-  private static final String INSTANCE_TAGS = "cloudx:qa";
-  private static final int INSTANCE_EBS_SIZE = 8;
-  private static final String INSTANCE_OS = "Amazon Linux 2";
-  private static final String ANY_IP = "0.0.0.0/0";
+  // the expected configuration is read from compliance/ec2.json, its only copy
+  private static final List<Ec2Compliance.RuleSpec> SPEC =
+      Compliance.loadSpec(Ec2Compliance.SPEC, Ec2Compliance.Spec.class).rules();
+  private static final int INSTANCE_COUNT = rule(rule -> rule.count() != null).count();
+  private static final String INSTANCE_TYPE = String.valueOf(field("type").equals());
+  // key:value, as Ec2Instance lists its tags
+  private static final String[] INSTANCE_TAG = String.valueOf(field("tags").contains()).split(":", 2);
+  private static final int INSTANCE_EBS_SIZE = Integer.parseInt(String.valueOf(field("ebsSize").equals()));
+  private static final String INSTANCE_OS = String.valueOf(field("osName").contains());
+  private static final Ec2Compliance.RuleSpec PUBLIC_NETWORK = network(false);
+  private static final Ec2Compliance.RuleSpec PRIVATE_NETWORK = network(true);
+  private static final Ec2Compliance.RuleSpec INTERNET_ACCESS = rule(rule -> rule.internetAccess() != null);
+  // arbitrary internet addresses
+  private static final List<String> INTERNET_CLIENTS = List.of("8.8.8.8", "203.0.113.10");
 
   @Test(description = "CXQA-EC2-01: 2 application instances should be deployed", groups = "ec2")
   public void verifyTwoInstances() {
-    List<Ec2Helper.Ec2Instance> instances = Ec2Helper.getInstances(ec2);
+    // the count needs nothing but DescribeInstances
+    Assert.assertEquals(Ec2Inventory.view(ec2).size(), INSTANCE_COUNT);
+  }
+
+  @Test(description = "CXQA-EC2-01 in every account and region of -Dscan.accounts / -Dscan.regions", groups = "ec2")
+  public void verifyTwoInstancesPerScanTarget() {
+    Map<String, Long> perTarget = Ec2Inventory.scanned().stream().collect(
+        Collectors.groupingBy(instance -> instance.account() + "/" + instance.region(), Collectors.counting()));
 
-    Assert.assertEquals(instances.size(), 2);
+    for (Ec2Scanner.Target target : Ec2Scanner.configuredTargets()) {
+      String key = target.account() + "/" + target.region().id();
+      Assert.assertEquals(perTarget.getOrDefault(key, 0L).intValue(), INSTANCE_COUNT, key);
+    }
   }
 
   @Test(description = "CXQA-EC2-02: Each EC2 instance should have the predefined configuration", groups = "ec2")
@@ -36,12 +51,21 @@ public class Ec2Test extends Ec2BaseTest {
     //Instance OS: Amazon Linux 2
     //The public instance should have public IP assigned
     //The private instance should not have public IP assigned
-    List<Ec2Helper.Ec2Instance> instances = Ec2Helper.getInstances(ec2);
 
-    Assert.assertTrue(instances.stream().allMatch(ec2Instance -> INSTANCE_TYPE.equals(ec2Instance.type())));
-    Assert.assertTrue(instances.stream().allMatch(ec2Instance -> ec2Instance.tags().contains(INSTANCE_TAGS)));
-    Assert.assertTrue(instances.stream().allMatch(ec2Instance -> INSTANCE_EBS_SIZE == ec2Instance.ebsSize()));
-    Assert.assertTrue(instances.stream().allMatch(ec2Instance -> ec2Instance.osName().contains(INSTANCE_OS)));
+    // the API filters out every instance that differs from the expected configuration; both sides are listed live,
+    // at the same moment, so a cached inventory cannot make up or hide a violation
+    Set<String> running = Ec2Query.running().instanceIds(ec2);
+    Set<String> compliant = Ec2Query.running()
+        .type(INSTANCE_TYPE)
+        .tag(INSTANCE_TAG[0], INSTANCE_TAG[1])
+        .rootVolumeSize(INSTANCE_EBS_SIZE)
+        .osDescription("*" + INSTANCE_OS + "*")
+        .instanceIds(ec2);
+    Set<String> violating = new LinkedHashSet<>(running);
+    violating.removeAll(compliant);
+    Assert.assertTrue(violating.isEmpty(), "Instances without the predefined configuration: " + violating);
+
+    List<Ec2Helper.Ec2Instance> instances = Ec2Inventory.view(ec2).project();
     Assert.assertTrue(instances.stream().filter(ec2Instance -> !ec2Instance.isPrivate())
         .allMatch(ec2Instance -> ec2Instance.publicIp() != null));
     Assert.assertTrue(instances.stream().filter(Ec2Helper.Ec2Instance::isPrivate)
@@ -53,66 +77,72 @@ public class Ec2Test extends Ec2BaseTest {
     //The public instance should be accessible from the internet by SSH (port 22) and HTTP (port 80) only
     //The private instance should be accessible only from the public instance by SSH and HTTP protocols only
     //Both private and public instances should have access to the internet
-    List<Ec2Helper.Ec2Instance> instances = Ec2Helper.getInstances(ec2);
-    assert instances.size() == 2;
+    List<Ec2Helper.Ec2Instance> instances = Ec2Inventory.view(ec2).project(Ec2InventoryView.Field.RULES);
+    assert instances.size() == INSTANCE_COUNT;
+    Reachability network = Reachability.of(instances);
 
     Ec2Helper.Ec2Instance publicInstance = instances.stream().filter(inst -> !inst.isPrivate()).toList().getFirst();
-    assert publicInstance != null;
-
-    // No ports other than 80 and 22 for public
-    Assert.assertTrue(
-        publicInstance.inRules().stream().map(SecurityGroupRule::toPort).noneMatch(port -> port != 80 && port != 22));
-    // ANY IPs are allowed for public
-    Assert.assertTrue(publicInstance.inRules().stream().map(SecurityGroupRule::cidrIpv4).allMatch(ANY_IP::equals));
-
-    Ec2Helper.Ec2Instance privateInstance =
-        instances.stream().filter(Ec2Helper.Ec2Instance::isPrivate).toList().getFirst();
-    assert privateInstance != null;
-
-    String publicSecGroupId = publicInstance.securityGroupIds().getFirst();
-    // No ports other than 80 and 22 for private
-    Assert.assertTrue(
-        privateInstance.inRules().stream().map(SecurityGroupRule::toPort).noneMatch(port -> port != 80 && port != 22));
-    // No access from any IP for private
-    Assert.assertTrue(privateInstance.inRules().stream().map(SecurityGroupRule::cidrIpv4).noneMatch(ANY_IP::equals));
-    // There is reference to public instance security group from private
-    Assert.assertTrue(privateInstance.inRules().stream().map(
-        rule -> rule.referencedGroupInfo().groupId()).allMatch(publicSecGroupId::equals));
+    String publicId = publicInstance.instanceId();
+    String privateId = instances.stream().filter(Ec2Helper.Ec2Instance::isPrivate).toList().getFirst().instanceId();
+
+    // SSH and HTTP, the ports the private instance is reached on from the public one
+    Ec2Compliance.Reachers reachers = PRIVATE_NETWORK.reachableOnlyFrom();
+
+    // No ports other than 80 and 22 for public, from any IP
+    Assert.assertEquals(network.ingressPorts(publicId), Ec2Compliance.ports(PUBLIC_NETWORK.ingressPorts()));
+    Assert.assertEquals(network.internetExposure(publicId), Ec2Compliance.ports(PUBLIC_NETWORK.internetExposure()));
+    for (String client : INTERNET_CLIENTS) {
+      for (int port : reachers.ports()) {
+        Assert.assertTrue(network.reachableFrom(client, publicId, reachers.protocol(), port));
+      }
+    }
+
+    // No ports other than 80 and 22 for private, no access from any IP, only from the public instance
+    Assert.assertEquals(network.ingressPorts(privateId), Ec2Compliance.ports(PRIVATE_NETWORK.ingressPorts()));
+    Assert.assertEquals(network.internetExposed(), List.of(publicId));
+    for (String client : INTERNET_CLIENTS) {
+      for (int port : reachers.ports()) {
+        Assert.assertFalse(network.reachableFrom(client, privateId, reachers.protocol(), port));
+      }
+    }
+    // every source is the public instance's group, no address range, not even a private one
+    Assert.assertEquals(network.cidrSources(privateId), Set.of());
+    Assert.assertEquals(network.groupSources(privateId), Set.of(publicInstance.securityGroupIds().getFirst()));
+    for (int port : reachers.ports()) {
+      Assert.assertEquals(network.reachers(privateId, reachers.protocol(), port), Set.of(publicId));
+    }
 
     //ANY IP for outbound rules for both private and public
-    Assert.assertTrue(
-        instances.stream().flatMap(inst -> inst.outRules().stream()).allMatch(rule -> ANY_IP.equals(rule.cidrIpv4())));
+    for (String instanceId : List.of(publicId, privateId)) {
+      Assert.assertEquals(network.internetAccess(instanceId), Ec2Compliance.ports(INTERNET_ACCESS.internetAccess()));
+    }
   }
 
   @Test(description = "CXQA-EC2-04: For Both for public and private instances application API endpoint should " +
       "respond with the correct instance information from EC2 metadata", groups = "ec2")
-  public void verifyAPIExposed() throws Exception {
-    List<Ec2Helper.Ec2Instance> instances = Ec2Helper.getInstances(ec2);
+  public void verifyAPIExposed() {
+    // the private instance is not reachable from outside the VPC, every public one is probed at once
+    List<Ec2Helper.Ec2Instance> publicInstances =
+        Ec2Inventory.view(ec2).project(Ec2InventoryView.Field.REGION).stream()
+            .filter(instance -> !instance.isPrivate()).toList();
+    Assert.assertFalse(publicInstances.isEmpty(), "No public instance");
 
-    Ec2Helper.Ec2Instance publicInstance = instances.stream().filter(inst -> !inst.isPrivate()).toList().getFirst();
-    assert publicInstance != null;
+    MetadataProber.Report report = MetadataProber.fromConfig().probe(publicInstances);
 
-    HttpClient client = HttpClient.newHttpClient();
-    HttpRequest request =
-        HttpRequest.newBuilder().uri(URI.create("http://" + publicInstance.publicIp() + ":80")).build();
-    HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+    Assert.assertTrue(report.ok(), String.join("\n", report.describe()));
+  }
 
-    ObjectMapper mapper = new ObjectMapper();
-    mapper.disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
-    mapper.setVisibility(VisibilityChecker.Std.defaultInstance().withFieldVisibility(JsonAutoDetect.Visibility.ANY));
-    ApiResponse apiRes = mapper.readValue(response.body(), ApiResponse.class);
+  private static Ec2Compliance.RuleSpec rule(Predicate<Ec2Compliance.RuleSpec> which) {
+    return SPEC.stream().filter(which).findFirst()
+        .orElseThrow(() -> new IllegalStateException("No such rule in " + Ec2Compliance.SPEC));
+  }
 
-    Assert.assertEquals(apiRes.availability_zone, publicInstance.availabilityZone());
-    Assert.assertEquals(apiRes.region, publicInstance.region());
-    Assert.assertEquals(apiRes.private_ipv4, publicInstance.privateIp());
+  private static Ec2Compliance.RuleSpec field(String name) {
+    return rule(rule -> name.equals(rule.field()));
   }
 
-  static class ApiResponse {
-    @JsonProperty
-    public String availability_zone;
-    @JsonProperty
-    String region;
-    @JsonProperty
-    String private_ipv4;
+  private static Ec2Compliance.RuleSpec network(boolean isPrivate) {
+    return rule(rule -> rule.ingressPorts() != null && rule.where() != null
+        && Boolean.valueOf(isPrivate).equals(rule.where().get("isPrivate")));
   }
-}
\ No newline at end of file
+}
@@ -0,0 +1,72 @@
+package aws.ec2;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+// Binary trie over IPv4 prefixes: finds the prefixes containing an address, or the entries inside a prefix,
+// in at most 32 steps instead of scanning every rule
+class Ipv4Trie<V> {
+  private final Node<V> root = new Node<>();
+
+  private static class Node<V> {
+    private Node<V> zero;
+    private Node<V> one;
+    private List<V> values;
+  }
+
+  void put(Cidr cidr, V value) {
+    Node<V> node = root;
+    for (int bit = 0; bit < cidr.length(); bit++) {
+      if (isSet(cidr.address(), bit)) {
+        node = node.one == null ? (node.one = new Node<>()) : node.one;
+      } else {
+        node = node.zero == null ? (node.zero = new Node<>()) : node.zero;
+      }
+    }
+    if (node.values == null) {
+      node.values = new ArrayList<>(1);
+    }
+    node.values.add(value);
+  }
+
+  // values of all prefixes that contain the address
+  boolean anyMatch(int address, Predicate<V> predicate) {
+    Node<V> node = root;
+    for (int bit = 0; node != null; bit++) {
+      if (node.values != null && node.values.stream().anyMatch(predicate)) {
+        return true;
+      }
+      if (bit == 32) {
+        break;
+      }
+      node = isSet(address, bit) ? node.one : node.zero;
+    }
+    return false;
+  }
+
+  // values stored at the prefix or at longer prefixes inside it
+  void forEachWithin(Cidr cidr, Consumer<V> action) {
+    Node<V> node = root;
+    for (int bit = 0; bit < cidr.length() && node != null; bit++) {
+      node = isSet(cidr.address(), bit) ? node.one : node.zero;
+    }
+    forEach(node, action);
+  }
+
+  private static <V> void forEach(Node<V> node, Consumer<V> action) {
+    if (node == null) {
+      return;
+    }
+    if (node.values != null) {
+      node.values.forEach(action);
+    }
+    forEach(node.zero, action);
+    forEach(node.one, action);
+  }
+
+  private static boolean isSet(int address, int bit) {
+    return (address & (1 << (31 - bit))) != 0;
+  }
+}
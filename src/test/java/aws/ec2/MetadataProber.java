@@ -0,0 +1,260 @@
+package aws.ec2;
+
+import aws.common.BoundedExecutor;
+import aws.common.Cassette;
+import aws.common.Json;
+import aws.common.TestConfig;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// Checks the application endpoint of every instance at once: one shared HTTP client, a virtual thread per
+// endpoint, connect and read timeouts, and retries with jittered exponential backoff. Each endpoint is sampled
+// a few times for its latency percentiles; an endpoint that stays down fails within attempts x timeout.
+class MetadataProber {
+  private static final Logger LOG = LoggerFactory.getLogger(MetadataProber.class);
+  // HTTP/2 where the endpoint speaks it, HTTP/1.1 otherwise; connections are kept between probes.
+  // With -Daws.cassette the probes are recorded and replayed along with the SDK calls
+  private static final HttpClient SHARED = Cassette.wrap(HttpClient.newBuilder()
+      .version(HttpClient.Version.HTTP_2)
+      .connectTimeout(TestConfig.getDuration("probe.connectTimeout", Duration.ofSeconds(2)))
+      .build());
+
+  private final HttpClient client;
+  private final Function<Ec2Helper.Ec2Instance, URI> endpoint;
+  private final Settings settings;
+
+  // timeout bounds one request from sending to the last body byte
+  record Settings(Duration timeout, int attempts, Duration backoff, int samples, int maxInFlight, Duration slow) {
+    static Settings fromConfig() {
+      return new Settings(TestConfig.getDuration("probe.timeout", Duration.ofSeconds(3)),
+          TestConfig.getInt("probe.attempts", 3),
+          TestConfig.getDuration("probe.backoff", Duration.ofMillis(200)),
+          TestConfig.getInt("probe.samples", 3),
+          TestConfig.getInt("probe.maxInFlight", 256),
+          TestConfig.getDuration("probe.slow", Duration.ofSeconds(1)));
+    }
+  }
+
+  // What the application answers with, taken from its instance metadata
+  record Metadata(@JsonProperty("availability_zone") String availabilityZone,
+                  @JsonProperty("region") String region,
+                  @JsonProperty("private_ipv4") String privateIp) {
+  }
+
+  // latencies of the successful samples, sorted
+  record Result(Ec2Helper.Ec2Instance instance, URI endpoint, Metadata metadata, List<String> mismatches,
+                List<Duration> latencies, int attempts, String error) {
+    boolean ok() {
+      return error == null && mismatches.isEmpty();
+    }
+
+    Duration percentile(double percentile) {
+      return MetadataProber.percentile(latencies, percentile);
+    }
+  }
+
+  record Report(List<Result> results, Duration elapsed, Duration slowThreshold) {
+    List<Result> failed() {
+      return results.stream().filter(result -> result.error() != null).toList();
+    }
+
+    List<Result> mismatched() {
+      return results.stream().filter(result -> !result.mismatches().isEmpty()).toList();
+    }
+
+    // answered, but the slower samples took longer than the threshold
+    List<Result> slow() {
+      return results.stream().filter(result -> result.error() == null
+          && result.percentile(90).compareTo(slowThreshold) > 0).toList();
+    }
+
+    boolean ok() {
+      return results.stream().allMatch(Result::ok);
+    }
+
+    Duration percentile(double percentile) {
+      return MetadataProber.percentile(results.stream().flatMap(result -> result.latencies().stream())
+          .sorted().toList(), percentile);
+    }
+
+    List<String> describe() {
+      List<String> lines = new ArrayList<>();
+      lines.add("Probed %d endpoints in %d ms: %d failed, %d mismatched, %d slow; p50 %d ms, p99 %d ms".formatted(
+          results.size(), elapsed.toMillis(), failed().size(), mismatched().size(), slow().size(),
+          percentile(50).toMillis(), percentile(99).toMillis()));
+      for (Result result : failed()) {
+        lines.add("  %s %s failed after %d attempts: %s".formatted(result.instance().instanceId(), result.endpoint(),
+            result.attempts(), result.error()));
+      }
+      for (Result result : mismatched()) {
+        lines.add("  %s %s: %s".formatted(result.instance().instanceId(), result.endpoint(),
+            String.join(", ", result.mismatches())));
+      }
+      for (Result result : slow()) {
+        lines.add("  %s %s slow: p50 %d ms, p90 %d ms, max %d ms".formatted(result.instance().instanceId(),
+            result.endpoint(), result.percentile(50).toMillis(), result.percentile(90).toMillis(),
+            result.percentile(100).toMillis()));
+      }
+      return lines;
+    }
+  }
+
+  MetadataProber(HttpClient client, Function<Ec2Helper.Ec2Instance, URI> endpoint, Settings settings) {
+    this.client = client;
+    this.endpoint = endpoint;
+    this.settings = settings;
+  }
+
+  // The application listens on the public address, -Dprobe.port=80 by default
+  static MetadataProber fromConfig() {
+    int port = TestConfig.getInt("probe.port", 80);
+    return new MetadataProber(SHARED, instance -> URI.create("http://" + instance.publicIp() + ":" + port + "/"),
+        Settings.fromConfig());
+  }
+
+  Report probe(List<Ec2Helper.Ec2Instance> instances) {
+    long start = System.nanoTime();
+    List<Result> results;
+    // a limiter per probe, closed with it: the endpoints get their own budget, not the API's
+    try (BoundedExecutor executor = new BoundedExecutor(settings.maxInFlight())) {
+      List<CompletableFuture<Result>> futures =
+          instances.stream().map(instance -> executor.submit(() -> probe(instance))).toList();
+      results = futures.stream().map(CompletableFuture::join).toList();
+    }
+    Report report = new Report(results, Duration.ofNanos(System.nanoTime() - start), settings.slow());
+    // slow endpoints do not fail a check, the log is where they show up
+    report.describe().forEach(LOG::info);
+    return report;
+  }
+
+  private Result probe(Ec2Helper.Ec2Instance instance) {
+    URI uri = endpoint.apply(instance);
+    List<Duration> latencies = new ArrayList<>();
+    Metadata metadata = null;
+    int attempts = 0;
+    String error = null;
+
+    for (int sample = 0; sample < settings.samples() && error == null; sample++) {
+      for (int attempt = 1; ; attempt++) {
+        attempts++;
+        long start = System.nanoTime();
+        try {
+          metadata = fetch(uri);
+          latencies.add(Duration.ofNanos(System.nanoTime() - start));
+          break;
+        } catch (RetryableException | IOException e) {
+          if (attempt >= settings.attempts()) {
+            error = e.getClass().getSimpleName() + ": " + e.getMessage();
+            break;
+          }
+        } catch (RuntimeException e) {
+          error = e.getClass().getSimpleName() + ": " + e.getMessage();
+          break;
+        }
+        if (!backOff(attempt)) {
+          error = "interrupted";
+          break;
+        }
+      }
+    }
+
+    latencies.sort(Comparator.naturalOrder());
+    List<String> mismatches = metadata == null ? List.of() : compare(instance, metadata);
+    return new Result(instance, uri, metadata, mismatches, List.copyOf(latencies), attempts, error);
+  }
+
+  private Metadata fetch(URI uri) throws IOException, RetryableException {
+    HttpRequest request = HttpRequest.newBuilder(uri).timeout(settings.timeout()).GET().build();
+    CompletableFuture<HttpResponse<byte[]>> future = client.sendAsync(request, HttpResponse.BodyHandlers.ofByteArray());
+
+    // the request timeout only covers the headers, a body that trickles in is cut off here
+    HttpResponse<byte[]> response;
+    try {
+      response = future.get(settings.timeout().toNanos(), TimeUnit.NANOSECONDS);
+    } catch (TimeoutException e) {
+      future.cancel(true);
+      throw new HttpTimeoutException("no response within " + settings.timeout().toMillis() + " ms");
+    } catch (InterruptedException e) {
+      future.cancel(true);
+      Thread.currentThread().interrupt();
+      throw new IOException("interrupted", e);
+    } catch (ExecutionException e) {
+      throw e.getCause() instanceof IOException io ? io : new IOException(e.getCause());
+    }
+
+    int status = response.statusCode();
+    if (status == 429 || status >= 500) {
+      throw new RetryableException("HTTP " + status);
+    }
+    if (status != 200) {
+      throw new IllegalStateException("HTTP " + status);
+    }
+    // a body that is not the metadata document reads the same on every retry
+    try {
+      return Json.read(new ByteArrayInputStream(response.body()), Metadata.class);
+    } catch (JsonProcessingException e) {
+      throw new IllegalStateException("unreadable metadata: " + e.getOriginalMessage(), e);
+    }
+  }
+
+  // Full jitter: a random wait up to backoff x 2^(attempt - 1), so retries of many endpoints do not line up
+  private boolean backOff(int attempt) {
+    long ceiling = settings.backoff().toNanos() << Math.min(attempt - 1, 10);
+    try {
+      TimeUnit.NANOSECONDS.sleep(ThreadLocalRandom.current().nextLong(ceiling + 1));
+      return true;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return false;
+    }
+  }
+
+  private static List<String> compare(Ec2Helper.Ec2Instance instance, Metadata metadata) {
+    List<String> mismatches = new ArrayList<>();
+    compare(mismatches, "availability_zone", instance.availabilityZone(), metadata.availabilityZone());
+    compare(mismatches, "region", instance.region(), metadata.region());
+    compare(mismatches, "private_ipv4", instance.privateIp(), metadata.privateIp());
+    return mismatches;
+  }
+
+  private static void compare(List<String> mismatches, String field, String expected, String actual) {
+    if (!Objects.equals(expected, actual)) {
+      mismatches.add(field + " expected " + expected + " but was " + actual);
+    }
+  }
+
+  // Nearest rank over sorted latencies
+  private static Duration percentile(List<Duration> sorted, double percentile) {
+    if (sorted.isEmpty()) {
+      return Duration.ZERO;
+    }
+    int rank = (int) Math.ceil(percentile / 100 * sorted.size());
+    return sorted.get(Math.max(rank, 1) - 1);
+  }
+
+  private static class RetryableException extends Exception {
+    private RetryableException(String message) {
+      super(message);
+    }
+  }
+}
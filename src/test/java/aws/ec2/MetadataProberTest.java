@@ -0,0 +1,174 @@
+package aws.ec2;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+public class MetadataProberTest {
+  private static final int HEALTHY = 200;
+  private static final Duration TIMEOUT = Duration.ofMillis(300);
+  private static final MetadataProber.Settings SETTINGS =
+      new MetadataProber.Settings(TIMEOUT, 3, Duration.ofMillis(20), 3, 64, Duration.ofMillis(100));
+
+  // what the stub answers as private_ipv4, per instance
+  private static final Map<String, String> PRIVATE_IPS = new ConcurrentHashMap<>();
+
+  private final Map<String, AtomicInteger> requests = new ConcurrentHashMap<>();
+  private HttpServer server;
+  private HttpClient client;
+
+  @BeforeClass
+  public void setUp() throws IOException {
+    server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+    server.createContext("/", this::handle);
+    server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+    server.start();
+    client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_2).connectTimeout(TIMEOUT).build();
+  }
+
+  @AfterClass
+  public void cleanUp() {
+    server.stop(0);
+  }
+
+  @Test(description = "A large fleet is probed concurrently and every healthy endpoint matches its instance",
+      groups = "offline")
+  public void verifyFleetIsProbedConcurrently() {
+    List<Ec2Helper.Ec2Instance> fleet = new ArrayList<>();
+    for (int i = 0; i < HEALTHY; i++) {
+      fleet.add(instance("i-ok-" + i, "10.0." + (i / 250) + "." + (i % 250 + 1)));
+    }
+
+    MetadataProber.Report report = prober().probe(fleet);
+
+    Assert.assertTrue(report.ok(), String.join("\n", report.describe()));
+    Assert.assertEquals(report.results().size(), HEALTHY);
+    Assert.assertTrue(report.results().stream().allMatch(result -> result.latencies().size() == 3));
+    // 600 sequential requests would take far longer than a concurrent sweep
+    Assert.assertTrue(report.elapsed().compareTo(Duration.ofSeconds(10)) < 0, report.elapsed().toString());
+  }
+
+  @Test(description = "Wrong answers, dead, flaky and garbled endpoints end up in the report without hanging the probe",
+      groups = "offline")
+  public void verifyProblemsAreReported() {
+    List<Ec2Helper.Ec2Instance> fleet = List.of(
+        instance("i-good", "10.0.0.1"),
+        instance("i-wrong-zone", "10.0.0.2"),
+        instance("i-hanging", "10.0.0.3"),
+        instance("i-flaky", "10.0.0.4"),
+        instance("i-slow", "10.0.0.5"),
+        instance("i-garbled", "10.0.0.6"));
+
+    long start = System.nanoTime();
+    MetadataProber.Report report = prober().probe(fleet);
+    Duration elapsed = Duration.ofNanos(System.nanoTime() - start);
+
+    Map<String, MetadataProber.Result> results = report.results().stream()
+        .collect(Collectors.toMap(result -> result.instance().instanceId(), Function.identity()));
+    Assert.assertFalse(report.ok());
+    Assert.assertTrue(results.get("i-good").ok());
+
+    Assert.assertEquals(report.mismatched().stream().map(result -> result.instance().instanceId()).toList(),
+        List.of("i-wrong-zone"));
+    Assert.assertTrue(results.get("i-wrong-zone").mismatches().getFirst().startsWith("availability_zone"),
+        results.get("i-wrong-zone").mismatches().toString());
+
+    MetadataProber.Result hanging = results.get("i-hanging");
+    MetadataProber.Result garbled = results.get("i-garbled");
+    Assert.assertEquals(report.failed(), List.of(hanging, garbled));
+    Assert.assertEquals(hanging.attempts(), 3);
+    Assert.assertTrue(hanging.error().startsWith("HttpTimeoutException"), hanging.error());
+    // a body that does not parse is not retried
+    Assert.assertEquals(garbled.attempts(), 1);
+    Assert.assertTrue(garbled.error().startsWith("IllegalStateException: unreadable metadata"), garbled.error());
+
+    // the 503 of the first request is retried
+    Assert.assertTrue(results.get("i-flaky").ok());
+    Assert.assertEquals(results.get("i-flaky").attempts(), 4);
+
+    Assert.assertEquals(report.slow().stream().map(result -> result.instance().instanceId()).toList(),
+        List.of("i-slow"));
+    Assert.assertTrue(String.join("\n", report.describe()).contains("i-slow"));
+
+    // bounded by attempts x timeout of the hanging endpoint, not by its 5 s sleep
+    Assert.assertTrue(elapsed.compareTo(Duration.ofSeconds(3)) < 0, elapsed.toString());
+  }
+
+  private MetadataProber prober() {
+    int port = server.getAddress().getPort();
+    return new MetadataProber(client,
+        instance -> URI.create("http://127.0.0.1:" + port + "/" + instance.instanceId()), SETTINGS);
+  }
+
+  private static Ec2Helper.Ec2Instance instance(String instanceId, String privateIp) {
+    PRIVATE_IPS.put(instanceId, privateIp);
+    return Ec2Fixtures.instance(instanceId, privateIp, "127.0.0.1", List.of("sg-1"), List.of());
+  }
+
+  // Answers like the application would for the instance named by the path, with a few misbehaving ones
+  private void handle(HttpExchange exchange) throws IOException {
+    String instanceId = exchange.getRequestURI().getPath().substring(1);
+    int request = requests.computeIfAbsent(instanceId, id -> new AtomicInteger()).incrementAndGet();
+    String zone = "eu-central-1a";
+
+    try (exchange) {
+      switch (instanceId) {
+        case "i-wrong-zone" -> zone = "eu-central-1b";
+        case "i-hanging" -> sleep(Duration.ofSeconds(5));
+        case "i-flaky" -> {
+          if (request == 1) {
+            exchange.sendResponseHeaders(503, -1);
+            return;
+          }
+        }
+        case "i-slow" -> sleep(TIMEOUT.dividedBy(2));
+        case "i-garbled" -> {
+          // a web server default page instead of the application
+          byte[] page = "<html>It works!</html>".getBytes(StandardCharsets.UTF_8);
+          exchange.sendResponseHeaders(200, page.length);
+          try (OutputStream out = exchange.getResponseBody()) {
+            out.write(page);
+          }
+          return;
+        }
+        default -> {
+        }
+      }
+
+      byte[] body = ("{\"availability_zone\":\"" + zone + "\",\"region\":\"eu-central-1\",\"private_ipv4\":\""
+          + PRIVATE_IPS.get(instanceId) + "\"}").getBytes(StandardCharsets.UTF_8);
+      exchange.getResponseHeaders().add("Content-Type", "application/json");
+      exchange.sendResponseHeaders(200, body.length);
+      try (OutputStream out = exchange.getResponseBody()) {
+        out.write(body);
+      }
+    }
+  }
+
+  private static void sleep(Duration duration) {
+    try {
+      Thread.sleep(duration);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
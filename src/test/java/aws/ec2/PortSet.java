@@ -0,0 +1,121 @@
+package aws.ec2;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Sorted, merged port ranges; contains() is a binary search
+final class PortSet {
+  static final PortSet NONE = new PortSet(new int[0]);
+  static final PortSet ALL = range(0, 65535);
+
+  // from0, to0, from1, to1, ... with from(i+1) > to(i) + 1
+  private final int[] bounds;
+
+  private PortSet(int[] bounds) {
+    this.bounds = bounds;
+  }
+
+  static PortSet range(int from, int to) {
+    return new PortSet(new int[] {from, to});
+  }
+
+  static PortSet of(int... ports) {
+    PortSet result = NONE;
+    for (int port : ports) {
+      result = result.union(range(port, port));
+    }
+    return result;
+  }
+
+  // EC2 uses -1 (or no value) for "all ports", e.g. with protocol -1 or for all ICMP types
+  static PortSet ofRule(Integer fromPort, Integer toPort) {
+    if (fromPort == null || fromPort < 0) {
+      return ALL;
+    }
+    return range(fromPort, toPort == null || toPort < 0 ? fromPort : toPort);
+  }
+
+  // The toString() form, e.g. "22,70-85"; an empty string is no port
+  static PortSet parse(String value) {
+    PortSet result = NONE;
+    for (String part : value.split(",")) {
+      if (part.isBlank()) {
+        continue;
+      }
+      int dash = part.indexOf('-');
+      result = result.union(dash < 0
+          ? range(Integer.parseInt(part.trim()), Integer.parseInt(part.trim()))
+          : range(Integer.parseInt(part.substring(0, dash).trim()), Integer.parseInt(part.substring(dash + 1).trim())));
+    }
+    return result;
+  }
+
+  boolean contains(int port) {
+    int low = 0;
+    int high = bounds.length / 2 - 1;
+    while (low <= high) {
+      int middle = (low + high) >>> 1;
+      if (port < bounds[2 * middle]) {
+        high = middle - 1;
+      } else if (port > bounds[2 * middle + 1]) {
+        low = middle + 1;
+      } else {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  boolean isEmpty() {
+    return bounds.length == 0;
+  }
+
+  PortSet union(PortSet other) {
+    if (other.isEmpty()) {
+      return this;
+    }
+    if (isEmpty()) {
+      return other;
+    }
+
+    List<int[]> ranges = new ArrayList<>();
+    for (PortSet set : List.of(this, other)) {
+      for (int i = 0; i < set.bounds.length; i += 2) {
+        ranges.add(new int[] {set.bounds[i], set.bounds[i + 1]});
+      }
+    }
+    ranges.sort((left, right) -> Integer.compare(left[0], right[0]));
+
+    int[] merged = new int[ranges.size() * 2];
+    int size = 0;
+    for (int[] range : ranges) {
+      if (size > 0 && range[0] <= merged[size - 1] + 1) {
+        merged[size - 1] = Math.max(merged[size - 1], range[1]);
+      } else {
+        merged[size++] = range[0];
+        merged[size++] = range[1];
+      }
+    }
+    return new PortSet(Arrays.copyOf(merged, size));
+  }
+
+  @Override
+  public boolean equals(Object other) {
+    return other instanceof PortSet set && Arrays.equals(bounds, set.bounds);
+  }
+
+  @Override
+  public int hashCode() {
+    return Arrays.hashCode(bounds);
+  }
+
+  @Override
+  public String toString() {
+    List<String> ranges = new ArrayList<>();
+    for (int i = 0; i < bounds.length; i += 2) {
+      ranges.add(bounds[i] == bounds[i + 1] ? String.valueOf(bounds[i]) : bounds[i] + "-" + bounds[i + 1]);
+    }
+    return String.join(",", ranges);
+  }
+}
@@ -0,0 +1,246 @@
+package aws.ec2;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import software.amazon.awssdk.services.ec2.model.SecurityGroupRule;
+
+// Network reachability over the security group rules of an inventory. Per group and direction, CIDR sources are
+// indexed in an IPv4 trie and group references form a graph; allowed ports are merged per protocol.
+// Instances talk over their private addresses; IPv6 and prefix-list rules are not modelled.
+class Reachability {
+  static final String ALL_PROTOCOLS = "all";
+
+  private final Map<String, Node> nodes = new LinkedHashMap<>();
+  private final Map<String, List<Node>> members = new HashMap<>();
+  private final Ipv4Trie<Node> addresses = new Ipv4Trie<>();
+  private final Map<String, Direction> ingress = new HashMap<>();
+  private final Map<String, Direction> egress = new HashMap<>();
+
+  // identity equality: hashing whole instances would dominate the queries
+  private static final class Node {
+    private final Ec2Helper.Ec2Instance instance;
+    private final Integer privateIp;
+
+    private Node(Ec2Helper.Ec2Instance instance, Integer privateIp) {
+      this.instance = instance;
+      this.privateIp = privateIp;
+    }
+  }
+
+  // Rules of one group in one direction
+  private static class Direction {
+    private final Ipv4Trie<Map<String, PortSet>> cidrs = new Ipv4Trie<>();
+    private final Map<Cidr, Map<String, PortSet>> cidrPorts = new LinkedHashMap<>();
+    private final Map<String, Map<String, PortSet>> groups = new HashMap<>();
+    private final Map<String, PortSet> internet = new HashMap<>();
+    private final Map<String, PortSet> any = new HashMap<>();
+
+    private void add(SecurityGroupRule rule) {
+      String protocol = protocol(rule.ipProtocol());
+      PortSet ports = PortSet.ofRule(rule.fromPort(), rule.toPort());
+
+      if (rule.cidrIpv4() != null) {
+        Cidr cidr = Cidr.parse(rule.cidrIpv4());
+        Map<String, PortSet> grants = cidrPorts.get(cidr);
+        if (grants == null) {
+          grants = new HashMap<>();
+          cidrPorts.put(cidr, grants);
+          cidrs.put(cidr, grants);
+        }
+        grants.merge(protocol, ports, PortSet::union);
+        if (cidr.isPublic()) {
+          internet.merge(protocol, ports, PortSet::union);
+        }
+      } else if (rule.referencedGroupInfo() != null && rule.referencedGroupInfo().groupId() != null) {
+        groups.computeIfAbsent(rule.referencedGroupInfo().groupId(), k -> new HashMap<>())
+            .merge(protocol, ports, PortSet::union);
+      } else {
+        return;
+      }
+      any.merge(protocol, ports, PortSet::union);
+    }
+  }
+
+  static Reachability of(List<Ec2Helper.Ec2Instance> instances) {
+    Reachability result = new Reachability();
+    Set<SecurityGroupRule> indexed = new HashSet<>();
+    for (Ec2Helper.Ec2Instance instance : instances) {
+      Integer privateIp = instance.privateIp() == null ? null : Cidr.address(instance.privateIp());
+      Node node = new Node(instance, privateIp);
+      result.nodes.put(instance.instanceId(), node);
+      if (privateIp != null) {
+        result.addresses.put(new Cidr(privateIp, 32), node);
+      }
+      instance.securityGroupIds().forEach(group -> result.members.computeIfAbsent(group, k -> new ArrayList<>())
+          .add(node));
+
+      // instances of a group share its rules, each rule is indexed once
+      for (SecurityGroupRule rule : instance.inRules()) {
+        if (indexed.add(rule)) {
+          result.ingress.computeIfAbsent(rule.groupId(), k -> new Direction()).add(rule);
+        }
+      }
+      for (SecurityGroupRule rule : instance.outRules()) {
+        if (indexed.add(rule)) {
+          result.egress.computeIfAbsent(rule.groupId(), k -> new Direction()).add(rule);
+        }
+      }
+    }
+    return result;
+  }
+
+  // Both the source's egress and the destination's ingress have to allow the traffic
+  boolean canReach(String fromInstanceId, String toInstanceId, String protocol, int port) {
+    Node from = node(fromInstanceId);
+    Node to = node(toInstanceId);
+    String normalized = protocol(protocol);
+    return allows(ingress, to, from, normalized, port) && allows(egress, from, to, normalized, port);
+  }
+
+  // Instances that can open a connection to the instance on the port
+  Set<String> reachers(String toInstanceId, String protocol, int port) {
+    Node to = node(toInstanceId);
+    Set<Node> candidates = new LinkedHashSet<>();
+    for (String group : to.instance.securityGroupIds()) {
+      Direction direction = ingress.get(group);
+      if (direction == null) {
+        continue;
+      }
+      direction.groups.keySet().forEach(source -> candidates.addAll(members.getOrDefault(source, List.of())));
+      direction.cidrPorts.keySet().forEach(cidr -> addresses.forEachWithin(cidr, candidates::add));
+    }
+
+    Set<String> result = new LinkedHashSet<>();
+    for (Node candidate : candidates) {
+      String id = candidate.instance.instanceId();
+      if (candidate != to && canReach(id, toInstanceId, protocol, port)) {
+        result.add(id);
+      }
+    }
+    return result;
+  }
+
+  // Ports open to some internet address, per protocol; instances without a public address are not exposed
+  Map<String, PortSet> internetExposure(String instanceId) {
+    Node node = node(instanceId);
+    if (node.instance.publicIp() == null) {
+      return Map.of();
+    }
+    return union(ingress, node, direction -> direction.internet);
+  }
+
+  List<String> internetExposed() {
+    return nodes.keySet().stream().filter(id -> !internetExposure(id).isEmpty()).toList();
+  }
+
+  // Whether the ingress rules let the given address in, e.g. an arbitrary internet client
+  boolean reachableFrom(String address, String toInstanceId, String protocol, int port) {
+    Node to = node(toInstanceId);
+    String normalized = protocol(protocol);
+    int source = Cidr.address(address);
+    return to.instance.securityGroupIds().stream().map(ingress::get).anyMatch(direction -> direction != null
+        && direction.cidrs.anyMatch(source, grants -> allows(grants, normalized, port)));
+  }
+
+  // Ports reachable from any source at all, per protocol
+  Map<String, PortSet> ingressPorts(String instanceId) {
+    return union(ingress, node(instanceId), direction -> direction.any);
+  }
+
+  // Address ranges the ingress rules let in, private ones included, whether or not an instance lives there
+  Set<String> cidrSources(String instanceId) {
+    Set<String> result = new LinkedHashSet<>();
+    forEachIngress(node(instanceId), direction -> direction.cidrPorts.keySet()
+        .forEach(cidr -> result.add(cidr.toString())));
+    return result;
+  }
+
+  // Security groups the ingress rules let in
+  Set<String> groupSources(String instanceId) {
+    Set<String> result = new LinkedHashSet<>();
+    forEachIngress(node(instanceId), direction -> result.addAll(direction.groups.keySet()));
+    return result;
+  }
+
+  // Ports the instance may connect to on internet addresses, per protocol
+  Map<String, PortSet> internetAccess(String instanceId) {
+    return union(egress, node(instanceId), direction -> direction.internet);
+  }
+
+  private boolean allows(Map<String, Direction> rules, Node owner, Node peer, String protocol, int port) {
+    for (String group : owner.instance.securityGroupIds()) {
+      Direction direction = rules.get(group);
+      if (direction == null) {
+        continue;
+      }
+      if (peer.privateIp != null
+          && direction.cidrs.anyMatch(peer.privateIp, grants -> allows(grants, protocol, port))) {
+        return true;
+      }
+      for (String peerGroup : peer.instance.securityGroupIds()) {
+        Map<String, PortSet> grants = direction.groups.get(peerGroup);
+        if (grants != null && allows(grants, protocol, port)) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  private static boolean allows(Map<String, PortSet> grants, String protocol, int port) {
+    if (grants.containsKey(ALL_PROTOCOLS)) {
+      return true;
+    }
+    PortSet ports = grants.get(protocol);
+    return ports != null && ports.contains(port);
+  }
+
+  private static Map<String, PortSet> union(Map<String, Direction> rules, Node node,
+                                            Function<Direction, Map<String, PortSet>> grants) {
+    Map<String, PortSet> result = new HashMap<>();
+    for (String group : node.instance.securityGroupIds()) {
+      Direction direction = rules.get(group);
+      if (direction != null) {
+        grants.apply(direction).forEach((protocol, ports) -> result.merge(protocol, ports, PortSet::union));
+      }
+    }
+    return result;
+  }
+
+  private void forEachIngress(Node node, Consumer<Direction> action) {
+    for (String group : node.instance.securityGroupIds()) {
+      Direction direction = ingress.get(group);
+      if (direction != null) {
+        action.accept(direction);
+      }
+    }
+  }
+
+  private Node node(String instanceId) {
+    Node node = nodes.get(instanceId);
+    if (node == null) {
+      throw new IllegalArgumentException("Unknown instance " + instanceId);
+    }
+    return node;
+  }
+
+  static String protocol(String protocol) {
+    return switch (protocol.toLowerCase(Locale.ROOT)) {
+      case "-1", "all" -> ALL_PROTOCOLS;
+      case "6" -> "tcp";
+      case "17" -> "udp";
+      case "1" -> "icmp";
+      case "58" -> "icmpv6";
+      default -> protocol.toLowerCase(Locale.ROOT);
+    };
+  }
+}
@@ -0,0 +1,107 @@
+package aws.ec2;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+import software.amazon.awssdk.services.ec2.model.SecurityGroupRule;
+
+public class ReachabilityTest {
+  private static final List<SecurityGroupRule> RULES = List.of(
+      Ec2Fixtures.cidr("sg-web", false, "tcp", 80, 80, "0.0.0.0/0"),
+      Ec2Fixtures.cidr("sg-web", false, "tcp", 443, 443, "0.0.0.0/0"),
+      Ec2Fixtures.cidr("sg-web", false, "tcp", 22, 22, "198.51.100.0/24"),
+      Ec2Fixtures.cidr("sg-web", true, "-1", -1, -1, "0.0.0.0/0"),
+      Ec2Fixtures.group("sg-app", false, "tcp", 8000, 8100, "sg-web"),
+      Ec2Fixtures.cidr("sg-app", true, "tcp", 5432, 5432, "10.0.2.0/24"),
+      Ec2Fixtures.cidr("sg-db", false, "6", 5432, 5432, "10.0.1.0/24"),
+      Ec2Fixtures.cidr("sg-ops", false, "1", -1, -1, "10.0.0.0/8"),
+      Ec2Fixtures.cidr("sg-ops", true, "-1", -1, -1, "0.0.0.0/0"));
+
+  private final Reachability network = Reachability.of(List.of(
+      instance("web", "10.0.0.10", "3.120.0.10", "sg-web"),
+      instance("app", "10.0.1.10", null, "sg-app", "sg-ops"),
+      instance("db", "10.0.2.10", null, "sg-db"),
+      instance("stray", "10.0.3.10", null, "sg-web")));
+
+  @DataProvider(name = "Connections")
+  public Object[][] connections() {
+    return new Object[][] {
+        {"web", "app", "tcp", 8080, true},
+        {"web", "app", "tcp", 8200, false},
+        {"app", "db", "tcp", 5432, true},
+        {"web", "db", "tcp", 5432, false},
+        {"app", "web", "tcp", 80, true},
+        {"db", "app", "tcp", 8080, false},
+        {"web", "app", "icmp", 8, true},
+        {"app", "web", "udp", 53, false},
+        {"stray", "app", "TCP", 8000, true}
+    };
+  }
+
+  @Test(description = "Traffic needs the source's egress and the destination's ingress, by CIDR or group reference",
+      groups = "offline", dataProvider = "Connections")
+  public void verifyCanReach(String from, String to, String protocol, int port, boolean expected) {
+    Assert.assertEquals(network.canReach(from, to, protocol, port), expected);
+  }
+
+  @Test(description = "Only instances with a public address and a public source CIDR are internet-exposed",
+      groups = "offline")
+  public void verifyInternetExposure() {
+    Assert.assertEquals(network.internetExposed(), List.of("web"));
+    Assert.assertEquals(network.internetExposure("web"), Map.of("tcp", PortSet.of(22, 80, 443)));
+    Assert.assertTrue(network.reachableFrom("198.51.100.7", "web", "tcp", 22));
+    Assert.assertFalse(network.reachableFrom("8.8.8.8", "web", "tcp", 22));
+    Assert.assertEquals(network.internetAccess("db"), Map.of());
+    Assert.assertEquals(network.internetAccess("app"), Map.of(Reachability.ALL_PROTOCOLS, PortSet.ALL));
+  }
+
+  @Test(description = "Reachers are found through the group graph and the address trie", groups = "offline")
+  public void verifyReachers() {
+    Assert.assertEquals(network.reachers("db", "tcp", 5432), Set.of("app"));
+    Assert.assertEquals(network.reachers("app", "tcp", 8080), Set.of("web", "stray"));
+    Assert.assertEquals(network.reachers("app", "icmp", 0), Set.of("web", "stray"));
+  }
+
+  @Test(description = "Ingress sources are listed as address ranges and referenced groups apart", groups = "offline")
+  public void verifyIngressSources() {
+    Assert.assertEquals(network.cidrSources("web"), Set.of("0.0.0.0/0", "198.51.100.0/24"));
+    Assert.assertEquals(network.groupSources("web"), Set.of());
+    Assert.assertEquals(network.cidrSources("app"), Set.of("10.0.0.0/8"));
+    Assert.assertEquals(network.groupSources("app"), Set.of("sg-web"));
+  }
+
+  @Test(description = "Port sets merge overlapping and adjacent ranges", groups = "offline")
+  public void verifyPortSet() {
+    PortSet ports = PortSet.range(8000, 8100).union(PortSet.of(22, 8101, 80)).union(PortSet.range(70, 85));
+
+    Assert.assertEquals(ports.toString(), "22,70-85,8000-8101");
+    Assert.assertTrue(ports.contains(8101));
+    Assert.assertFalse(ports.contains(86));
+    Assert.assertEquals(PortSet.ofRule(-1, -1), PortSet.ALL);
+  }
+
+  @Test(description = "Queries on a fleet of thousands of instances stay fast", groups = "offline", timeOut = 5000)
+  public void verifyLargeFleet() {
+    List<Ec2Helper.Ec2Instance> instances = new ArrayList<>();
+    for (int i = 0; i < 5000; i++) {
+      instances.add(instance("i-" + i, "10.1." + (i / 250) + "." + (i % 250 + 1), i % 10 == 0 ? "3.1.1.1" : null,
+          "sg-web", "sg-app"));
+    }
+    Reachability large = Reachability.of(instances);
+
+    Assert.assertEquals(large.internetExposed().size(), 500);
+    for (int i = 0; i < 5000; i++) {
+      Assert.assertTrue(large.canReach("i-" + i, "i-" + (4999 - i), "tcp", 8050));
+    }
+    Assert.assertEquals(large.reachers("i-0", "tcp", 8050).size(), 4999);
+  }
+
+  private static Ec2Helper.Ec2Instance instance(String id, String privateIp, String publicIp, String... groups) {
+    return Ec2Fixtures.instance(id, privateIp, publicIp, List.of(groups),
+        RULES.stream().filter(rule -> List.of(groups).contains(rule.groupId())).toList());
+  }
+}
@@ -0,0 +1,61 @@
+package aws.iam;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Indexes action patterns by statement number. Literal and "prefix*" patterns (almost all of them) are found
+// with one walk over the action name; anything else falls back to a compiled Glob.
+class ActionTrie {
+  private final Node root = new Node();
+  private final List<Glob> otherPatterns = new ArrayList<>();
+  private final List<Integer> otherStatements = new ArrayList<>();
+
+  void add(String pattern, int statement) {
+    String action = pattern.toLowerCase();
+    int star = action.indexOf('*');
+
+    if (action.indexOf('?') >= 0 || (star >= 0 && star != action.length() - 1)) {
+      otherPatterns.add(Glob.compile(action, true));
+      otherStatements.add(statement);
+      return;
+    }
+
+    Node node = root;
+    String prefix = star < 0 ? action : action.substring(0, star);
+    for (int i = 0; i < prefix.length(); i++) {
+      node = node.children.computeIfAbsent(prefix.charAt(i), c -> new Node());
+    }
+    (star < 0 ? node.exact : node.prefix).set(statement);
+  }
+
+  BitSet match(String action) {
+    String name = action.toLowerCase();
+    BitSet result = new BitSet();
+
+    Node node = root;
+    for (int i = 0; node != null; i++) {
+      result.or(node.prefix);
+      if (i == name.length()) {
+        result.or(node.exact);
+        break;
+      }
+      node = node.children.get(name.charAt(i));
+    }
+
+    for (int i = 0; i < otherPatterns.size(); i++) {
+      if (otherPatterns.get(i).matches(name)) {
+        result.set(otherStatements.get(i));
+      }
+    }
+    return result;
+  }
+
+  private static class Node {
+    private final Map<Character, Node> children = new HashMap<>();
+    private final BitSet exact = new BitSet();
+    private final BitSet prefix = new BitSet();
+  }
+}
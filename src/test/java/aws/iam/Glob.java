@@ -0,0 +1,74 @@
+package aws.iam;
+
+// IAM wildcard pattern ('*' any sequence, '?' any single character), compiled once and matched without regex
+class Glob {
+  private enum Kind { ANY, LITERAL, PREFIX, WILDCARD }
+
+  private final Kind kind;
+  private final String pattern;
+  private final boolean ignoreCase;
+
+  private Glob(Kind kind, String pattern, boolean ignoreCase) {
+    this.kind = kind;
+    this.pattern = pattern;
+    this.ignoreCase = ignoreCase;
+  }
+
+  static Glob compile(String pattern, boolean ignoreCase) {
+    String normalized = ignoreCase ? pattern.toLowerCase() : pattern;
+    int star = normalized.indexOf('*');
+
+    if (normalized.equals("*")) {
+      return new Glob(Kind.ANY, normalized, ignoreCase);
+    }
+    if (star < 0 && normalized.indexOf('?') < 0) {
+      return new Glob(Kind.LITERAL, normalized, ignoreCase);
+    }
+    if (star == normalized.length() - 1 && normalized.indexOf('?') < 0) {
+      return new Glob(Kind.PREFIX, normalized.substring(0, star), ignoreCase);
+    }
+    return new Glob(Kind.WILDCARD, normalized, ignoreCase);
+  }
+
+  boolean matches(String value) {
+    String text = ignoreCase ? value.toLowerCase() : value;
+    return switch (kind) {
+      case ANY -> true;
+      case LITERAL -> pattern.equals(text);
+      case PREFIX -> text.startsWith(pattern);
+      case WILDCARD -> wildcardMatch(text);
+    };
+  }
+
+  // Greedy matching that only backtracks to the last '*'
+  private boolean wildcardMatch(String text) {
+    int p = 0;
+    int t = 0;
+    int starP = -1;
+    int starT = 0;
+
+    while (t < text.length()) {
+      if (p < pattern.length() && (pattern.charAt(p) == '?' || pattern.charAt(p) == text.charAt(t))) {
+        p++;
+        t++;
+      } else if (p < pattern.length() && pattern.charAt(p) == '*') {
+        starP = p++;
+        starT = t;
+      } else if (starP >= 0) {
+        p = starP + 1;
+        t = ++starT;
+      } else {
+        return false;
+      }
+    }
+    while (p < pattern.length() && pattern.charAt(p) == '*') {
+      p++;
+    }
+    return p == pattern.length();
+  }
+
+  @Override
+  public String toString() {
+    return kind == Kind.PREFIX ? pattern + "*" : pattern;
+  }
+}
@@ -1,23 +1,19 @@
 package aws.iam;
 
-import org.testng.annotations.AfterClass;
+import aws.common.CallMetricsListener;
+import aws.common.Clients;
+import aws.common.ClientsListener;
 import org.testng.annotations.BeforeClass;
-import software.amazon.awssdk.auth.credentials.EnvironmentVariableCredentialsProvider;
-import software.amazon.awssdk.regions.Region;
+import org.testng.annotations.Listeners;
 import software.amazon.awssdk.services.iam.IamClient;
 
+// The client is shared by the whole suite and closed by ClientsListener, so classes can run in parallel
+@Listeners({ClientsListener.class, CallMetricsListener.class})
 public class IamBaseTest {
   protected static IamClient iam;
 
   @BeforeClass
   public void setUp() {
-    //AWS_ACCESS_KEY_ID and AWS_SECRET_ACCESS_KEY environment variables should be set
-    iam = IamClient.builder().credentialsProvider(EnvironmentVariableCredentialsProvider.create())
-        .region(Region.EU_CENTRAL_1).build();
-  }
-
-  @AfterClass
-  public void cleanUp() {
-    iam.close();
+    iam = Clients.iam();
   }
 }
@@ -0,0 +1,103 @@
+package aws.iam;
+
+import aws.common.Compliance;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+// The IAM expectations of IamTest as data (compliance/iam.json), compiled into Compliance rules over one snapshot.
+// Rules are independent lookups, evaluated in parallel; users' policy evaluators are compiled once and shared.
+class IamCompliance {
+  static final String SPEC = "compliance/iam.json";
+
+  record Spec(List<RuleSpec> rules) {
+  }
+
+  // user + memberOf, group or role + attached, policy + actions/resources/effect, user + action/resource/allowed
+  record RuleSpec(String id, String description, String user, String memberOf, String group, String role,
+                  String attached, String policy, Set<String> actions, List<String> resources, String effect,
+                  String action, String resource, Boolean allowed) {
+  }
+
+  static final class Context {
+    private final IamSnapshot snapshot;
+    private final Map<String, PolicyEvaluator> users = new ConcurrentHashMap<>();
+
+    Context(IamSnapshot snapshot) {
+      this.snapshot = snapshot;
+    }
+
+    private PolicyEvaluator user(String userName) {
+      return users.computeIfAbsent(userName, snapshot::userEvaluator);
+    }
+  }
+
+  static Compliance.Evaluator<Context, Context> compile(Spec spec) {
+    List<Compliance.Rule<Context, Context>> rules = new ArrayList<>();
+    for (RuleSpec rule : spec.rules()) {
+      rules.add(new Compliance.Rule<>(rule.id(), rule.description(), check(rule)));
+    }
+    return new Compliance.Evaluator<>(List.of(), List.copyOf(rules), context -> "snapshot");
+  }
+
+  static List<Compliance.Violation> evaluate(IamSnapshot snapshot) {
+    return compile(Compliance.loadSpec(SPEC, Spec.class)).evaluate(new Context(snapshot), List.of());
+  }
+
+  private static Compliance.Check<Context, Context> check(RuleSpec rule) {
+    if (rule.user() != null && rule.memberOf() != null) {
+      return (context, ignored) -> {
+        if (!context.snapshot.hasUser(rule.user())) {
+          return "user " + rule.user() + " does not exist";
+        }
+        return context.snapshot.groupMembers(rule.memberOf()).contains(rule.user()) ? null
+            : "user " + rule.user() + " is not a member of " + rule.memberOf();
+      };
+    }
+    if (rule.user() != null && rule.action() != null) {
+      String resource = rule.resource() == null ? "*" : rule.resource();
+      boolean expected = !Boolean.FALSE.equals(rule.allowed());
+      return (context, ignored) -> context.user(rule.user()).isAllowed(rule.action(), resource) == expected ? null
+          : "user " + rule.user() + (expected ? " is denied " : " is allowed ") + rule.action() + " on " + resource;
+    }
+    if (rule.group() != null && rule.attached() != null) {
+      return (context, ignored) -> context.snapshot.groupPolicies(rule.group()).contains(rule.attached()) ? null
+          : "group " + rule.group() + " has " + context.snapshot.groupPolicies(rule.group()) + ", expected "
+          + rule.attached();
+    }
+    if (rule.role() != null && rule.attached() != null) {
+      return (context, ignored) -> context.snapshot.rolePolicies(rule.role()).contains(rule.attached()) ? null
+          : "role " + rule.role() + " has " + context.snapshot.rolePolicies(rule.role()) + ", expected "
+          + rule.attached();
+    }
+    if (rule.policy() != null) {
+      return (context, ignored) -> policyCheck(context.snapshot.policy(rule.policy()), rule);
+    }
+    throw new IllegalArgumentException("Rule " + rule.id() + " (" + rule.description() + ") checks nothing");
+  }
+
+  // The policy has exactly one statement with the expected actions, resources and effect
+  private static String policyCheck(IamHelper.IamPolicy policy, RuleSpec rule) {
+    if (policy.document() == null) {
+      return "policy " + rule.policy() + " does not exist";
+    }
+    List<IamHelper.PolicyDetails> statements = policy.document().statements();
+    if (statements.size() != 1) {
+      return "policy " + rule.policy() + " has " + statements.size() + " statements, expected 1";
+    }
+    IamHelper.PolicyDetails statement = statements.getFirst();
+    List<String> problems = new ArrayList<>();
+    if (rule.actions() != null && !Set.copyOf(statement.actions()).equals(rule.actions())) {
+      problems.add("actions are " + statement.actions() + ", expected " + rule.actions());
+    }
+    if (rule.resources() != null && !statement.resources().equals(rule.resources())) {
+      problems.add("resources are " + statement.resources() + ", expected " + rule.resources());
+    }
+    if (rule.effect() != null && !rule.effect().equals(statement.effect())) {
+      problems.add("effect is " + statement.effect() + ", expected " + rule.effect());
+    }
+    return problems.isEmpty() ? null : "policy " + rule.policy() + ": " + String.join(", ", problems);
+  }
+}
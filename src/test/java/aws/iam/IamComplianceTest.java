@@ -0,0 +1,64 @@
+package aws.iam;
+
+import aws.common.Compliance;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class IamComplianceTest {
+  private static final Compliance.Evaluator<IamCompliance.Context, IamCompliance.Context> SPEC =
+      IamCompliance.compile(Compliance.loadSpec(IamCompliance.SPEC, IamCompliance.Spec.class));
+
+  @Test(description = "The expected users, groups, roles and policies satisfy every rule of compliance/iam.json",
+      groups = "offline")
+  public void verifyCompliantAccount() {
+    Assert.assertEquals(SPEC.evaluate(new IamCompliance.Context(account()), List.of()), List.of());
+  }
+
+  @Test(description = "Every broken expectation is reported in one evaluation", groups = "offline")
+  public void verifyAllViolationsAreReported() {
+    IamSnapshot snapshot = account();
+    snapshot.groupMembers.get("ReadAccessGroupS3").remove("ReadAccessUserS3");
+    snapshot.rolePolicies.put("FullAccessRoleS3", Set.of());
+    snapshot.policyDocuments.put("ReadAccessPolicyS3", document("s3:*"));
+
+    List<Compliance.Violation> violations = SPEC.evaluate(new IamCompliance.Context(snapshot), List.of(), true);
+
+    Assert.assertEquals(violations.stream().map(Compliance.Violation::ruleId).collect(Collectors.toSet()), Set.of(
+        "IamUsersCreation", "IamRolesCreation", "IamPoliciesCreation", "IamEffectivePermissions"),
+        violations.toString());
+    // ReadAccessUserS3 is now allowed s3:PutObject
+    Assert.assertTrue(violations.stream().anyMatch(violation -> violation.message().contains("is allowed")),
+        violations.toString());
+  }
+
+  // The three users, groups, roles and policies the suite expects
+  private static IamSnapshot account() {
+    IamSnapshot snapshot = new IamSnapshot();
+    for (String service : List.of("EC2", "S3")) {
+      add(snapshot, "FullAccess", service, document(service.toLowerCase() + ":*"));
+    }
+    add(snapshot, "ReadAccess", "S3", document("s3:Describe*", "s3:Get*", "s3:List*"));
+    return snapshot;
+  }
+
+  private static void add(IamSnapshot snapshot, String access, String service, IamHelper.Document document) {
+    String user = access + "User" + service;
+    String group = access + "Group" + service;
+    String policy = access + "Policy" + service;
+    snapshot.users.add(user);
+    snapshot.userGroups.put(user, new HashSet<>(Set.of(group)));
+    snapshot.groupMembers.put(group, new HashSet<>(Set.of(user)));
+    snapshot.groupPolicies.put(group, new HashSet<>(Set.of(policy)));
+    snapshot.rolePolicies.put(access + "Role" + service, new HashSet<>(Set.of(policy)));
+    snapshot.policyDocuments.put(policy, document);
+  }
+
+  private static IamHelper.Document document(String... actions) {
+    return new IamHelper.Document(List.of(
+        new IamHelper.PolicyDetails("Allow", List.of(actions), null, List.of("*"), null)));
+  }
+}
@@ -0,0 +1,134 @@
+package aws.iam;
+
+import aws.common.SnapshotFile;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+// Structural difference of two IAM snapshots: principals, memberships, attachments and policy statements.
+// Principals are diffed per kind, e.g. owner "group" with the added and removed group names.
+// Inline policies are compared per owner, e.g. "user:alice (inline)".
+// Usage: IamDiff <before.snap> <after.snap>
+record IamDiff(List<SetChange> principals, List<SetChange> memberships, List<SetChange> attachments,
+               List<PolicyChange> policies) {
+  record SetChange(String owner, Set<String> added, Set<String> removed) {
+  }
+
+  record PolicyChange(String policy, List<IamHelper.PolicyDetails> addedStatements,
+                      List<IamHelper.PolicyDetails> removedStatements) {
+  }
+
+  static IamDiff between(IamSnapshot before, IamSnapshot after) {
+    // every crawled group and role has an attachment entry, possibly empty
+    List<SetChange> principals = new ArrayList<>();
+    addIfChanged(principals, "user", before.users, after.users);
+    addIfChanged(principals, "group", before.groupPolicies.keySet(), after.groupPolicies.keySet());
+    addIfChanged(principals, "role", before.rolePolicies.keySet(), after.rolePolicies.keySet());
+
+    List<SetChange> attachments = new ArrayList<>();
+    attachments.addAll(setChanges("user:", before.userPolicies, after.userPolicies));
+    attachments.addAll(setChanges("group:", before.groupPolicies, after.groupPolicies));
+    attachments.addAll(setChanges("role:", before.rolePolicies, after.rolePolicies));
+
+    List<PolicyChange> policies = new ArrayList<>();
+    for (String name : union(before.policyDocuments.keySet(), after.policyDocuments.keySet())) {
+      addIfChanged(policies, name, statements(before.policyDocuments.get(name)),
+          statements(after.policyDocuments.get(name)));
+    }
+    addInlineChanges(policies, "user:", before.userInlinePolicies, after.userInlinePolicies);
+    addInlineChanges(policies, "group:", before.groupInlinePolicies, after.groupInlinePolicies);
+    addInlineChanges(policies, "role:", before.roleInlinePolicies, after.roleInlinePolicies);
+
+    return new IamDiff(principals, setChanges("user:", before.userGroups, after.userGroups), attachments, policies);
+  }
+
+  boolean isEmpty() {
+    return principals.isEmpty() && memberships.isEmpty() && attachments.isEmpty() && policies.isEmpty();
+  }
+
+  List<String> describe() {
+    List<String> result = new ArrayList<>();
+    for (SetChange change : principals) {
+      change.added().forEach(name -> result.add("+ " + change.owner() + " " + name));
+      change.removed().forEach(name -> result.add("- " + change.owner() + " " + name));
+    }
+    for (SetChange change : memberships) {
+      change.added().forEach(group -> result.add("+ " + change.owner() + " in group " + group));
+      change.removed().forEach(group -> result.add("- " + change.owner() + " in group " + group));
+    }
+    for (SetChange change : attachments) {
+      change.added().forEach(policy -> result.add("+ " + change.owner() + " policy " + policy));
+      change.removed().forEach(policy -> result.add("- " + change.owner() + " policy " + policy));
+    }
+    for (PolicyChange change : policies) {
+      result.add("~ policy " + change.policy());
+      change.addedStatements().forEach(statement -> result.add("    + " + statement));
+      change.removedStatements().forEach(statement -> result.add("    - " + statement));
+    }
+    return result;
+  }
+
+  private static List<SetChange> setChanges(String prefix, Map<String, Set<String>> before,
+                                            Map<String, Set<String>> after) {
+    List<SetChange> result = new ArrayList<>();
+    for (String owner : union(before.keySet(), after.keySet())) {
+      addIfChanged(result, prefix + owner, before.getOrDefault(owner, Set.of()), after.getOrDefault(owner, Set.of()));
+    }
+    return result;
+  }
+
+  private static void addIfChanged(List<SetChange> changes, String owner, Set<String> before, Set<String> after) {
+    if (!before.equals(after)) {
+      changes.add(new SetChange(owner, difference(after, before), difference(before, after)));
+    }
+  }
+
+  private static void addInlineChanges(List<PolicyChange> changes, String prefix,
+                                       Map<String, List<IamHelper.Document>> before,
+                                       Map<String, List<IamHelper.Document>> after) {
+    for (String owner : union(before.keySet(), after.keySet())) {
+      addIfChanged(changes, prefix + owner + " (inline)", statements(before.getOrDefault(owner, List.of())),
+          statements(after.getOrDefault(owner, List.of())));
+    }
+  }
+
+  private static void addIfChanged(List<PolicyChange> changes, String name, List<IamHelper.PolicyDetails> before,
+                                   List<IamHelper.PolicyDetails> after) {
+    List<IamHelper.PolicyDetails> added = after.stream().filter(statement -> !before.contains(statement)).toList();
+    List<IamHelper.PolicyDetails> removed = before.stream().filter(statement -> !after.contains(statement)).toList();
+    if (!added.isEmpty() || !removed.isEmpty()) {
+      changes.add(new PolicyChange(name, added, removed));
+    }
+  }
+
+  private static List<IamHelper.PolicyDetails> statements(IamHelper.Document document) {
+    return document == null ? List.of() : document.statements();
+  }
+
+  private static List<IamHelper.PolicyDetails> statements(List<IamHelper.Document> documents) {
+    return documents.stream().flatMap(document -> document.statements().stream()).toList();
+  }
+
+  private static Set<String> union(Set<String> left, Set<String> right) {
+    Set<String> result = new TreeSet<>(left);
+    result.addAll(right);
+    return result;
+  }
+
+  private static Set<String> difference(Set<String> left, Set<String> right) {
+    Set<String> result = new LinkedHashSet<>(left);
+    result.removeAll(right);
+    return result;
+  }
+
+  public static void main(String[] args) {
+    IamDiff diff = between(SnapshotFile.read(Path.of(args[0]), IamSnapshotCodec.KIND, IamSnapshotCodec.INSTANCE),
+        SnapshotFile.read(Path.of(args[1]), IamSnapshotCodec.KIND, IamSnapshotCodec.INSTANCE));
+    diff.describe().forEach(System.out::println);
+    System.exit(diff.isEmpty() ? 0 : 1);
+  }
+}
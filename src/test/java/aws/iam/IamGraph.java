@@ -0,0 +1,241 @@
+package aws.iam;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Membership and attachment edges of one snapshot, with users, groups, roles and policies numbered densely and
+// every edge kept in both directions as bitsets. Bulk questions such as "which users may s3:PutObject" evaluate
+// each policy document once and OR its principals' bitsets, instead of compiling every user's policies.
+final class IamGraph {
+  private final Names users = new Names();
+  private final Names groups = new Names();
+  private final Names roles = new Names();
+  private final Names policies = new Names();
+
+  private final List<BitSet> userGroups = new ArrayList<>();
+  private final List<BitSet> groupUsers = new ArrayList<>();
+  private final List<BitSet> userPolicies = new ArrayList<>();
+  private final List<BitSet> groupPolicies = new ArrayList<>();
+  private final List<BitSet> rolePolicies = new ArrayList<>();
+  private final List<BitSet> policyUsers = new ArrayList<>();
+  private final List<BitSet> policyGroups = new ArrayList<>();
+  private final List<BitSet> policyRoles = new ArrayList<>();
+
+  // one evaluator per managed policy document (null for AWS managed ones) and per principal with inline policies
+  private final List<PolicyEvaluator> policyEvaluators = new ArrayList<>();
+  private final Map<Integer, PolicyEvaluator> userInline = new HashMap<>();
+  private final Map<Integer, PolicyEvaluator> groupInline = new HashMap<>();
+  private final Map<Integer, PolicyEvaluator> roleInline = new HashMap<>();
+
+  // Name <-> dense id
+  private static final class Names {
+    private final Map<String, Integer> ids = new HashMap<>();
+    private final List<String> names = new ArrayList<>();
+
+    int id(String name, List<List<BitSet>> edges) {
+      Integer id = ids.get(name);
+      if (id == null) {
+        id = names.size();
+        ids.put(name, id);
+        names.add(name);
+        edges.forEach(list -> list.add(new BitSet()));
+      }
+      return id;
+    }
+
+    int find(String name) {
+      return ids.getOrDefault(name, -1);
+    }
+
+    Set<String> names(BitSet ids) {
+      Set<String> result = new LinkedHashSet<>();
+      ids.stream().forEach(id -> result.add(names.get(id)));
+      return result;
+    }
+  }
+
+  private IamGraph() {
+  }
+
+  static IamGraph of(IamSnapshot snapshot) {
+    IamGraph graph = new IamGraph();
+    snapshot.users().forEach(graph::user);
+    snapshot.groupMembers.forEach((group, members) -> {
+      int g = graph.group(group);
+      members.forEach(user -> graph.member(graph.user(user), g));
+    });
+    snapshot.userGroups.forEach((user, groups) -> {
+      int u = graph.user(user);
+      groups.forEach(group -> graph.member(u, graph.group(group)));
+    });
+    snapshot.userPolicies.forEach((user, names) -> {
+      int u = graph.user(user);
+      names.forEach(policy -> graph.attach(graph.userPolicies, graph.policyUsers, u, graph.policy(policy)));
+    });
+    snapshot.groupPolicies.forEach((group, names) -> {
+      int g = graph.group(group);
+      names.forEach(policy -> graph.attach(graph.groupPolicies, graph.policyGroups, g, graph.policy(policy)));
+    });
+    snapshot.rolePolicies.forEach((role, names) -> {
+      int r = graph.role(role);
+      names.forEach(policy -> graph.attach(graph.rolePolicies, graph.policyRoles, r, graph.policy(policy)));
+    });
+
+    snapshot.policyDocuments.keySet().forEach(graph::policy);
+    for (String policy : graph.policies.names) {
+      IamHelper.Document document = snapshot.policyDocuments.get(policy);
+      graph.policyEvaluators.add(document == null ? null : PolicyEvaluator.compile(List.of(document)));
+    }
+    snapshot.userInlinePolicies.forEach((user, documents) -> inline(graph.userInline, graph.user(user), documents));
+    snapshot.groupInlinePolicies.forEach((group, documents) ->
+        inline(graph.groupInline, graph.group(group), documents));
+    snapshot.roleInlinePolicies.forEach((role, documents) -> inline(graph.roleInline, graph.role(role), documents));
+    return graph;
+  }
+
+  boolean hasUser(String userName) {
+    return users.find(userName) >= 0;
+  }
+
+  boolean isMember(String userName, String groupName) {
+    int u = users.find(userName);
+    int g = groups.find(groupName);
+    return u >= 0 && g >= 0 && userGroups.get(u).get(g);
+  }
+
+  Set<String> groupsOf(String userName) {
+    int u = users.find(userName);
+    return u < 0 ? Set.of() : groups.names(userGroups.get(u));
+  }
+
+  Set<String> membersOf(String groupName) {
+    int g = groups.find(groupName);
+    return g < 0 ? Set.of() : users.names(groupUsers.get(g));
+  }
+
+  // Managed policies attached to the user directly or through any of its groups
+  Set<String> policiesOf(String userName) {
+    int u = users.find(userName);
+    if (u < 0) {
+      return Set.of();
+    }
+    BitSet result = (BitSet) userPolicies.get(u).clone();
+    BitSet memberOf = userGroups.get(u);
+    for (int g = memberOf.nextSetBit(0); g >= 0; g = memberOf.nextSetBit(g + 1)) {
+      result.or(groupPolicies.get(g));
+    }
+    return policies.names(result);
+  }
+
+  // Users the policy applies to, directly or through a group
+  Set<String> usersWith(String policyName) {
+    int p = policies.find(policyName);
+    return p < 0 ? Set.of() : users.names(usersOf(p));
+  }
+
+  Set<String> groupsWith(String policyName) {
+    int p = policies.find(policyName);
+    return p < 0 ? Set.of() : groups.names(policyGroups.get(p));
+  }
+
+  Set<String> rolesWith(String policyName) {
+    int p = policies.find(policyName);
+    return p < 0 ? Set.of() : roles.names(policyRoles.get(p));
+  }
+
+  // The same decision as IamSnapshot.userEvaluator(user).isAllowed for every user at once: an explicit deny in
+  // any of the user's documents wins, otherwise one allow is enough
+  Set<String> usersAllowed(String action, String resource) {
+    BitSet allowed = new BitSet();
+    BitSet denied = new BitSet();
+    for (int p = 0; p < policyEvaluators.size(); p++) {
+      PolicyEvaluator evaluator = policyEvaluators.get(p);
+      PolicyEvaluator.Decision decision =
+          evaluator == null ? PolicyEvaluator.Decision.IMPLICIT_DENY : evaluator.evaluate(action, resource);
+      if (decision != PolicyEvaluator.Decision.IMPLICIT_DENY) {
+        mark(decision, usersOf(p), allowed, denied);
+      }
+    }
+    userInline.forEach((u, evaluator) -> mark(evaluator.evaluate(action, resource), bit(u), allowed, denied));
+    groupInline.forEach((g, evaluator) ->
+        mark(evaluator.evaluate(action, resource), groupUsers.get(g), allowed, denied));
+    allowed.andNot(denied);
+    return users.names(allowed);
+  }
+
+  Set<String> rolesAllowed(String action, String resource) {
+    BitSet allowed = new BitSet();
+    BitSet denied = new BitSet();
+    for (int p = 0; p < policyEvaluators.size(); p++) {
+      PolicyEvaluator evaluator = policyEvaluators.get(p);
+      if (evaluator != null) {
+        mark(evaluator.evaluate(action, resource), policyRoles.get(p), allowed, denied);
+      }
+    }
+    roleInline.forEach((r, evaluator) -> mark(evaluator.evaluate(action, resource), bit(r), allowed, denied));
+    allowed.andNot(denied);
+    return roles.names(allowed);
+  }
+
+  private BitSet usersOf(int policy) {
+    BitSet result = (BitSet) policyUsers.get(policy).clone();
+    BitSet attachedGroups = policyGroups.get(policy);
+    for (int g = attachedGroups.nextSetBit(0); g >= 0; g = attachedGroups.nextSetBit(g + 1)) {
+      result.or(groupUsers.get(g));
+    }
+    return result;
+  }
+
+  private static void mark(PolicyEvaluator.Decision decision, BitSet principals, BitSet allowed, BitSet denied) {
+    if (decision == PolicyEvaluator.Decision.ALLOW) {
+      allowed.or(principals);
+    } else if (decision == PolicyEvaluator.Decision.EXPLICIT_DENY) {
+      denied.or(principals);
+    }
+  }
+
+  private static BitSet bit(int id) {
+    BitSet result = new BitSet();
+    result.set(id);
+    return result;
+  }
+
+  private static void inline(Map<Integer, PolicyEvaluator> evaluators, int id,
+                             Collection<IamHelper.Document> documents) {
+    if (!documents.isEmpty()) {
+      evaluators.put(id, PolicyEvaluator.compile(documents));
+    }
+  }
+
+  private int user(String name) {
+    return users.id(name, List.of(userGroups, userPolicies));
+  }
+
+  private int group(String name) {
+    return groups.id(name, List.of(groupUsers, groupPolicies));
+  }
+
+  private int role(String name) {
+    return roles.id(name, List.of(rolePolicies));
+  }
+
+  private int policy(String name) {
+    return policies.id(name, List.of(policyUsers, policyGroups, policyRoles));
+  }
+
+  private void member(int user, int group) {
+    userGroups.get(user).set(group);
+    groupUsers.get(group).set(user);
+  }
+
+  private void attach(List<BitSet> principalPolicies, List<BitSet> policyPrincipals, int principal, int policy) {
+    principalPolicies.get(principal).set(policy);
+    policyPrincipals.get(policy).set(principal);
+  }
+}
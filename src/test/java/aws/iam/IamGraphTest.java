@@ -0,0 +1,97 @@
+package aws.iam;
+
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+public class IamGraphTest {
+  private static final int USERS = 20_000;
+  private static final int GROUPS = 400;
+  private static final IamSnapshot ACCOUNT = account();
+  private static final IamGraph GRAPH = IamGraph.of(ACCOUNT);
+
+  @Test(description = "Memberships and attachments are answered in both directions", groups = "offline")
+  public void verifyEdges() {
+    Assert.assertTrue(GRAPH.hasUser("user-41"));
+    Assert.assertFalse(GRAPH.hasUser("user-" + USERS));
+    Assert.assertTrue(GRAPH.isMember("user-41", "group-41"));
+    Assert.assertTrue(GRAPH.isMember("user-41", "group-" + (41 + 1) % GROUPS));
+    Assert.assertFalse(GRAPH.isMember("user-41", "group-40"));
+    Assert.assertEquals(GRAPH.groupsOf("user-41"), ACCOUNT.userGroups("user-41"));
+    Assert.assertEquals(GRAPH.membersOf("group-7"), ACCOUNT.groupMembers("group-7"));
+    Assert.assertEquals(GRAPH.policiesOf("user-0"), Set.of("ReadS3", "FullS3", "DenyDelete", "AdminAll"));
+    Assert.assertEquals(GRAPH.groupsWith("DenyDelete").size(), GROUPS / 10);
+    Assert.assertEquals(GRAPH.rolesWith("FullEC2"), Set.of("role-ec2"));
+  }
+
+  @DataProvider(name = "Grants")
+  public Object[][] grants() {
+    return new Object[][] {
+        {"s3:*", "*"},
+        {"s3:GetObject", "arn:aws:s3:::bucket/key"},
+        {"s3:DeleteObject", "arn:aws:s3:::bucket/key"},
+        {"ec2:RunInstances", "*"},
+        {"iam:CreateUser", "*"}
+    };
+  }
+
+  @Test(description = "Bulk grants match evaluating every user's own policies, explicit denies included",
+      groups = "offline", dataProvider = "Grants")
+  public void verifyUsersAllowed(String action, String resource) {
+    Set<String> expected = ACCOUNT.users().stream()
+        .filter(user -> ACCOUNT.userEvaluator(user).isAllowed(action, resource))
+        .collect(Collectors.toCollection(LinkedHashSet::new));
+
+    Assert.assertEquals(GRAPH.usersAllowed(action, resource), expected);
+    Assert.assertEquals(GRAPH.rolesAllowed(action, resource), ACCOUNT.rolePolicies.keySet().stream()
+        .filter(role -> ACCOUNT.roleEvaluator(role).isAllowed(action, resource)).collect(Collectors.toSet()));
+  }
+
+  // Every user is in two neighbouring groups; groups get S3 read or full access, one in ten denies deletes and
+  // a few users carry admin or EC2 policies directly or inline
+  private static IamSnapshot account() {
+    IamSnapshot snapshot = new IamSnapshot();
+    snapshot.policyDocuments.put("ReadS3", document("Allow", "s3:Get*", "s3:List*"));
+    snapshot.policyDocuments.put("FullS3", document("Allow", "s3:*"));
+    snapshot.policyDocuments.put("DenyDelete", document("Deny", "s3:Delete*"));
+    snapshot.policyDocuments.put("FullEC2", document("Allow", "ec2:*"));
+    snapshot.policyDocuments.put("AdminAll", document("Allow", "*"));
+    for (int g = 0; g < GROUPS; g++) {
+      Set<String> policies = new HashSet<>(Set.of(g % 3 == 0 ? "FullS3" : "ReadS3"));
+      if (g % 10 == 0) {
+        policies.add("DenyDelete");
+      }
+      snapshot.groupPolicies.put("group-" + g, policies);
+      snapshot.groupMembers.put("group-" + g, new HashSet<>());
+    }
+    for (int u = 0; u < USERS; u++) {
+      String user = "user-" + u;
+      snapshot.users.add(user);
+      for (String group : List.of("group-" + u % GROUPS, "group-" + (u + 1) % GROUPS)) {
+        snapshot.userGroups.computeIfAbsent(user, k -> new HashSet<>()).add(group);
+        snapshot.groupMembers.get(group).add(user);
+      }
+      if (u % 1000 == 0) {
+        snapshot.userPolicies.put(user, new HashSet<>(Set.of("AdminAll")));
+      }
+      if (u % 777 == 0) {
+        snapshot.userInlinePolicies.put(user, List.of(document("Allow", "ec2:RunInstances")));
+      }
+    }
+    snapshot.rolePolicies.put("role-ec2", Set.of("FullEC2"));
+    snapshot.rolePolicies.put("role-s3", Set.of("ReadS3", "DenyDelete"));
+    snapshot.rolePolicies.put("role-admin", Set.of("AdminAll"));
+    snapshot.roleInlinePolicies.put("role-admin", List.of(document("Deny", "iam:*")));
+    return snapshot;
+  }
+
+  private static IamHelper.Document document(String effect, String... actions) {
+    return new IamHelper.Document(List.of(new IamHelper.PolicyDetails(effect, List.of(actions), null,
+        List.of("*"), null)));
+  }
+}
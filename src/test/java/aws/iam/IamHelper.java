@@ -1,15 +1,13 @@
 package aws.iam;
 
-import com.fasterxml.jackson.annotation.JsonAutoDetect;
+import aws.common.Json;
+import aws.common.PagedSource;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.DeserializationFeature;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.introspect.VisibilityChecker;
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 import software.amazon.awssdk.services.iam.IamClient;
 import software.amazon.awssdk.services.iam.model.AttachedPolicy;
 import software.amazon.awssdk.services.iam.model.GetGroupRequest;
@@ -29,185 +27,113 @@ import software.amazon.awssdk.services.iam.model.User;
 
 public class IamHelper {
   public static List<String> listAllUsers(IamClient iam) {
-    List<String> result = new ArrayList<>();
-
-    boolean done = false;
-    String newMarker = null;
-
-    while (!done) {
-      ListUsersRequest request;
-
-      if (newMarker == null) {
-        request = ListUsersRequest.builder().build();
-      } else {
-        request = ListUsersRequest.builder().marker(newMarker).build();
-      }
-
-      ListUsersResponse response = iam.listUsers(request);
-      result.addAll(response.users().stream().map(User::userName).toList());
-
-      if (!response.isTruncated()) {
-        done = true;
-      } else {
-        newMarker = response.marker();
-      }
-    }
+    return userPages(iam).stream().map(User::userName).toList();
+  }
 
-    return result;
+  private static PagedSource<User> userPages(IamClient iam) {
+    return marker -> {
+      ListUsersResponse response = iam.listUsers(ListUsersRequest.builder().marker(marker).build());
+      return PagedSource.Page.of(response.users(), response.isTruncated(), response.marker());
+    };
   }
 
   static List<String> getGroup(IamClient iam, String groupName) {
-    List<String> result = new ArrayList<>();
-
-    boolean done = false;
-    String newMarker = null;
-
-    while (!done) {
-      GetGroupRequest request;
-
-      if (newMarker == null) {
-        request = GetGroupRequest.builder().groupName(groupName).build();
-      } else {
-        request = GetGroupRequest.builder().groupName(groupName).marker(newMarker).build();
-      }
-
-      GetGroupResponse response = iam.getGroup(request);
-      result.addAll(response.users().stream().map(User::userName).toList());
-
-      if (!response.isTruncated()) {
-        done = true;
-      } else {
-        newMarker = response.marker();
-      }
-    }
+    return memberPages(iam, groupName).stream().map(User::userName).toList();
+  }
 
-    return result;
+  private static PagedSource<User> memberPages(IamClient iam, String groupName) {
+    return marker -> {
+      GetGroupResponse response = iam.getGroup(GetGroupRequest.builder().groupName(groupName).marker(marker).build());
+      return PagedSource.Page.of(response.users(), response.isTruncated(), response.marker());
+    };
   }
 
   static List<String> listGroupPolicies(IamClient iam, String group) {
-    List<String> result = new ArrayList<>();
-
-    boolean done = false;
-    String newMarker = null;
-
-    while (!done) {
-      ListAttachedGroupPoliciesRequest request;
-
-      if (newMarker == null) {
-        request = ListAttachedGroupPoliciesRequest.builder().groupName(group).build();
-      } else {
-        request = ListAttachedGroupPoliciesRequest.builder().groupName(group).marker(newMarker).build();
-      }
-
-      ListAttachedGroupPoliciesResponse response = iam.listAttachedGroupPolicies(request);
-      result.addAll(response.attachedPolicies().stream().map(AttachedPolicy::policyName).toList());
-
-      if (!response.isTruncated()) {
-        done = true;
-      } else {
-        newMarker = response.marker();
-      }
-    }
-
-    return result;
+    PagedSource<AttachedPolicy> source = marker -> {
+      ListAttachedGroupPoliciesResponse response = iam.listAttachedGroupPolicies(
+          ListAttachedGroupPoliciesRequest.builder().groupName(group).marker(marker).build());
+      return PagedSource.Page.of(response.attachedPolicies(), response.isTruncated(), response.marker());
+    };
+    return source.stream().map(AttachedPolicy::policyName).toList();
   }
 
   static List<String> listRolePolicies(IamClient iam, String role) {
-    List<String> result = new ArrayList<>();
+    PagedSource<AttachedPolicy> source = marker -> {
+      ListAttachedRolePoliciesResponse response = iam.listAttachedRolePolicies(
+          ListAttachedRolePoliciesRequest.builder().roleName(role).marker(marker).build());
+      return PagedSource.Page.of(response.attachedPolicies(), response.isTruncated(), response.marker());
+    };
+    return source.stream().map(AttachedPolicy::policyName).toList();
+  }
 
-    boolean done = false;
-    String newMarker = null;
+  static IamPolicy getPolicy(IamClient iam, String policyName) throws JsonProcessingException {
+    PagedSource<Policy> source = marker -> {
+      ListPoliciesResponse response = iam.listPolicies(ListPoliciesRequest.builder().marker(marker).build());
+      return PagedSource.Page.of(response.policies(), response.isTruncated(), response.marker());
+    };
+
+    // stops paging at the page with the policy, without a further page in flight
+    Optional<Policy> found;
+    try (Stream<Policy> policies = source.onDemand()) {
+      found = policies.filter(policy -> policy.policyName().equals(policyName)).findFirst();
+    }
 
-    while (!done) {
-      ListAttachedRolePoliciesRequest request;
+    if (found.isPresent()) {
+      return readPolicy(iam, found.get());
+    }
 
-      if (newMarker == null) {
-        request = ListAttachedRolePoliciesRequest.builder().roleName(role).build();
-      } else {
-        request = ListAttachedRolePoliciesRequest.builder().roleName(role).marker(newMarker).build();
-      }
+    // return empty policy
+    return new IamPolicy("", null);
+  }
 
-      ListAttachedRolePoliciesResponse response = iam.listAttachedRolePolicies(request);
-      result.addAll(response.attachedPolicies().stream().map(AttachedPolicy::policyName).toList());
+  static IamPolicy readPolicy(IamClient iam, Policy policy) throws JsonProcessingException {
+    //Policy ARN and default version
+    String arn = policy.arn();
+    String defaultVersionId = policy.defaultVersionId();
+    String name = policy.policyName();
 
-      if (!response.isTruncated()) {
-        done = true;
-      } else {
-        newMarker = response.marker();
-      }
-    }
+    // Get full policy information by ARN and current version
+    GetPolicyVersionRequest req =
+        GetPolicyVersionRequest.builder().policyArn(arn).versionId(defaultVersionId).build();
+    GetPolicyVersionResponse resp = iam.getPolicyVersion(req);
 
-    return result;
+    return new IamPolicy(name, parseDocument(resp.policyVersion().document()));
   }
 
-  static IamPolicy getPolicy(IamClient iam, String policyName) throws JsonProcessingException {
-    boolean done = false;
-    String newMarker = null;
-
-    while (!done) {
-      ListPoliciesRequest request;
-
-      if (newMarker == null) {
-        request = ListPoliciesRequest.builder().build();
-      } else {
-        request = ListPoliciesRequest.builder().marker(newMarker).build();
-      }
-
-      ListPoliciesResponse response = iam.listPolicies(request);
-      Optional<Policy> found = response.policies().stream().filter(policy -> policy.policyName().equals(policyName)).findFirst();
-
-      if (found.isPresent()) {
-        //Policy ARN and default version
-        String arn = found.get().arn();
-        String defaultVersionId = found.get().defaultVersionId();
-        String name = found.get().policyName();
-
-        // Get full policy information by ARN and current version
-        GetPolicyVersionRequest req =
-            GetPolicyVersionRequest.builder().policyArn(arn).versionId(defaultVersionId).build();
-        GetPolicyVersionResponse resp = iam.getPolicyVersion(req);
-
-        ObjectMapper mapper = new ObjectMapper();
-        mapper.disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
-        mapper.setVisibility(VisibilityChecker.Std.defaultInstance().withFieldVisibility(JsonAutoDetect.Visibility.ANY));
-
-        Document doc = mapper.readValue(java.net.URLDecoder.decode(resp.policyVersion().document()), Document.class);
-        return new IamPolicy(name, doc);
-      }
-      if (!response.isTruncated()) {
-        done = true;
-      } else {
-        newMarker = response.marker();
-      }
-    }
-
-    // return empty policy
-    return new IamPolicy("", null);
+  // IAM returns policy documents URL-encoded
+  static Document parseDocument(String encodedDocument) throws JsonProcessingException {
+    return Json.readUrlEncoded(encodedDocument, Document.class);
   }
 
-  static class Document {
-    @JsonProperty
-    public List<PolicyDetails> Statement;
+  record Document(@JsonProperty("Statement") List<PolicyDetails> statements) {
+    Document {
+      statements = statements == null ? List.of() : List.copyOf(statements);
+    }
 
     @Override
     public String toString() {
-      return  Statement.stream().map(Object::toString).collect(Collectors.joining(", "));
+      return statements.stream().map(Object::toString).collect(Collectors.joining(", "));
     }
   }
 
-  static class PolicyDetails {
-    @JsonProperty
-    public Object Action;
-
-    @JsonProperty
-    public String Resource;
-
-    @JsonProperty
-    public String Effect;
+  // Action, NotAction, Resource and NotResource may be a single string or an array in the document
+  record PolicyDetails(
+      @JsonProperty("Effect") String effect,
+      @JsonProperty("Action") List<String> actions,
+      @JsonProperty("NotAction") List<String> notActions,
+      @JsonProperty("Resource") List<String> resources,
+      @JsonProperty("NotResource") List<String> notResources
+  ) {
+    PolicyDetails {
+      actions = actions == null ? List.of() : List.copyOf(actions);
+      notActions = notActions == null ? List.of() : List.copyOf(notActions);
+      resources = resources == null ? List.of() : List.copyOf(resources);
+      notResources = notResources == null ? List.of() : List.copyOf(notResources);
+    }
 
     @Override
     public String toString() {
-      return "Action: " + Action + ", Effect: " + Effect + ", Resource: " + Resource;
+      return "Action: " + actions + ", Effect: " + effect + ", Resource: " + resources;
     }
   }
 
@@ -0,0 +1,85 @@
+package aws.iam;
+
+import aws.common.Clients;
+import aws.stub.Fleet;
+import aws.stub.LocalAwsServer;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import software.amazon.awssdk.services.iam.IamClient;
+
+// IamHelper crawls and the IamSnapshot load against the local stub for several account sizes and latencies
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 10)
+@Fork(1)
+public class IamHelperBenchmark {
+  @Param({"3", "1000", "10000"})
+  public int principals;
+
+  @Param({"0", "5"})
+  public int latencyMillis;
+
+  private LocalAwsServer server;
+  private IamClient iam;
+  private String lastPolicy;
+
+  @Setup
+  public void setUp() throws Exception {
+    Fleet fleet = Fleet.generate(2, principals);
+    lastPolicy = fleet.policies().getLast().name();
+    server = new LocalAwsServer(fleet, Duration.ofMillis(latencyMillis), 0, 100);
+    iam = Clients.configure(IamClient.builder(), server).build();
+  }
+
+  @TearDown
+  public void tearDown() {
+    iam.close();
+    server.close();
+  }
+
+  @Benchmark
+  public List<String> listAllUsers() {
+    return IamHelper.listAllUsers(iam);
+  }
+
+  @Benchmark
+  public List<String> getGroup() {
+    return IamHelper.getGroup(iam, "FullAccessGroupEC2");
+  }
+
+  @Benchmark
+  public List<String> listGroupPolicies() {
+    return IamHelper.listGroupPolicies(iam, "FullAccessGroupEC2");
+  }
+
+  @Benchmark
+  public List<String> listRolePolicies() {
+    return IamHelper.listRolePolicies(iam, "FullAccessRoleEC2");
+  }
+
+  // the last policy, so the ListPolicies scan has to page through the whole account
+  @Benchmark
+  public IamHelper.IamPolicy getPolicy() throws Exception {
+    return IamHelper.getPolicy(iam, lastPolicy);
+  }
+
+  @Benchmark
+  public IamSnapshot loadSnapshot() throws Exception {
+    return IamSnapshot.load(iam);
+  }
+}
@@ -0,0 +1,39 @@
+package aws.iam;
+
+import aws.common.SnapshotCache;
+import aws.common.SnapshotFile;
+import aws.common.TestConfig;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+import software.amazon.awssdk.services.iam.IamClient;
+
+// Suite-level IAM data: the account is crawled (or read from -Dinventory.snapshot) once and shared by all
+// data-provider rows until the TTL expires
+class IamInventory {
+  private static final SnapshotCache<IamSnapshot> SNAPSHOT =
+      new SnapshotCache<>(TestConfig.getDuration("inventory.ttl", Duration.ofMinutes(10)));
+  private static final Map<IamSnapshot, IamGraph> GRAPHS = Collections.synchronizedMap(new WeakHashMap<>());
+
+  static IamSnapshot snapshot(IamClient iam) {
+    return SNAPSHOT.get(() -> SnapshotFile.liveOrSnapshot(IamSnapshotCodec.KIND, IamSnapshotCodec.INSTANCE, () -> {
+      try {
+        return IamSnapshot.load(iam);
+      } catch (JsonProcessingException e) {
+        throw new UncheckedIOException(e);
+      }
+    }));
+  }
+
+  // Built once per snapshot, and dropped with it
+  static IamGraph graph(IamClient iam) {
+    return GRAPHS.computeIfAbsent(snapshot(iam), IamGraph::of);
+  }
+
+  static void invalidate() {
+    SNAPSHOT.invalidate();
+  }
+}
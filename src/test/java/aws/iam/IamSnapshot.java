@@ -0,0 +1,174 @@
+package aws.iam;
+
+import aws.common.PagedSource;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Stream;
+import software.amazon.awssdk.services.iam.IamClient;
+import software.amazon.awssdk.services.iam.model.AttachedPolicy;
+import software.amazon.awssdk.services.iam.model.EntityType;
+import software.amazon.awssdk.services.iam.model.GetAccountAuthorizationDetailsRequest;
+import software.amazon.awssdk.services.iam.model.GetAccountAuthorizationDetailsResponse;
+import software.amazon.awssdk.services.iam.model.GroupDetail;
+import software.amazon.awssdk.services.iam.model.ManagedPolicyDetail;
+import software.amazon.awssdk.services.iam.model.PolicyDetail;
+import software.amazon.awssdk.services.iam.model.PolicyVersion;
+import software.amazon.awssdk.services.iam.model.RoleDetail;
+import software.amazon.awssdk.services.iam.model.UserDetail;
+
+// Users, groups, roles, local policies and the attached AWS managed ones from one GetAccountAuthorizationDetails
+// crawl, indexed by name. The indexes are package-private for IamSnapshotCodec and IamDiff.
+class IamSnapshot {
+  final Set<String> users = new LinkedHashSet<>();
+  final Map<String, Set<String>> userGroups = new HashMap<>();
+  final Map<String, Set<String>> userPolicies = new HashMap<>();
+  final Map<String, Set<String>> groupMembers = new HashMap<>();
+  final Map<String, Set<String>> groupPolicies = new HashMap<>();
+  final Map<String, Set<String>> rolePolicies = new HashMap<>();
+  final Map<String, IamHelper.Document> policyDocuments = new HashMap<>();
+  final Map<String, List<IamHelper.Document>> userInlinePolicies = new HashMap<>();
+  final Map<String, List<IamHelper.Document>> groupInlinePolicies = new HashMap<>();
+  final Map<String, List<IamHelper.Document>> roleInlinePolicies = new HashMap<>();
+
+  static IamSnapshot load(IamClient iam) throws JsonProcessingException {
+    IamSnapshot snapshot = new IamSnapshot();
+
+    PagedSource<GetAccountAuthorizationDetailsResponse> source = marker -> {
+      GetAccountAuthorizationDetailsResponse response = iam.getAccountAuthorizationDetails(
+          GetAccountAuthorizationDetailsRequest.builder()
+              .filter(EntityType.USER, EntityType.GROUP, EntityType.ROLE, EntityType.LOCAL_MANAGED_POLICY,
+                  EntityType.AWS_MANAGED_POLICY)
+              .marker(marker).build());
+      return PagedSource.Page.of(List.of(response), response.isTruncated(), response.marker());
+    };
+
+    // in async mode page N+1 is fetched while page N is indexed
+    try (Stream<GetAccountAuthorizationDetailsResponse> responses = source.stream()) {
+      for (Iterator<GetAccountAuthorizationDetailsResponse> pages = responses.iterator(); pages.hasNext(); ) {
+        snapshot.add(pages.next());
+      }
+    }
+
+    // an attachment without its document would count as no grant at all
+    Set<String> missing = new TreeSet<>();
+    Stream.of(snapshot.userPolicies, snapshot.groupPolicies, snapshot.rolePolicies)
+        .forEach(attachments -> attachments.values().forEach(missing::addAll));
+    missing.removeAll(snapshot.policyDocuments.keySet());
+    if (!missing.isEmpty()) {
+      throw new IllegalStateException("Attached policies without a document: " + missing);
+    }
+    return snapshot;
+  }
+
+  private void add(GetAccountAuthorizationDetailsResponse response) throws JsonProcessingException {
+    for (UserDetail user : response.userDetailList()) {
+      users.add(user.userName());
+      userGroups.computeIfAbsent(user.userName(), k -> new HashSet<>()).addAll(user.groupList());
+      userPolicies.computeIfAbsent(user.userName(), k -> new HashSet<>()).addAll(names(user.attachedManagedPolicies()));
+      userInlinePolicies.put(user.userName(), inline(user.userPolicyList()));
+      for (String group : user.groupList()) {
+        groupMembers.computeIfAbsent(group, k -> new HashSet<>()).add(user.userName());
+      }
+    }
+    for (GroupDetail group : response.groupDetailList()) {
+      groupMembers.computeIfAbsent(group.groupName(), k -> new HashSet<>());
+      groupPolicies.computeIfAbsent(group.groupName(), k -> new HashSet<>())
+          .addAll(names(group.attachedManagedPolicies()));
+      groupInlinePolicies.put(group.groupName(), inline(group.groupPolicyList()));
+    }
+    for (RoleDetail role : response.roleDetailList()) {
+      rolePolicies.computeIfAbsent(role.roleName(), k -> new HashSet<>()).addAll(names(role.attachedManagedPolicies()));
+      roleInlinePolicies.put(role.roleName(), inline(role.rolePolicyList()));
+    }
+    for (ManagedPolicyDetail policy : response.policies()) {
+      for (PolicyVersion version : policy.policyVersionList()) {
+        if (Boolean.TRUE.equals(version.isDefaultVersion())) {
+          policyDocuments.put(policy.policyName(), IamHelper.parseDocument(version.document()));
+        }
+      }
+    }
+  }
+
+  boolean hasUser(String userName) {
+    return users.contains(userName);
+  }
+
+  Set<String> users() {
+    return users;
+  }
+
+  Set<String> userGroups(String userName) {
+    return userGroups.getOrDefault(userName, Set.of());
+  }
+
+  Set<String> userPolicies(String userName) {
+    return userPolicies.getOrDefault(userName, Set.of());
+  }
+
+  Set<String> groupMembers(String groupName) {
+    return groupMembers.getOrDefault(groupName, Set.of());
+  }
+
+  Set<String> groupPolicies(String groupName) {
+    return groupPolicies.getOrDefault(groupName, Set.of());
+  }
+
+  Set<String> rolePolicies(String roleName) {
+    return rolePolicies.getOrDefault(roleName, Set.of());
+  }
+
+  IamHelper.IamPolicy policy(String policyName) {
+    IamHelper.Document document = policyDocuments.get(policyName);
+    // return empty policy
+    return document == null ? new IamHelper.IamPolicy("", null) : new IamHelper.IamPolicy(policyName, document);
+  }
+
+  // Attached local managed and inline policies of the user and of all its groups
+  PolicyEvaluator userEvaluator(String userName) {
+    List<IamHelper.Document> documents = new ArrayList<>(documents(userPolicies(userName)));
+    documents.addAll(userInlinePolicies.getOrDefault(userName, List.of()));
+    for (String group : userGroups(userName)) {
+      documents.addAll(documents(groupPolicies(group)));
+      documents.addAll(groupInlinePolicies.getOrDefault(group, List.of()));
+    }
+    return PolicyEvaluator.compile(documents);
+  }
+
+  PolicyEvaluator groupEvaluator(String groupName) {
+    List<IamHelper.Document> documents = new ArrayList<>(documents(groupPolicies(groupName)));
+    documents.addAll(groupInlinePolicies.getOrDefault(groupName, List.of()));
+    return PolicyEvaluator.compile(documents);
+  }
+
+  PolicyEvaluator roleEvaluator(String roleName) {
+    List<IamHelper.Document> documents = new ArrayList<>(documents(rolePolicies(roleName)));
+    documents.addAll(roleInlinePolicies.getOrDefault(roleName, List.of()));
+    return PolicyEvaluator.compile(documents);
+  }
+
+  // AWS managed policies are not part of the snapshot, so they are skipped
+  private List<IamHelper.Document> documents(Set<String> policyNames) {
+    return policyNames.stream().map(policyDocuments::get).filter(Objects::nonNull).toList();
+  }
+
+  private static List<IamHelper.Document> inline(List<PolicyDetail> policies) throws JsonProcessingException {
+    List<IamHelper.Document> result = new ArrayList<>();
+    for (PolicyDetail policy : policies) {
+      result.add(IamHelper.parseDocument(policy.policyDocument()));
+    }
+    return result;
+  }
+
+  private static List<String> names(List<AttachedPolicy> policies) {
+    return policies.stream().map(AttachedPolicy::policyName).toList();
+  }
+}
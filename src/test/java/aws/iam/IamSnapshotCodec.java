@@ -0,0 +1,112 @@
+package aws.iam;
+
+import aws.common.SnapshotFile;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+class IamSnapshotCodec implements SnapshotFile.Codec<IamSnapshot> {
+  static final String KIND = "iam";
+  static final IamSnapshotCodec INSTANCE = new IamSnapshotCodec();
+
+  @Override
+  public void write(SnapshotFile.Writer out, IamSnapshot snapshot) {
+    out.writeStrings(snapshot.users);
+    writeSets(out, snapshot.userGroups);
+    writeSets(out, snapshot.userPolicies);
+    writeSets(out, snapshot.groupMembers);
+    writeSets(out, snapshot.groupPolicies);
+    writeSets(out, snapshot.rolePolicies);
+
+    out.writeInt(snapshot.policyDocuments.size());
+    snapshot.policyDocuments.forEach((name, document) -> {
+      out.writeString(name);
+      writeDocument(out, document);
+    });
+
+    writeInline(out, snapshot.userInlinePolicies);
+    writeInline(out, snapshot.groupInlinePolicies);
+    writeInline(out, snapshot.roleInlinePolicies);
+  }
+
+  @Override
+  public IamSnapshot read(SnapshotFile.Reader in) {
+    IamSnapshot snapshot = new IamSnapshot();
+    snapshot.users.addAll(in.readStrings());
+    readSets(in, snapshot.userGroups);
+    readSets(in, snapshot.userPolicies);
+    readSets(in, snapshot.groupMembers);
+    readSets(in, snapshot.groupPolicies);
+    readSets(in, snapshot.rolePolicies);
+
+    int policies = in.readInt();
+    for (int i = 0; i < policies; i++) {
+      snapshot.policyDocuments.put(in.readString(), readDocument(in));
+    }
+
+    readInline(in, snapshot.userInlinePolicies);
+    readInline(in, snapshot.groupInlinePolicies);
+    readInline(in, snapshot.roleInlinePolicies);
+    return snapshot;
+  }
+
+  private static void writeSets(SnapshotFile.Writer out, Map<String, Set<String>> sets) {
+    out.writeInt(sets.size());
+    sets.forEach((name, values) -> {
+      out.writeString(name);
+      out.writeStrings(values);
+    });
+  }
+
+  private static void readSets(SnapshotFile.Reader in, Map<String, Set<String>> sets) {
+    int size = in.readInt();
+    for (int i = 0; i < size; i++) {
+      sets.put(in.readString(), new HashSet<>(in.readStrings()));
+    }
+  }
+
+  private static void writeInline(SnapshotFile.Writer out, Map<String, List<IamHelper.Document>> policies) {
+    out.writeInt(policies.size());
+    policies.forEach((name, documents) -> {
+      out.writeString(name);
+      out.writeInt(documents.size());
+      documents.forEach(document -> writeDocument(out, document));
+    });
+  }
+
+  private static void readInline(SnapshotFile.Reader in, Map<String, List<IamHelper.Document>> policies) {
+    int size = in.readInt();
+    for (int i = 0; i < size; i++) {
+      String name = in.readString();
+      List<IamHelper.Document> documents = new ArrayList<>();
+      int count = in.readInt();
+      for (int j = 0; j < count; j++) {
+        documents.add(readDocument(in));
+      }
+      policies.put(name, documents);
+    }
+  }
+
+  private static void writeDocument(SnapshotFile.Writer out, IamHelper.Document document) {
+    out.writeInt(document.statements().size());
+    for (IamHelper.PolicyDetails statement : document.statements()) {
+      out.writeString(statement.effect());
+      out.writeStrings(statement.actions());
+      out.writeStrings(statement.notActions());
+      out.writeStrings(statement.resources());
+      out.writeStrings(statement.notResources());
+    }
+  }
+
+  private static IamHelper.Document readDocument(SnapshotFile.Reader in) {
+    int size = in.readInt();
+    List<IamHelper.PolicyDetails> statements = new ArrayList<>(size);
+    for (int i = 0; i < size; i++) {
+      statements.add(new IamHelper.PolicyDetails(in.readString(), in.readStrings(), in.readStrings(),
+          in.readStrings(), in.readStrings()));
+    }
+    return new IamHelper.Document(statements);
+  }
+}
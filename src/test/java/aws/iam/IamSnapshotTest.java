@@ -0,0 +1,96 @@
+package aws.iam;
+
+import aws.common.SnapshotFile;
+import aws.stub.Fleet;
+import aws.stub.StubAccount;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+import software.amazon.awssdk.services.iam.IamClient;
+
+public class IamSnapshotTest {
+  private StubAccount account;
+  private IamClient iam;
+  private Path file;
+
+  @BeforeClass
+  public void setUp() throws Exception {
+    account = StubAccount.start(Fleet.generate(2, 50), 20);
+    iam = account.iam();
+    file = Files.createTempDirectory("iam-snapshot").resolve("iam.snap");
+  }
+
+  @AfterClass
+  public void cleanUp() {
+    account.close();
+  }
+
+  @Test(description = "A crawled IAM snapshot reads back with the same principals, attachments and documents",
+      groups = "offline")
+  public void verifyRoundTrip() throws Exception {
+    IamSnapshot snapshot = IamSnapshot.load(iam);
+
+    SnapshotFile.write(file, IamSnapshotCodec.KIND, IamSnapshotCodec.INSTANCE, snapshot);
+    IamSnapshot restored = SnapshotFile.read(file, IamSnapshotCodec.KIND, IamSnapshotCodec.INSTANCE);
+
+    Assert.assertEquals(restored.users(), snapshot.users());
+    Assert.assertEquals(restored.userGroups, snapshot.userGroups);
+    Assert.assertEquals(restored.groupPolicies, snapshot.groupPolicies);
+    Assert.assertEquals(restored.rolePolicies, snapshot.rolePolicies);
+    Assert.assertEquals(restored.policyDocuments, snapshot.policyDocuments);
+    Assert.assertTrue(IamDiff.between(snapshot, restored).isEmpty());
+  }
+
+  @Test(description = "The diff reports principal, membership, attachment and statement changes",
+      groups = "offline")
+  public void verifyDiff() throws Exception {
+    IamSnapshot before = IamSnapshot.load(iam);
+    IamSnapshot after = IamSnapshot.load(iam);
+    after.users.add("NewUser");
+    after.groupPolicies.put("NewGroup", new HashSet<>());
+    after.rolePolicies.remove("FullAccessRoleEC2");
+    after.userGroups.get("FullAccessUserS3").add("FullAccessGroupEC2");
+    after.rolePolicies.get("ReadAccessRoleS3").remove("ReadAccessPolicyS3");
+    IamHelper.PolicyDetails statement =
+        new IamHelper.PolicyDetails("Allow", List.of("s3:PutObject"), null, List.of("*"), null);
+    after.policyDocuments.put("ReadAccessPolicyS3", new IamHelper.Document(List.of(statement)));
+
+    IamDiff diff = IamDiff.between(before, after);
+
+    Assert.assertEquals(diff.principals(), List.of(new IamDiff.SetChange("user", Set.of("NewUser"), Set.of()),
+        new IamDiff.SetChange("group", Set.of("NewGroup"), Set.of()),
+        new IamDiff.SetChange("role", Set.of(), Set.of("FullAccessRoleEC2"))));
+    Assert.assertEquals(diff.memberships(),
+        List.of(new IamDiff.SetChange("user:FullAccessUserS3", Set.of("FullAccessGroupEC2"), Set.of())));
+    Assert.assertEquals(diff.attachments(),
+        List.of(new IamDiff.SetChange("role:FullAccessRoleEC2", Set.of(), Set.of("FullAccessPolicyEC2")),
+            new IamDiff.SetChange("role:ReadAccessRoleS3", Set.of(), Set.of("ReadAccessPolicyS3"))));
+    Assert.assertEquals(diff.policies().size(), 1);
+    Assert.assertEquals(diff.policies().getFirst().addedStatements(), List.of(statement));
+    Assert.assertEquals(diff.policies().getFirst().removedStatements(),
+        before.policy("ReadAccessPolicyS3").document().statements());
+  }
+
+  @Test(description = "A policy attached without its document fails the load instead of granting nothing",
+      groups = "offline", expectedExceptions = IllegalStateException.class,
+      expectedExceptionsMessageRegExp = ".*AdministratorAccess.*")
+  public void verifyAttachedPolicyWithoutDocument() throws Exception {
+    Fleet fleet = Fleet.generate(2, 3);
+    List<Fleet.Group> groups = new ArrayList<>(fleet.groups());
+    Fleet.Group first = groups.getFirst();
+    groups.set(0, new Fleet.Group(first.name(), List.of("AdministratorAccess")));
+    Fleet unresolved = new Fleet(fleet.instances(), fleet.volumes(), fleet.images(), fleet.rules(),
+        fleet.zoneRegions(), fleet.users(), groups, fleet.roles(), fleet.policies());
+
+    try (StubAccount unresolvedAccount = StubAccount.start(unresolved, 20)) {
+      IamSnapshot.load(unresolvedAccount.iam());
+    }
+  }
+}
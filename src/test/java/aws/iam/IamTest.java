@@ -1,83 +1,109 @@
 package aws.iam;
 
-import java.util.HashSet;
+import aws.common.Compliance;
 import java.util.List;
 import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 import org.testng.Assert;
 import org.testng.annotations.DataProvider;
 import org.testng.annotations.Test;
 
 public class IamTest extends IamBaseTest {
-  @DataProvider(name = "IamUsersCreation")
+  // every row comes from compliance/iam.json, the rule id names the data provider
+  private static final List<IamCompliance.RuleSpec> SPEC =
+      Compliance.loadSpec(IamCompliance.SPEC, IamCompliance.Spec.class).rules();
+
+  @DataProvider(name = "IamUsersCreation", parallel = true)
   public Object[][] iamUsers() {
-    return new Object[][] {
-        {"FullAccessUserEC2", "FullAccessGroupEC2"},
-        {"FullAccessUserS3", "FullAccessGroupS3"},
-        {"ReadAccessUserS3", "ReadAccessGroupS3"}
-    };
+    return rows("IamUsersCreation", rule -> new Object[] {rule.user(), rule.memberOf()});
   }
 
-  @DataProvider(name = "IamGroupsCreation")
+  @DataProvider(name = "IamGroupsCreation", parallel = true)
   public Object[][] iamGroups() {
-    return new Object[][] {
-        {"FullAccessGroupEC2", "FullAccessPolicyEC2"},
-        {"FullAccessGroupS3", "FullAccessPolicyS3"},
-        {"ReadAccessGroupS3", "ReadAccessPolicyS3"}
-    };
+    return rows("IamGroupsCreation", rule -> new Object[] {rule.group(), rule.attached()});
   }
 
-  @DataProvider(name = "IamRolesCreation")
+  @DataProvider(name = "IamRolesCreation", parallel = true)
   public Object[][] iamRoles() {
-    return new Object[][] {
-        {"FullAccessRoleEC2", "FullAccessPolicyEC2"},
-        {"FullAccessRoleS3", "FullAccessPolicyS3"},
-        {"ReadAccessRoleS3", "ReadAccessPolicyS3"}
-    };
+    return rows("IamRolesCreation", rule -> new Object[] {rule.role(), rule.attached()});
   }
 
-  @DataProvider(name = "IamPoliciesCreation")
+  @DataProvider(name = "IamPoliciesCreation", parallel = true)
   public Object[][] iamPolicies() {
-    return new Object[][] {
-        {"FullAccessPolicyEC2", "ec2:*", "*", "Allow"},
-        {"FullAccessPolicyS3", "s3:*", "*", "Allow"},
-        {"ReadAccessPolicyS3", Set.of("s3:Describe*", "s3:Get*", "s3:List*"), "*", "Allow"}
-    };
+    return rows("IamPoliciesCreation",
+        rule -> new Object[] {rule.policy(), rule.actions(), rule.resources(), rule.effect()});
+  }
+
+  @DataProvider(name = "IamEffectivePermissions", parallel = true)
+  public Object[][] iamPermissions() {
+    return rows("IamEffectivePermissions",
+        rule -> new Object[] {rule.user(), rule.action(), rule.resource(), rule.allowed()});
   }
 
   @Test(description = "Test verifies 3 IAM policies are created according to the given requirements",
       groups = "iam",
       dataProvider = "IamPoliciesCreation")
-  public void verifyIAMPoliciesCreation(String name, Object actions, String resources, String effect) throws Exception {
-    IamHelper.IamPolicy policy = IamHelper.getPolicy(iam, name);
+  public void verifyIAMPoliciesCreation(String name, Set<String> actions, List<String> resources, String effect)
+      throws Exception {
+    IamHelper.IamPolicy policy = IamInventory.snapshot(iam).policy(name);
 
     Assert.assertEquals(name, policy.name());
-    Assert.assertEquals(policy.document().Statement.size(), 1);
-    Object a = policy.document().Statement.getFirst().Action instanceof List
-        ? new HashSet(((List) policy.document().Statement.getFirst().Action))
-        : policy.document().Statement.getFirst().Action;
-
-    Assert.assertEquals(a, actions);
-    Assert.assertEquals(policy.document().Statement.getFirst().Resource, resources);
-    Assert.assertEquals(policy.document().Statement.getFirst().Effect, effect);
+    Assert.assertEquals(policy.document().statements().size(), 1);
+    IamHelper.PolicyDetails statement = policy.document().statements().getFirst();
+
+    Assert.assertEquals(Set.copyOf(statement.actions()), actions);
+    Assert.assertEquals(statement.resources(), resources);
+    Assert.assertEquals(statement.effect(), effect);
   }
 
   @Test(description = "Test verifies that 3 roles with specified associated policies were created",
       groups = "iam", dataProvider = "IamRolesCreation")
   public void verifyIAMRolesCreation(String role, String policy) {
-    Assert.assertTrue(IamHelper.listRolePolicies(iam, role).contains(policy));
+    Assert.assertTrue(IamInventory.snapshot(iam).rolePolicies(role).contains(policy));
   }
 
   @Test(description = "Test verifies that 3 groups with specified names and policies were created",
       groups = "iam", dataProvider = "IamGroupsCreation")
   public void verifyIAMGroupsCreation(String group, String policy) {
-    Assert.assertTrue(IamHelper.listGroupPolicies(iam, group).contains(policy));
+    Assert.assertTrue(IamInventory.snapshot(iam).groupPolicies(group).contains(policy));
+  }
+
+  @Test(description = "Test verifies the effective permissions users get from their groups' policies",
+      groups = "iam", dataProvider = "IamEffectivePermissions")
+  public void verifyIAMEffectivePermissions(String userName, String action, String resource, boolean allowed) {
+    Assert.assertEquals(IamInventory.snapshot(iam).userEvaluator(userName).isAllowed(action, resource), allowed);
   }
 
   @Test(description = "Test verifies that 3 users with specified names were created in specified groups",
       groups = "iam", dataProvider = "IamUsersCreation")
   public void verifyIAMUsersCreation(String userName, String userGroup) {
-    Assert.assertTrue(IamHelper.listAllUsers(iam).contains(userName));
-    Assert.assertTrue(IamHelper.getGroup(iam, userGroup).contains(userName));
+    IamGraph graph = IamInventory.graph(iam);
+
+    Assert.assertTrue(graph.hasUser(userName));
+    Assert.assertTrue(graph.isMember(userName, userGroup), userName + " is in " + graph.groupsOf(userName));
   }
-}
 
+  @Test(description = "Test verifies that of the created users only FullAccessUserS3 is granted s3:* on all resources",
+      groups = "iam")
+  public void verifyFullS3Access() {
+    Set<String> granted = IamInventory.graph(iam).usersAllowed("s3:*", "*");
+
+    Assert.assertTrue(granted.contains("FullAccessUserS3"), granted.toString());
+    Assert.assertFalse(granted.contains("ReadAccessUserS3"), granted.toString());
+    Assert.assertFalse(granted.contains("FullAccessUserEC2"), granted.toString());
+  }
+
+  @Test(description = "Test verifies the declarative spec compliance/iam.json, reporting every violation at once",
+      groups = "iam")
+  public void verifyComplianceSpec() {
+    List<Compliance.Violation> violations = IamCompliance.evaluate(IamInventory.snapshot(iam));
+
+    Assert.assertTrue(violations.isEmpty(),
+        violations.stream().map(Compliance.Violation::toString).collect(Collectors.joining("\n")));
+  }
+
+  private static Object[][] rows(String ruleId, Function<IamCompliance.RuleSpec, Object[]> row) {
+    return SPEC.stream().filter(rule -> ruleId.equals(rule.id())).map(row).toArray(Object[][]::new);
+  }
+}
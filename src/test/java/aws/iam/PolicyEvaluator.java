@@ -0,0 +1,84 @@
+package aws.iam;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.List;
+
+// Compiled statements of a principal's policies. Explicit Deny wins over Allow, nothing matching is an
+// implicit deny. Conditions are not evaluated.
+class PolicyEvaluator {
+  enum Decision { ALLOW, EXPLICIT_DENY, IMPLICIT_DENY }
+
+  private final ActionTrie actions = new ActionTrie();
+  private final List<Statement> statements = new ArrayList<>();
+  // NotAction statements cannot be indexed by action and are checked one by one
+  private final BitSet notActionStatements = new BitSet();
+
+  static PolicyEvaluator compile(Collection<IamHelper.Document> documents) {
+    PolicyEvaluator evaluator = new PolicyEvaluator();
+    for (IamHelper.Document document : documents) {
+      for (IamHelper.PolicyDetails details : document.statements()) {
+        evaluator.add(details);
+      }
+    }
+    return evaluator;
+  }
+
+  private void add(IamHelper.PolicyDetails details) {
+    int index = statements.size();
+    statements.add(new Statement("Deny".equalsIgnoreCase(details.effect()),
+        details.notActions().stream().map(action -> Glob.compile(action, true)).toList(),
+        details.resources().stream().map(resource -> Glob.compile(resource, false)).toList(),
+        details.notResources().stream().map(resource -> Glob.compile(resource, false)).toList()));
+
+    if (!details.notActions().isEmpty()) {
+      notActionStatements.set(index);
+    }
+    for (String action : details.actions()) {
+      actions.add(action, index);
+    }
+  }
+
+  Decision evaluate(String action, String resource) {
+    BitSet candidates = actions.match(action);
+    for (int i = notActionStatements.nextSetBit(0); i >= 0; i = notActionStatements.nextSetBit(i + 1)) {
+      if (!matchesAny(statements.get(i).notActions(), action)) {
+        candidates.set(i);
+      }
+    }
+    boolean allowed = false;
+
+    for (int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1)) {
+      Statement statement = statements.get(i);
+      if (!statement.matchesResource(resource)) {
+        continue;
+      }
+      if (statement.deny()) {
+        return Decision.EXPLICIT_DENY;
+      }
+      allowed = true;
+    }
+
+    return allowed ? Decision.ALLOW : Decision.IMPLICIT_DENY;
+  }
+
+  boolean isAllowed(String action, String resource) {
+    return evaluate(action, resource) == Decision.ALLOW;
+  }
+
+  private static boolean matchesAny(List<Glob> globs, String value) {
+    for (Glob glob : globs) {
+      if (glob.matches(value)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private record Statement(boolean deny, List<Glob> notActions, List<Glob> resources, List<Glob> notResources) {
+    boolean matchesResource(String resource) {
+      return notResources.isEmpty() ? matchesAny(resources, resource) : !matchesAny(notResources, resource);
+    }
+  }
+}
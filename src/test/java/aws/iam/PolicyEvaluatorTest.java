@@ -0,0 +1,67 @@
+package aws.iam;
+
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+public class PolicyEvaluatorTest {
+  private static final String READ_S3 = """
+      {"Version": "2012-10-17", "Statement": [{"Effect": "Allow",
+        "Action": ["s3:Describe*", "s3:Get*", "s3:List*"], "Resource": "*"}]}""";
+  private static final String DENY_SECRETS = """
+      {"Version": "2012-10-17", "Statement": [{"Effect": "Deny",
+        "Action": "s3:*", "Resource": "arn:aws:s3:::secret-*/*"}]}""";
+  private static final String EC2_TAGS = """
+      {"Version": "2012-10-17", "Statement": [{"Effect": "Allow",
+        "Action": "ec2:*Tags", "Resource": "arn:aws:ec2:eu-central-1:*:instance/i-????"}]}""";
+  private static final String PROTECT_INSTANCES = """
+      {"Version": "2012-10-17", "Statement": {"Effect": "Deny",
+        "NotAction": ["ec2:Describe*", "ec2:*Tags"], "NotResource": "arn:aws:ec2:*:*:instance/i-test"}}""";
+
+  @DataProvider(name = "Decisions")
+  public Object[][] decisions() {
+    return new Object[][] {
+        {"s3:GetObject", "arn:aws:s3:::bucket/key", PolicyEvaluator.Decision.ALLOW},
+        {"S3:listbucket", "arn:aws:s3:::bucket", PolicyEvaluator.Decision.ALLOW},
+        {"s3:PutObject", "arn:aws:s3:::bucket/key", PolicyEvaluator.Decision.IMPLICIT_DENY},
+        {"s3:GetObject", "arn:aws:s3:::secret-keys/key", PolicyEvaluator.Decision.EXPLICIT_DENY},
+        {"ec2:CreateTags", "arn:aws:ec2:eu-central-1:123456789012:instance/i-1234",
+            PolicyEvaluator.Decision.ALLOW},
+        {"ec2:CreateTags", "arn:aws:ec2:eu-central-1:123456789012:instance/i-12345",
+            PolicyEvaluator.Decision.IMPLICIT_DENY},
+        {"ec2:DescribeInstances", "*", PolicyEvaluator.Decision.IMPLICIT_DENY},
+        {"ec2:TerminateInstances", "arn:aws:ec2:eu-central-1:123456789012:instance/i-1234",
+            PolicyEvaluator.Decision.EXPLICIT_DENY},
+        {"ec2:TerminateInstances", "arn:aws:ec2:eu-central-1:123456789012:instance/i-test",
+            PolicyEvaluator.Decision.IMPLICIT_DENY}
+    };
+  }
+
+  @Test(description = "Wildcard actions and resources are matched with Deny taking precedence over Allow",
+      groups = "offline", dataProvider = "Decisions")
+  public void verifyDecision(String action, String resource, PolicyEvaluator.Decision expected) throws Exception {
+    PolicyEvaluator evaluator = PolicyEvaluator.compile(List.of(document(READ_S3), document(DENY_SECRETS),
+        document(EC2_TAGS), document(PROTECT_INSTANCES)));
+
+    Assert.assertEquals(evaluator.evaluate(action, resource), expected);
+  }
+
+  @Test(description = "Single and array forms of Statement, Action and Resource are bound to the same lists",
+      groups = "offline")
+  public void verifyDocumentBinding() throws Exception {
+    IamHelper.PolicyDetails statement = document(PROTECT_INSTANCES).statements().getFirst();
+
+    Assert.assertEquals(statement.effect(), "Deny");
+    Assert.assertEquals(statement.actions(), List.of());
+    Assert.assertEquals(statement.notActions(), List.of("ec2:Describe*", "ec2:*Tags"));
+    Assert.assertEquals(statement.notResources(), List.of("arn:aws:ec2:*:*:instance/i-test"));
+    Assert.assertEquals(document(READ_S3).statements().getFirst().resources(), List.of("*"));
+  }
+
+  private static IamHelper.Document document(String json) throws Exception {
+    return IamHelper.parseDocument(URLEncoder.encode(json, StandardCharsets.UTF_8));
+  }
+}
@@ -0,0 +1,325 @@
+package aws.stub;
+
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+
+// EC2 Query API actions used by Ec2Helper, served from a Fleet
+class Ec2Api {
+  private static final String NAMESPACE = "http://ec2.amazonaws.com/doc/2016-11-15/";
+
+  private final Fleet fleet;
+  private final int pageSize;
+  private final List<Modification> modifications;
+
+  record Modification(String volumeId, int originalSize, int targetSize, Instant startTime) {
+  }
+
+  Ec2Api(Fleet fleet, int pageSize, List<Modification> modifications) {
+    this.fleet = fleet;
+    this.pageSize = pageSize;
+    this.modifications = modifications;
+  }
+
+  boolean supports(String action) {
+    return switch (action) {
+      case "DescribeInstances", "DescribeVolumes", "DescribeVolumesModifications", "DescribeImages",
+           "DescribeSecurityGroupRules", "DescribeAvailabilityZones" -> true;
+      default -> false;
+    };
+  }
+
+  StubResponse handle(QueryRequest request) {
+    return switch (request.action()) {
+      case "DescribeInstances" -> describeInstances(request);
+      case "DescribeVolumes" -> describeVolumes(request);
+      case "DescribeVolumesModifications" -> describeVolumesModifications(request);
+      case "DescribeImages" -> describeImages(request);
+      case "DescribeSecurityGroupRules" -> describeSecurityGroupRules(request);
+      case "DescribeAvailabilityZones" -> describeAvailabilityZones(request);
+      default -> error(400, "InvalidAction", "The action " + request.action() + " is not valid for this web service.");
+    };
+  }
+
+  private StubResponse describeInstances(QueryRequest request) {
+    Set<String> instanceIds = Set.copyOf(request.list("InstanceId"));
+    Filters filters = Filters.of(request);
+    List<Fleet.Instance> matching = fleet.instances().stream()
+        .filter(instance -> instanceIds.isEmpty() || instanceIds.contains(instance.instanceId()))
+        .filter(instance -> filters.test(name -> instanceValues(name, instance))).toList();
+    Page<Fleet.Instance> page = Page.of(matching, request, pageSize);
+
+    Xml xml = start("DescribeInstancesResponse").open("reservationSet");
+    for (Fleet.Instance instance : page.items()) {
+      xml.open("item")
+          .element("reservationId", "r-" + instance.instanceId().substring(2))
+          .element("ownerId", Fleet.ACCOUNT_ID)
+          .open("instancesSet").open("item")
+          .element("instanceId", instance.instanceId())
+          .element("imageId", instance.imageId())
+          .open("instanceState").element("code", 16).element("name", "running").close("instanceState")
+          .element("privateIpAddress", instance.privateIp())
+          .element("ipAddress", instance.publicIp())
+          .element("instanceType", instance.type())
+          .element("launchTime", instance.launchTime())
+          .open("placement").element("availabilityZone", instance.zone()).close("placement")
+          .element("rootDeviceType", "ebs")
+          .element("rootDeviceName", "/dev/xvda")
+          .open("blockDeviceMapping").open("item")
+          .element("deviceName", "/dev/xvda")
+          .open("ebs")
+          .element("volumeId", instance.volumeId())
+          .element("status", "attached")
+          .element("attachTime", instance.launchTime())
+          .element("deleteOnTermination", true)
+          .close("ebs")
+          .close("item").close("blockDeviceMapping")
+          .open("groupSet");
+      for (String groupId : instance.groupIds()) {
+        xml.open("item").element("groupId", groupId).element("groupName", groupId).close("item");
+      }
+      xml.close("groupSet").open("tagSet");
+      instance.tags().forEach((key, value) -> xml.open("item").element("key", key).element("value", value)
+          .close("item"));
+      xml.close("tagSet").close("item").close("instancesSet").close("item");
+    }
+    xml.close("reservationSet").element("nextToken", page.nextToken());
+    return StubResponse.ok(xml.close("DescribeInstancesResponse"));
+  }
+
+  private StubResponse describeVolumes(QueryRequest request) {
+    Filters filters = Filters.of(request);
+    List<Fleet.Volume> matching = select(fleet.volumes(), request.list("VolumeId")).stream()
+        .filter(volume -> filters.test(name -> volumeValues(name, volume))).toList();
+    Page<Fleet.Volume> page = Page.of(matching, request, pageSize);
+
+    Xml xml = start("DescribeVolumesResponse").open("volumeSet");
+    for (Fleet.Volume volume : page.items()) {
+      xml.open("item")
+          .element("volumeId", volume.volumeId())
+          .element("size", volume.size())
+          .element("availabilityZone", volume.zone())
+          .element("status", "in-use")
+          .element("volumeType", "gp3")
+          .open("attachmentSet").open("item")
+          .element("volumeId", volume.volumeId())
+          .element("instanceId", volume.instanceId())
+          .element("device", "/dev/xvda")
+          .element("status", "attached")
+          .close("item").close("attachmentSet")
+          .close("item");
+    }
+    xml.close("volumeSet").element("nextToken", page.nextToken());
+    return StubResponse.ok(xml.close("DescribeVolumesResponse"));
+  }
+
+  // Completed at once: the new size is what DescribeVolumes answers from the start time on
+  private StubResponse describeVolumesModifications(QueryRequest request) {
+    Set<String> volumeIds = Set.copyOf(request.list("VolumeId"));
+    Filters filters = Filters.of(request);
+    List<Modification> matching = modifications.stream()
+        .filter(modification -> volumeIds.isEmpty() || volumeIds.contains(modification.volumeId()))
+        .filter(modification -> filters.test(name -> modificationValues(name, modification))).toList();
+    Page<Modification> page = Page.of(matching, request, pageSize);
+
+    Xml xml = start("DescribeVolumesModificationsResponse").open("volumeModificationSet");
+    for (Modification modification : page.items()) {
+      xml.open("item")
+          .element("volumeId", modification.volumeId())
+          .element("modificationState", "completed")
+          .element("originalSize", modification.originalSize())
+          .element("targetSize", modification.targetSize())
+          .element("progress", 100)
+          .element("startTime", modification.startTime())
+          .element("endTime", modification.startTime())
+          .close("item");
+    }
+    xml.close("volumeModificationSet").element("nextToken", page.nextToken());
+    return StubResponse.ok(xml.close("DescribeVolumesModificationsResponse"));
+  }
+
+  private StubResponse describeImages(QueryRequest request) {
+    Filters filters = Filters.of(request);
+    List<Fleet.Image> matching = select(fleet.images(), request.list("ImageId")).stream()
+        .filter(image -> filters.test(name -> imageValues(name, image))).toList();
+
+    Xml xml = start("DescribeImagesResponse").open("imagesSet");
+    for (Fleet.Image image : matching) {
+      xml.open("item")
+          .element("imageId", image.imageId())
+          .element("name", image.name())
+          .element("description", image.description())
+          .element("imageState", "available")
+          .element("architecture", "x86_64")
+          .element("platformDetails", "Linux/UNIX")
+          .close("item");
+    }
+    return StubResponse.ok(xml.close("imagesSet").close("DescribeImagesResponse"));
+  }
+
+  private StubResponse describeSecurityGroupRules(QueryRequest request) {
+    Filters filters = Filters.of(request);
+    List<Fleet.Rule> matching = fleet.rules().stream().filter(rule -> filters.test(name -> ruleValues(name, rule)))
+        .toList();
+    Page<Fleet.Rule> page = Page.of(matching, request, pageSize);
+
+    Xml xml = start("DescribeSecurityGroupRulesResponse").open("securityGroupRuleSet");
+    for (Fleet.Rule rule : page.items()) {
+      xml.open("item")
+          .element("securityGroupRuleId", rule.ruleId())
+          .element("groupId", rule.groupId())
+          .element("groupOwnerId", Fleet.ACCOUNT_ID)
+          .element("isEgress", rule.egress())
+          .element("ipProtocol", rule.protocol())
+          .element("fromPort", rule.fromPort())
+          .element("toPort", rule.toPort())
+          .element("cidrIpv4", rule.cidrIpv4());
+      if (rule.referencedGroupId() != null) {
+        xml.open("referencedGroupInfo")
+            .element("groupId", rule.referencedGroupId())
+            .element("userId", Fleet.ACCOUNT_ID)
+            .close("referencedGroupInfo");
+      }
+      xml.close("item");
+    }
+    xml.close("securityGroupRuleSet").element("nextToken", page.nextToken());
+    return StubResponse.ok(xml.close("DescribeSecurityGroupRulesResponse"));
+  }
+
+  private StubResponse describeAvailabilityZones(QueryRequest request) {
+    Filters filters = Filters.of(request);
+    Xml xml = start("DescribeAvailabilityZonesResponse").open("availabilityZoneInfo");
+    fleet.zoneRegions().forEach((zone, region) -> {
+      if (filters.test(name -> switch (name) {
+        case "zone-name" -> List.of(zone);
+        case "region-name" -> List.of(region);
+        default -> null;
+      })) {
+        xml.open("item")
+            .element("zoneName", zone)
+            .element("zoneId", "euc1-az" + zone.charAt(zone.length() - 1))
+            .element("zoneState", "available")
+            .element("regionName", region)
+            .element("zoneType", "availability-zone")
+            .close("item");
+      }
+    });
+    return StubResponse.ok(xml.close("availabilityZoneInfo").close("DescribeAvailabilityZonesResponse"));
+  }
+
+  private static List<String> instanceValues(String filter, Fleet.Instance instance) {
+    if (filter.startsWith("tag:")) {
+      String value = instance.tags().get(filter.substring(4));
+      return value == null ? List.of() : List.of(value);
+    }
+    return switch (filter) {
+      case "instance-state-name" -> List.of("running");
+      case "instance-id" -> List.of(instance.instanceId());
+      case "instance-type" -> List.of(instance.type());
+      case "image-id" -> List.of(instance.imageId());
+      case "availability-zone" -> List.of(instance.zone());
+      case "instance.group-id" -> instance.groupIds();
+      case "tag-key" -> List.copyOf(instance.tags().keySet());
+      default -> null;
+    };
+  }
+
+  private static List<String> volumeValues(String filter, Fleet.Volume volume) {
+    return switch (filter) {
+      case "volume-id" -> List.of(volume.volumeId());
+      case "size" -> List.of(String.valueOf(volume.size()));
+      case "attachment.instance-id" -> List.of(volume.instanceId());
+      case "attachment.device" -> List.of("/dev/xvda");
+      case "availability-zone" -> List.of(volume.zone());
+      default -> null;
+    };
+  }
+
+  private static List<String> modificationValues(String filter, Modification modification) {
+    return switch (filter) {
+      case "volume-id" -> List.of(modification.volumeId());
+      case "modification-state" -> List.of("completed");
+      case "start-time" -> List.of(modification.startTime().toString());
+      default -> null;
+    };
+  }
+
+  private static List<String> imageValues(String filter, Fleet.Image image) {
+    return switch (filter) {
+      case "image-id" -> List.of(image.imageId());
+      case "name" -> List.of(image.name());
+      case "description" -> List.of(image.description());
+      default -> null;
+    };
+  }
+
+  private static List<String> ruleValues(String filter, Fleet.Rule rule) {
+    return switch (filter) {
+      case "group-id" -> List.of(rule.groupId());
+      case "security-group-rule-id" -> List.of(rule.ruleId());
+      default -> null;
+    };
+  }
+
+  private static <T> List<T> select(Map<String, T> items, List<String> ids) {
+    return ids.isEmpty() ? List.copyOf(items.values()) : ids.stream().map(items::get).filter(Objects::nonNull).toList();
+  }
+
+  private static Xml start(String response) {
+    return new Xml().open(response, NAMESPACE).element("requestId", UUID.randomUUID());
+  }
+
+  static StubResponse error(int status, String code, String message) {
+    Xml xml = new Xml().open("Response").open("Errors").open("Error")
+        .element("Code", code).element("Message", message)
+        .close("Error").close("Errors").element("RequestID", UUID.randomUUID()).close("Response");
+    return new StubResponse(status, xml.toString());
+  }
+
+  // Every filter has to match one of its values; values may use the '*' and '?' wildcards.
+  // Unknown filter names match nothing, so a filter the stub does not know shows up as an empty result.
+  private record Filters(Map<String, List<Pattern>> patterns) {
+    static Filters of(QueryRequest request) {
+      Map<String, List<Pattern>> patterns = new LinkedHashMap<>();
+      request.filters().forEach((name, values) -> patterns.put(name, values.stream().map(Filters::glob).toList()));
+      return new Filters(patterns);
+    }
+
+    boolean test(Function<String, List<String>> values) {
+      for (Map.Entry<String, List<Pattern>> filter : patterns.entrySet()) {
+        List<String> actual = values.apply(filter.getKey());
+        if (actual == null || actual.stream().noneMatch(
+            value -> filter.getValue().stream().anyMatch(pattern -> pattern.matcher(value).matches()))) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    private static Pattern glob(String value) {
+      StringBuilder regex = new StringBuilder();
+      for (char c : value.toCharArray()) {
+        switch (c) {
+          case '*' -> regex.append(".*");
+          case '?' -> regex.append('.');
+          default -> regex.append(Pattern.quote(String.valueOf(c)));
+        }
+      }
+      return Pattern.compile(regex.toString());
+    }
+  }
+
+  private record Page<T>(List<T> items, String nextToken) {
+    static <T> Page<T> of(List<T> all, QueryRequest request, int defaultSize) {
+      int from = request.get("NextToken") == null ? 0 : Integer.parseInt(request.get("NextToken"));
+      int to = Math.min(all.size(), from + request.getInt("MaxResults", defaultSize));
+      return new Page<>(all.subList(from, to), to < all.size() ? String.valueOf(to) : null);
+    }
+  }
+}
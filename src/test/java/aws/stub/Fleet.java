@@ -0,0 +1,151 @@
+package aws.stub;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Synthetic account content served by LocalAwsServer. The first instances, users, groups, roles and policies
+// are the ones the suite expects; larger fleets add generated resources around them.
+public record Fleet(
+    List<Instance> instances,
+    Map<String, Volume> volumes,
+    Map<String, Image> images,
+    List<Rule> rules,
+    Map<String, String> zoneRegions,
+    List<User> users,
+    List<Group> groups,
+    List<Role> roles,
+    List<Policy> policies
+) {
+  public static final String ACCOUNT_ID = "123456789012";
+  private static final String REGION = "eu-central-1";
+  private static final List<String> ZONES = List.of("eu-central-1a", "eu-central-1b", "eu-central-1c");
+  private static final String ANY_IP = "0.0.0.0/0";
+
+  public record Instance(String instanceId, String type, String imageId, String zone, String privateIp,
+                         String publicIp, String volumeId, List<String> groupIds, Map<String, String> tags,
+                         String launchTime) {
+  }
+
+  public record Volume(String volumeId, int size, String zone, String instanceId) {
+  }
+
+  public record Image(String imageId, String name, String description) {
+  }
+
+  public record Rule(String ruleId, String groupId, boolean egress, String protocol, int fromPort, int toPort,
+                     String cidrIpv4, String referencedGroupId) {
+  }
+
+  public record User(String name, List<String> groups) {
+  }
+
+  public record Group(String name, List<String> policies) {
+  }
+
+  public record Role(String name, List<String> policies) {
+  }
+
+  public record Policy(String name, String document) {
+    public String arn() {
+      return policyArn(name);
+    }
+  }
+
+  public static String policyArn(String policyName) {
+    return "arn:aws:iam::" + ACCOUNT_ID + ":policy/" + policyName;
+  }
+
+  // instances >= 2 running instances (half public, half private), principals >= 3 users with groups/roles
+  public static Fleet generate(int instanceCount, int principalCount) {
+    Map<String, Image> images = new LinkedHashMap<>();
+    images.put("ami-0a1b2c3d4e5f00001", new Image("ami-0a1b2c3d4e5f00001", "amzn2-ami-kernel-5.10-hvm-x86_64-gp2",
+        "Amazon Linux 2 Kernel 5.10 AMI 2.0.20240109.0 x86_64 HVM gp2"));
+    images.put("ami-0a1b2c3d4e5f00002", new Image("ami-0a1b2c3d4e5f00002", "amzn2-ami-hvm-x86_64-gp2",
+        "Amazon Linux 2 AMI 2.0.20240109.0 x86_64 HVM gp2"));
+    images.put("ami-0a1b2c3d4e5f00003", new Image("ami-0a1b2c3d4e5f00003", "al2023-ami-2023.3-x86_64",
+        "Amazon Linux 2023 AMI 2023.3.20240108.0 x86_64 HVM kernel-6.1"));
+    List<String> imageIds = List.copyOf(images.keySet());
+
+    // one public/private security group pair per 50 instances
+    int groupPairs = Math.max(1, instanceCount / 50);
+    List<Rule> rules = new ArrayList<>();
+    for (int pair = 0; pair < groupPairs; pair++) {
+      String publicGroup = id("sg-", 2 * pair + 1);
+      String privateGroup = id("sg-", 2 * pair + 2);
+      for (int port : new int[] {22, 80}) {
+        rules.add(new Rule(id("sgr-", rules.size() + 1), publicGroup, false, "tcp", port, port, ANY_IP, null));
+        rules.add(new Rule(id("sgr-", rules.size() + 1), privateGroup, false, "tcp", port, port, null, publicGroup));
+      }
+      rules.add(new Rule(id("sgr-", rules.size() + 1), publicGroup, true, "-1", -1, -1, ANY_IP, null));
+      rules.add(new Rule(id("sgr-", rules.size() + 1), privateGroup, true, "-1", -1, -1, ANY_IP, null));
+    }
+
+    List<Instance> instances = new ArrayList<>();
+    Map<String, Volume> volumes = new LinkedHashMap<>();
+    for (int i = 0; i < Math.max(2, instanceCount); i++) {
+      boolean isPublic = i % 2 == 0;
+      int pair = (i / 2) % groupPairs;
+      String instanceId = id("i-", i + 1);
+      String volumeId = id("vol-", i + 1);
+      String zone = ZONES.get(i % ZONES.size());
+      String imageId = i < 2 ? imageIds.getFirst() : imageIds.get(i % imageIds.size());
+
+      instances.add(new Instance(instanceId, "t3.micro", imageId, zone, ip(10, i + 1),
+          isPublic ? ip(3, i + 1) : null, volumeId, List.of(id("sg-", 2 * pair + (isPublic ? 1 : 2))),
+          Map.of("cloudx", "qa", "Name", (isPublic ? "public-" : "private-") + i), "2024-01-01T00:00:00.000Z"));
+      volumes.put(volumeId, new Volume(volumeId, 8, zone, instanceId));
+    }
+
+    Map<String, String> zoneRegions = new LinkedHashMap<>();
+    ZONES.forEach(zone -> zoneRegions.put(zone, REGION));
+
+    List<Policy> policies = new ArrayList<>(List.of(
+        new Policy("FullAccessPolicyEC2", document("\"ec2:*\"")),
+        new Policy("FullAccessPolicyS3", document("\"s3:*\"")),
+        new Policy("ReadAccessPolicyS3", document("[\"s3:Describe*\", \"s3:Get*\", \"s3:List*\"]"))));
+    List<Group> groups = new ArrayList<>(List.of(
+        new Group("FullAccessGroupEC2", List.of("FullAccessPolicyEC2")),
+        new Group("FullAccessGroupS3", List.of("FullAccessPolicyS3")),
+        new Group("ReadAccessGroupS3", List.of("ReadAccessPolicyS3"))));
+    List<Role> roles = new ArrayList<>(List.of(
+        new Role("FullAccessRoleEC2", List.of("FullAccessPolicyEC2")),
+        new Role("FullAccessRoleS3", List.of("FullAccessPolicyS3")),
+        new Role("ReadAccessRoleS3", List.of("ReadAccessPolicyS3"))));
+    List<User> users = new ArrayList<>(List.of(
+        new User("FullAccessUserEC2", List.of("FullAccessGroupEC2")),
+        new User("FullAccessUserS3", List.of("FullAccessGroupS3")),
+        new User("ReadAccessUserS3", List.of("ReadAccessGroupS3"))));
+
+    // generated principals: 20 users per group, one own policy per group and role
+    int extraUsers = Math.max(0, principalCount - users.size());
+    int extraGroups = (extraUsers + 19) / 20;
+    for (int g = 0; g < extraGroups; g++) {
+      String policy = String.format("GeneratedPolicy%04d", g);
+      policies.add(new Policy(policy, document("[\"s3:Get*\", \"ec2:Describe*\", \"dynamodb:Query\"]")));
+      groups.add(new Group(String.format("GeneratedGroup%04d", g),
+          List.of(policy, policies.get(g % 3).name())));
+      roles.add(new Role(String.format("GeneratedRole%04d", g), List.of(policy)));
+    }
+    for (int u = 0; u < extraUsers; u++) {
+      users.add(new User(String.format("GeneratedUser%06d", u), List.of(String.format("GeneratedGroup%04d", u / 20))));
+    }
+
+    return new Fleet(List.copyOf(instances), volumes, images, List.copyOf(rules), zoneRegions, List.copyOf(users),
+        List.copyOf(groups), List.copyOf(roles), List.copyOf(policies));
+  }
+
+  private static String document(String actions) {
+    return "{\"Version\": \"2012-10-17\", \"Statement\": [{\"Effect\": \"Allow\", \"Action\": " + actions
+        + ", \"Resource\": \"*\"}]}";
+  }
+
+  private static String id(String prefix, int number) {
+    return prefix + String.format("%017x", number);
+  }
+
+  private static String ip(int first, int index) {
+    return first + "." + (index >> 16 & 0xFF) + "." + (index >> 8 & 0xFF) + "." + (index & 0xFF);
+  }
+}
@@ -0,0 +1,257 @@
+package aws.stub;
+
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+// IAM Query API actions used by IamHelper and IamSnapshot, served from a Fleet
+class IamApi {
+  private static final String NAMESPACE = "https://iam.amazonaws.com/doc/2010-05-08/";
+  private static final String CREATED = "2024-01-01T00:00:00Z";
+
+  private final Fleet fleet;
+  private final int pageSize;
+  private final Map<String, Fleet.Group> groups = new LinkedHashMap<>();
+  private final Map<String, Fleet.Role> roles = new LinkedHashMap<>();
+  private final Map<String, Fleet.Policy> policiesByArn = new LinkedHashMap<>();
+  private final Map<String, List<Fleet.User>> groupMembers = new LinkedHashMap<>();
+
+  IamApi(Fleet fleet, int pageSize) {
+    this.fleet = fleet;
+    this.pageSize = pageSize;
+    fleet.groups().forEach(group -> groups.put(group.name(), group));
+    fleet.roles().forEach(role -> roles.put(role.name(), role));
+    fleet.policies().forEach(policy -> policiesByArn.put(policy.arn(), policy));
+    for (Fleet.User user : fleet.users()) {
+      user.groups().forEach(group -> groupMembers.computeIfAbsent(group, k -> new ArrayList<>()).add(user));
+    }
+  }
+
+  boolean supports(String action) {
+    return switch (action) {
+      case "ListUsers", "GetGroup", "ListAttachedGroupPolicies", "ListAttachedRolePolicies", "ListPolicies",
+           "GetPolicyVersion", "GetAccountAuthorizationDetails" -> true;
+      default -> false;
+    };
+  }
+
+  StubResponse handle(QueryRequest request) {
+    return switch (request.action()) {
+      case "ListUsers" -> listUsers(request);
+      case "GetGroup" -> getGroup(request);
+      case "ListAttachedGroupPolicies" -> listAttachedGroupPolicies(request);
+      case "ListAttachedRolePolicies" -> listAttachedRolePolicies(request);
+      case "ListPolicies" -> listPolicies(request);
+      case "GetPolicyVersion" -> getPolicyVersion(request);
+      case "GetAccountAuthorizationDetails" -> getAccountAuthorizationDetails(request);
+      default -> error(400, "InvalidAction", "Could not find operation " + request.action());
+    };
+  }
+
+  private StubResponse listUsers(QueryRequest request) {
+    Page<Fleet.User> page = Page.of(fleet.users(), request, pageSize);
+    return result("ListUsers", xml -> {
+      xml.open("Users");
+      page.items().forEach(user -> user(xml.open("member"), user).close("member"));
+      page.close(xml.close("Users"));
+    });
+  }
+
+  private StubResponse getGroup(QueryRequest request) {
+    Fleet.Group group = groups.get(request.get("GroupName"));
+    if (group == null) {
+      return noSuchEntity("group", request.get("GroupName"));
+    }
+    Page<Fleet.User> page = Page.of(groupMembers.getOrDefault(group.name(), List.of()), request, pageSize);
+    return result("GetGroup", xml -> {
+      group(xml.open("Group"), group).close("Group").open("Users");
+      page.items().forEach(user -> user(xml.open("member"), user).close("member"));
+      page.close(xml.close("Users"));
+    });
+  }
+
+  private StubResponse listAttachedGroupPolicies(QueryRequest request) {
+    Fleet.Group group = groups.get(request.get("GroupName"));
+    return group == null
+        ? noSuchEntity("group", request.get("GroupName"))
+        : attachedPolicies("ListAttachedGroupPolicies", group.policies(), request);
+  }
+
+  private StubResponse listAttachedRolePolicies(QueryRequest request) {
+    Fleet.Role role = roles.get(request.get("RoleName"));
+    return role == null
+        ? noSuchEntity("role", request.get("RoleName"))
+        : attachedPolicies("ListAttachedRolePolicies", role.policies(), request);
+  }
+
+  private StubResponse listPolicies(QueryRequest request) {
+    Page<Fleet.Policy> page = Page.of(fleet.policies(), request, pageSize);
+    return result("ListPolicies", xml -> {
+      xml.open("Policies");
+      page.items().forEach(policy -> policy(xml.open("member"), policy).close("member"));
+      page.close(xml.close("Policies"));
+    });
+  }
+
+  private StubResponse getPolicyVersion(QueryRequest request) {
+    Fleet.Policy policy = policiesByArn.get(request.get("PolicyArn"));
+    if (policy == null) {
+      return noSuchEntity("policy", request.get("PolicyArn"));
+    }
+    return result("GetPolicyVersion", xml -> version(xml.open("PolicyVersion"), policy).close("PolicyVersion"));
+  }
+
+  // Pages run over users, then groups, then roles, then policies, restricted by Filter.member.N
+  private StubResponse getAccountAuthorizationDetails(QueryRequest request) {
+    Set<String> filter = Set.copyOf(request.list("Filter.member"));
+    List<Object> entities = new ArrayList<>();
+    if (filter.isEmpty() || filter.contains("User")) {
+      entities.addAll(fleet.users());
+    }
+    if (filter.isEmpty() || filter.contains("Group")) {
+      entities.addAll(fleet.groups());
+    }
+    if (filter.isEmpty() || filter.contains("Role")) {
+      entities.addAll(fleet.roles());
+    }
+    // every policy of the fleet is a local one, there are no AWS managed policies to add
+    if (filter.isEmpty() || filter.contains("LocalManagedPolicy")) {
+      entities.addAll(fleet.policies());
+    }
+    Page<Object> page = Page.of(entities, request, pageSize);
+
+    return result("GetAccountAuthorizationDetails", xml -> {
+      xml.open("UserDetailList");
+      for (Object entity : page.items()) {
+        if (entity instanceof Fleet.User user) {
+          user(xml.open("member"), user).open("GroupList");
+          user.groups().forEach(group -> xml.element("member", group));
+          xml.close("GroupList").open("UserPolicyList").close("UserPolicyList")
+              .open("AttachedManagedPolicies").close("AttachedManagedPolicies").close("member");
+        }
+      }
+      xml.close("UserDetailList").open("GroupDetailList");
+      for (Object entity : page.items()) {
+        if (entity instanceof Fleet.Group group) {
+          group(xml.open("member"), group).open("GroupPolicyList").close("GroupPolicyList");
+          attached(xml, "AttachedManagedPolicies", group.policies()).close("member");
+        }
+      }
+      xml.close("GroupDetailList").open("RoleDetailList");
+      for (Object entity : page.items()) {
+        if (entity instanceof Fleet.Role role) {
+          role(xml.open("member"), role).open("RolePolicyList").close("RolePolicyList")
+              .open("InstanceProfileList").close("InstanceProfileList");
+          attached(xml, "AttachedManagedPolicies", role.policies()).close("member");
+        }
+      }
+      xml.close("RoleDetailList").open("Policies");
+      for (Object entity : page.items()) {
+        if (entity instanceof Fleet.Policy policy) {
+          policy(xml.open("member"), policy).open("PolicyVersionList");
+          version(xml.open("member"), policy).close("member");
+          xml.close("PolicyVersionList").close("member");
+        }
+      }
+      page.close(xml.close("Policies"));
+    });
+  }
+
+  private StubResponse attachedPolicies(String action, List<String> policies, QueryRequest request) {
+    Page<String> page = Page.of(policies, request, pageSize);
+    return result(action, xml -> page.close(attached(xml, "AttachedPolicies", page.items())));
+  }
+
+  private static Xml attached(Xml xml, String element, List<String> policies) {
+    xml.open(element);
+    for (String policy : policies) {
+      xml.open("member").element("PolicyName", policy).element("PolicyArn", Fleet.policyArn(policy)).close("member");
+    }
+    return xml.close(element);
+  }
+
+  private static Xml user(Xml xml, Fleet.User user) {
+    return xml.element("Path", "/")
+        .element("UserName", user.name())
+        .element("UserId", "AIDA" + id(user.name()))
+        .element("Arn", "arn:aws:iam::" + Fleet.ACCOUNT_ID + ":user/" + user.name())
+        .element("CreateDate", CREATED);
+  }
+
+  private static Xml group(Xml xml, Fleet.Group group) {
+    return xml.element("Path", "/")
+        .element("GroupName", group.name())
+        .element("GroupId", "AGPA" + id(group.name()))
+        .element("Arn", "arn:aws:iam::" + Fleet.ACCOUNT_ID + ":group/" + group.name())
+        .element("CreateDate", CREATED);
+  }
+
+  private static Xml role(Xml xml, Fleet.Role role) {
+    return xml.element("Path", "/")
+        .element("RoleName", role.name())
+        .element("RoleId", "AROA" + id(role.name()))
+        .element("Arn", "arn:aws:iam::" + Fleet.ACCOUNT_ID + ":role/" + role.name())
+        .element("CreateDate", CREATED);
+  }
+
+  private static Xml policy(Xml xml, Fleet.Policy policy) {
+    return xml.element("PolicyName", policy.name())
+        .element("PolicyId", "ANPA" + id(policy.name()))
+        .element("Arn", policy.arn())
+        .element("Path", "/")
+        .element("DefaultVersionId", "v1")
+        .element("AttachmentCount", 1)
+        .element("IsAttachable", true)
+        .element("CreateDate", CREATED)
+        .element("UpdateDate", CREATED);
+  }
+
+  // IAM returns policy documents URL-encoded
+  private static Xml version(Xml xml, Fleet.Policy policy) {
+    return xml.element("Document", URLEncoder.encode(policy.document(), StandardCharsets.UTF_8).replace("+", "%20"))
+        .element("VersionId", "v1")
+        .element("IsDefaultVersion", true)
+        .element("CreateDate", CREATED);
+  }
+
+  private static String id(String name) {
+    return String.format("%016X", name.hashCode() & 0xFFFFFFFFL);
+  }
+
+  private StubResponse noSuchEntity(String kind, String name) {
+    return error(404, "NoSuchEntity", "The " + kind + " with name " + name + " cannot be found.");
+  }
+
+  private static StubResponse result(String action, Consumer<Xml> body) {
+    Xml xml = new Xml().open(action + "Response", NAMESPACE).open(action + "Result");
+    body.accept(xml);
+    xml.close(action + "Result").open("ResponseMetadata").element("RequestId", UUID.randomUUID())
+        .close("ResponseMetadata").close(action + "Response");
+    return StubResponse.ok(xml);
+  }
+
+  static StubResponse error(int status, String code, String message) {
+    Xml xml = new Xml().open("ErrorResponse", NAMESPACE).open("Error")
+        .element("Type", "Sender").element("Code", code).element("Message", message)
+        .close("Error").element("RequestId", UUID.randomUUID()).close("ErrorResponse");
+    return new StubResponse(status, xml.toString());
+  }
+
+  private record Page<T>(List<T> items, String marker) {
+    static <T> Page<T> of(List<T> all, QueryRequest request, int defaultSize) {
+      int from = request.get("Marker") == null ? 0 : Integer.parseInt(request.get("Marker"));
+      int to = Math.min(all.size(), from + request.getInt("MaxItems", defaultSize));
+      return new Page<>(all.subList(from, to), to < all.size() ? String.valueOf(to) : null);
+    }
+
+    Xml close(Xml xml) {
+      return xml.element("IsTruncated", marker != null).element("Marker", marker);
+    }
+  }
+}
@@ -0,0 +1,143 @@
+package aws.stub;
+
+import aws.common.TestConfig;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+// Embedded EC2 + IAM Query API endpoint for offline and performance runs, used through endpointOverride.
+// Every call waits the configured latency, and a share of the calls is answered with a throttling error.
+public class LocalAwsServer implements AutoCloseable {
+  private static LocalAwsServer shared;
+
+  private final HttpServer server;
+  private final int pageSize;
+  private final Duration latency;
+  private final double throttleRate;
+  private final AtomicLong requests = new AtomicLong();
+  private final Map<String, LongAdder> actionRequests = new ConcurrentHashMap<>();
+  // every volume resized by replaceFleet, as DescribeVolumesModifications reports it
+  private final List<Ec2Api.Modification> modifications = new CopyOnWriteArrayList<>();
+  private volatile Fleet fleet;
+  private volatile Ec2Api ec2;
+  private volatile IamApi iam;
+
+  public LocalAwsServer(Fleet fleet, Duration latency, double throttleRate, int pageSize) throws IOException {
+    this.pageSize = pageSize;
+    this.fleet = fleet;
+    this.ec2 = new Ec2Api(fleet, pageSize, modifications);
+    this.iam = new IamApi(fleet, pageSize);
+    this.latency = latency;
+    this.throttleRate = throttleRate;
+
+    server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+    server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+    server.createContext("/", this::handle);
+    server.start();
+  }
+
+  // -Daws.stub=true server, sized by stub.instances / stub.principals, alive until the JVM exits
+  public static synchronized LocalAwsServer shared() {
+    if (shared == null) {
+      try {
+        shared = new LocalAwsServer(
+            Fleet.generate(TestConfig.getInt("stub.instances", 2), TestConfig.getInt("stub.principals", 3)),
+            TestConfig.getDuration("stub.latency", Duration.ZERO),
+            Double.parseDouble(TestConfig.get("stub.throttleRate", "0")),
+            TestConfig.getInt("stub.pageSize", 1000));
+      } catch (IOException e) {
+        throw new IllegalStateException("Could not start the local AWS endpoint", e);
+      }
+      Runtime.getRuntime().addShutdownHook(new Thread(shared::close));
+    }
+    return shared;
+  }
+
+  public static boolean enabled() {
+    return TestConfig.getBoolean("aws.stub", false);
+  }
+
+  public URI endpoint() {
+    return URI.create("http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort());
+  }
+
+  public long requestCount() {
+    return requests.get();
+  }
+
+  public long requestCount(String action) {
+    LongAdder count = actionRequests.get(action);
+    return count == null ? 0 : count.sum();
+  }
+
+  // Serves a changed account from now on, e.g. to simulate churn between two crawls; a volume whose size changed
+  // was modified now
+  public synchronized void replaceFleet(Fleet fleet) {
+    Instant now = Instant.now().truncatedTo(ChronoUnit.MILLIS);
+    fleet.volumes().forEach((volumeId, volume) -> {
+      Fleet.Volume before = this.fleet.volumes().get(volumeId);
+      if (before != null && before.size() != volume.size()) {
+        modifications.add(new Ec2Api.Modification(volumeId, before.size(), volume.size(), now));
+      }
+    });
+    this.fleet = fleet;
+    ec2 = new Ec2Api(fleet, pageSize, modifications);
+    iam = new IamApi(fleet, pageSize);
+  }
+
+  private void handle(HttpExchange exchange) throws IOException {
+    requests.incrementAndGet();
+    try (exchange) {
+      QueryRequest request =
+          QueryRequest.parse(new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8));
+      if (!latency.isZero()) {
+        Thread.sleep(latency);
+      }
+      respond(exchange, dispatch(request));
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private StubResponse dispatch(QueryRequest request) {
+    actionRequests.computeIfAbsent(request.action(), action -> new LongAdder()).increment();
+    boolean throttled = throttleRate > 0 && ThreadLocalRandom.current().nextDouble() < throttleRate;
+    if (ec2.supports(request.action())) {
+      return throttled ? Ec2Api.error(503, "RequestLimitExceeded", "Request limit exceeded.") : ec2.handle(request);
+    }
+    if (iam.supports(request.action())) {
+      return throttled ? IamApi.error(400, "Throttling", "Rate exceeded") : iam.handle(request);
+    }
+    return Ec2Api.error(400, "InvalidAction", "The action " + request.action() + " is not valid for this web service.");
+  }
+
+  private static void respond(HttpExchange exchange, StubResponse response) throws IOException {
+    byte[] body = response.body().getBytes(StandardCharsets.UTF_8);
+    exchange.getResponseHeaders().set("Content-Type", "text/xml;charset=UTF-8");
+    exchange.sendResponseHeaders(response.status(), body.length);
+    try (OutputStream out = exchange.getResponseBody()) {
+      out.write(body);
+    }
+  }
+
+  @Override
+  public void close() {
+    server.stop(0);
+  }
+}
@@ -0,0 +1,63 @@
+package aws.stub;
+
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Form parameters of an EC2 / IAM Query API call, e.g. Action=DescribeInstances&Filter.1.Name=...
+class QueryRequest {
+  private final Map<String, String> params;
+
+  private QueryRequest(Map<String, String> params) {
+    this.params = params;
+  }
+
+  static QueryRequest parse(String form) {
+    Map<String, String> params = new HashMap<>();
+    for (String pair : form.split("&")) {
+      if (pair.isEmpty()) {
+        continue;
+      }
+      int eq = pair.indexOf('=');
+      String key = URLDecoder.decode(eq < 0 ? pair : pair.substring(0, eq), StandardCharsets.UTF_8);
+      String value = eq < 0 ? "" : URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8);
+      params.put(key, value);
+    }
+    return new QueryRequest(params);
+  }
+
+  String action() {
+    return params.getOrDefault("Action", "");
+  }
+
+  String get(String name) {
+    return params.get(name);
+  }
+
+  int getInt(String name, int defaultValue) {
+    String value = params.get(name);
+    return value == null ? defaultValue : Integer.parseInt(value);
+  }
+
+  // EC2 lists: Name.1, Name.2, ...; IAM lists: Name.member.1, ...
+  List<String> list(String prefix) {
+    List<String> result = new ArrayList<>();
+    for (int i = 1; params.containsKey(prefix + "." + i); i++) {
+      result.add(params.get(prefix + "." + i));
+    }
+    return result;
+  }
+
+  // EC2 filters: Filter.N.Name with Filter.N.Value.M
+  Map<String, List<String>> filters() {
+    Map<String, List<String>> result = new LinkedHashMap<>();
+    for (int i = 1; params.containsKey("Filter." + i + ".Name"); i++) {
+      result.put(params.get("Filter." + i + ".Name"), list("Filter." + i + ".Value"));
+    }
+    return result;
+  }
+}
@@ -0,0 +1,83 @@
+package aws.stub;
+
+import aws.common.Clients;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import software.amazon.awssdk.core.SdkClient;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.ec2.Ec2Client;
+import software.amazon.awssdk.services.iam.IamClient;
+
+// Offline test fixture: a LocalAwsServer serving the fleet plus the clients pointed at it.
+// Clients are built on first use and closed with the account, so an EC2 test never builds an IAM client.
+public final class StubAccount implements AutoCloseable {
+  private final LocalAwsServer server;
+  private final List<SdkClient> clients = new ArrayList<>();
+  private final Map<String, Ec2Client> scoped = new ConcurrentHashMap<>();
+  private Ec2Client ec2;
+  private IamClient iam;
+
+  private StubAccount(LocalAwsServer server) {
+    this.server = server;
+  }
+
+  public static StubAccount start(Fleet fleet, int pageSize) throws IOException {
+    return start(fleet, Duration.ZERO, 0, pageSize);
+  }
+
+  public static StubAccount start(Fleet fleet, Duration latency, double throttleRate, int pageSize)
+      throws IOException {
+    return new StubAccount(new LocalAwsServer(fleet, latency, throttleRate, pageSize));
+  }
+
+  public long requestCount() {
+    return server.requestCount();
+  }
+
+  public long requestCount(String action) {
+    return server.requestCount(action);
+  }
+
+  public void replaceFleet(Fleet fleet) {
+    server.replaceFleet(fleet);
+  }
+
+  // Not rate-limited, so request counts and timings are the crawler's own
+  public synchronized Ec2Client ec2() {
+    if (ec2 == null) {
+      ec2 = register(Clients.configure(Ec2Client.builder(), server).build());
+    }
+    return ec2;
+  }
+
+  // One rate-limited client per account and region, like Clients.ec2(region, account)
+  public Ec2Client ec2(String account, Region region) {
+    return scoped.computeIfAbsent(account + "/" + region, key ->
+        register(Clients.rateLimited(Clients.configure(Ec2Client.builder(), server).region(region)).build()));
+  }
+
+  public synchronized IamClient iam() {
+    if (iam == null) {
+      iam = register(Clients.configure(IamClient.builder(), server).build());
+    }
+    return iam;
+  }
+
+  @Override
+  public void close() {
+    synchronized (this) {
+      clients.forEach(SdkClient::close);
+      clients.clear();
+    }
+    server.close();
+  }
+
+  private synchronized <C extends SdkClient> C register(C client) {
+    clients.add(client);
+    return client;
+  }
+}
@@ -0,0 +1,7 @@
+package aws.stub;
+
+record StubResponse(int status, String body) {
+  static StubResponse ok(Xml xml) {
+    return new StubResponse(200, xml.toString());
+  }
+}
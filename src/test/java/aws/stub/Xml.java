@@ -0,0 +1,49 @@
+package aws.stub;
+
+// Minimal XML writer for the Query API responses
+class Xml {
+  private final StringBuilder out = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
+
+  Xml open(String name) {
+    out.append('<').append(name).append('>');
+    return this;
+  }
+
+  Xml open(String name, String namespace) {
+    out.append('<').append(name).append(" xmlns=\"").append(namespace).append("\">");
+    return this;
+  }
+
+  Xml close(String name) {
+    out.append("</").append(name).append('>');
+    return this;
+  }
+
+  // null values are left out, as AWS does for absent fields
+  Xml element(String name, Object value) {
+    if (value != null) {
+      open(name);
+      escape(String.valueOf(value));
+      close(name);
+    }
+    return this;
+  }
+
+  private void escape(String value) {
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      switch (c) {
+        case '<' -> out.append("&lt;");
+        case '>' -> out.append("&gt;");
+        case '&' -> out.append("&amp;");
+        case '"' -> out.append("&quot;");
+        default -> out.append(c);
+      }
+    }
+  }
+
+  @Override
+  public String toString() {
+    return out.toString();
+  }
+}